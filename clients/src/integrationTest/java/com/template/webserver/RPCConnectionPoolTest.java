@@ -0,0 +1,80 @@
+package com.template.webserver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.utilities.NetworkHostAndPort;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.User;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RPCConnectionPoolTest {
+    private final CordaX500Name partyA = new CordaX500Name("PartyA", "London", "GB");
+    private final User rpcUser = new User("user1", "test", ImmutableSet.of("ALL"));
+
+    @Test
+    public void poolReconnectsAfterTheNodeRestarts() {
+        // The node is run out of process so that stopping it closes its RPC port like a real restart does.
+        driver(new DriverParameters().withIsDebug(false).withStartNodesInProcess(false), dsl -> {
+            try {
+                // The restarted node must listen on the same RPC address as before.
+                final int rpcPort = freePort();
+                final NodeParameters nodeParameters = new NodeParameters()
+                        .withProvidedName(partyA)
+                        .withRpcUsers(ImmutableList.of(rpcUser))
+                        .withCustomOverrides(ImmutableMap.of(
+                                "rpcSettings.address", "localhost:" + rpcPort,
+                                "rpcSettings.adminAddress", "localhost:" + freePort()));
+                final NodeHandle node = dsl.startNode(nodeParameters).get();
+
+                try (RPCConnectionPool pool = new RPCConnectionPool(new NetworkHostAndPort("localhost", rpcPort),
+                        rpcUser.getUsername(), rpcUser.getPassword(), 2, RPCConnectionPool.Dispatch.LEAST_BUSY,
+                        Duration.ofMillis(200), Duration.ofSeconds(2), Duration.ofMillis(100), Duration.ofSeconds(2))) {
+                    pool.start();
+                    assertEquals(2, pool.getConnectedCount());
+                    assertEquals(partyA, pool.getProxy().nodeInfo().getLegalIdentities().get(0).getName());
+
+                    node.stop();
+                    eventually(Duration.ofSeconds(30), () -> pool.getConnectedCount() == 0);
+
+                    dsl.startNode(nodeParameters).get();
+                    eventually(Duration.ofSeconds(60), () -> pool.getConnectedCount() == 2);
+                    assertEquals(partyA, pool.getProxy().nodeInfo().getLegalIdentities().get(0).getName());
+                    for (RPCConnectionPool.ConnectionStats stats : pool.getStats()) {
+                        assertTrue(stats.getReconnects() >= 1);
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during test: ", e);
+            }
+
+            return null;
+        });
+    }
+
+    private static void eventually(Duration timeout, BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Condition not met within " + timeout);
+            Thread.sleep(100);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
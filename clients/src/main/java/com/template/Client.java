@@ -1,6 +1,7 @@
 package com.template;
 
 import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.node.NodeInfo;
 import net.corda.core.utilities.NetworkHostAndPort;
@@ -14,23 +15,34 @@ import static net.corda.core.utilities.NetworkHostAndPort.parse;
 /**
  * Connects to a Corda node via RPC and performs RPC operations on the node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments. Any further {@code name=value} arguments run the
+ * {@link LoadGenerator} against the node instead.
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         // Create an RPC connection to the node.
-        if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
+        if (args.length < 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password> [name=value ...]");
         final NetworkHostAndPort nodeAddress = parse(args[0]);
         final String rpcUsername = args[1];
         final String rpcPassword = args[2];
         final CordaRPCClient client = new CordaRPCClient(nodeAddress);
-        final CordaRPCOps proxy = client.start(rpcUsername, rpcPassword).getProxy();
+        final CordaRPCConnection connection = client.start(rpcUsername, rpcPassword);
+        final CordaRPCOps proxy = connection.getProxy();
+
+        if (args.length > 3) {
+            try {
+                LoadGenerator.run(proxy, LoadGenerator.parse(args, 3));
+            } finally {
+                connection.notifyServerAndClose();
+            }
+            return;
+        }
 
         // Interact with the node.
         // For example, here we print the nodes on the network.
         final List<NodeInfo> nodes = proxy.networkMapSnapshot();
         logger.info("{}", nodes);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package com.template;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.template.flows.IOUFlow;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductUpdateFlow;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives ProductCreateFlow, ProductUpdateFlow or IOUFlow on a node over RPC, either at a target rate or at a fixed
+ * concurrency, and reports throughput, end-to-end latency percentiles and a breakdown of errors.
+ *
+ * Flow starts are pipelined: a small pool of threads issues startFlowDynamic calls, and each flow's result is
+ * recorded when its return value completes, so the generator never waits for one flow before starting the next.
+ *
+ * Arguments are {@code name=value} pairs:
+ *
+ *   flow          create, update or iou (default create)
+ *   counterparty  X.500 name of the other party (default the first other party in the network map)
+ *   rate          flows started per second, or a comma separated list of rates to step through; 0 starts flows as
+ *                 fast as the concurrency allows (default 0)
+ *   concurrency   most flows in flight at once (default 64)
+ *   duration      seconds measured at each rate (default 60)
+ *   warmup        seconds run before the first measured step (default 10)
+ *   starters      threads issuing startFlowDynamic calls (default 4)
+ *   color         product color for the product flows (default Red)
+ *   out           directory for the JSON summary and HdrHistogram percentile files (default build/load)
+ *
+ * At a target rate, latency is measured from the time the flow was due to start rather than from when it actually
+ * started, so a node that falls behind shows it in the percentiles instead of slowing the generator down. Stepping
+ * through rates, for example {@code rate=50,100,200,400}, shows the rate at which achieved throughput stops following
+ * the target and latency climbs: the node's saturation point.
+ *
+ * The update flow is run by the receiving party and consumes one Pending product per flow, so run the create flow
+ * against the counterparty first to issue enough of them.
+ */
+public class LoadGenerator {
+    private final CordaRPCOps proxy;
+    private final Party us;
+    private final Party counterparty;
+    private final Class<? extends FlowLogic<?>> flowClass;
+    private final Object[] flowArgs;
+    private final Semaphore inFlight;
+    private final int concurrency;
+    private final ExecutorService starters;
+
+    LoadGenerator(CordaRPCOps proxy, Party us, String flow, Party counterparty, String color, int concurrency, int starters) {
+        this.proxy = proxy;
+        this.us = us;
+        this.counterparty = counterparty;
+        this.concurrency = concurrency;
+        this.inFlight = new Semaphore(concurrency);
+        this.starters = Executors.newFixedThreadPool(starters);
+        switch (flow) {
+            case "create":
+                this.flowClass = ProductCreateFlow.Initiator.class;
+                this.flowArgs = new Object[]{counterparty, "Gadgets", color, "Pending"};
+                break;
+            case "update":
+                this.flowClass = ProductUpdateFlow.Initiator.class;
+                this.flowArgs = new Object[]{us, counterparty, "Received", color};
+                break;
+            case "iou":
+                this.flowClass = IOUFlow.class;
+                this.flowArgs = new Object[]{1, counterparty};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown flow " + flow + "; expected create, update or iou");
+        }
+    }
+
+    public static void run(CordaRPCOps proxy, Map<String, String> options) throws InterruptedException, IOException {
+        final Settings settings = new Settings(options);
+        final LoadGenerator generator = new LoadGenerator(proxy, proxy.nodeInfo().getLegalIdentities().get(0), settings.flow,
+                counterparty(proxy, settings.counterparty), settings.color, settings.concurrency, settings.starters);
+        try {
+            System.out.printf("Running %s against %s with %s as the counterparty%n", settings.flow, generator.us.getName(), generator.counterparty.getName());
+            if (settings.warmupNanos > 0) generator.step(settings.rates.get(0), settings.warmupNanos, null);
+            for (double rate : settings.rates) {
+                final Step step = generator.step(rate, settings.durationNanos, System.out);
+                step.print(System.out, settings.flow, settings.concurrency);
+                step.write(settings.out, settings.flow, settings.concurrency);
+            }
+        } finally {
+            generator.stop();
+        }
+    }
+
+    void stop() {
+        starters.shutdownNow();
+    }
+
+    /**
+     * The run's settings, read from the {@code name=value} arguments, with the defaults listed above.
+     */
+    static final class Settings {
+        final String flow;
+        final String counterparty;
+        final List<Double> rates = new ArrayList<>();
+        final int concurrency;
+        final long durationNanos;
+        final long warmupNanos;
+        final int starters;
+        final String color;
+        final File out;
+
+        Settings(Map<String, String> options) {
+            flow = options.getOrDefault("flow", "create");
+            counterparty = options.get("counterparty");
+            for (String rate : options.getOrDefault("rate", "0").split(",")) {
+                rates.add(Double.parseDouble(rate.trim()));
+            }
+            concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+            durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+            warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+            starters = Integer.parseInt(options.getOrDefault("starters", "4"));
+            color = options.getOrDefault("color", "Red");
+            out = new File(options.getOrDefault("out", "build/load"));
+
+            if (rates.stream().anyMatch(rate -> rate < 0)) throw new IllegalArgumentException("Rates may not be negative");
+            if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+            if (starters < 1) throw new IllegalArgumentException("starters must be at least 1");
+            if (durationNanos <= 0 || warmupNanos < 0) {
+                throw new IllegalArgumentException("duration must be positive and warmup not negative");
+            }
+        }
+    }
+
+    private static Party counterparty(CordaRPCOps proxy, String name) {
+        if (name != null) {
+            final Party party = proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+            if (party == null) throw new IllegalArgumentException("Unknown counterparty " + name);
+            return party;
+        }
+        final List<Party> ours = proxy.nodeInfo().getLegalIdentities();
+        final List<Party> notaries = proxy.notaryIdentities();
+        return proxy.networkMapSnapshot().stream()
+                .flatMap(node -> node.getLegalIdentities().stream())
+                .filter(party -> !ours.contains(party) && !notaries.contains(party))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No counterparty in the network map; pass counterparty=<X.500 name>"));
+    }
+
+    /**
+     * Starts flows at {@code rate} per second, or as fast as the concurrency allows when the rate is 0, for
+     * {@code durationNanos}, then waits for the flows in flight to finish. Progress is printed every second to
+     * {@code progress} unless it is null.
+     */
+    Step step(double rate, long durationNanos, PrintStream progress) throws InterruptedException {
+        final Step step = new Step(rate);
+        final RateLimiter limiter = rate > 0 ? RateLimiter.create(rate) : null;
+        final long start = System.nanoTime();
+        final long end = start + durationNanos;
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long issued = 0;
+        while (System.nanoTime() < end) {
+            if (limiter != null) limiter.acquire();
+            inFlight.acquire();
+            final long intended = limiter != null ? start + (long) (issued * 1e9 / rate) : System.nanoTime();
+            issued++;
+            starters.execute(() -> start(step, intended));
+            if (progress != null && System.nanoTime() >= nextReport) {
+                step.report(progress);
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+        // Wait for the flows still in flight.
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        step.finish(System.nanoTime() - start);
+        return step;
+    }
+
+    private void start(Step step, long intendedNanos) {
+        step.started.incrementAndGet();
+        final FlowHandle<?> handle;
+        try {
+            handle = proxy.startFlowDynamic(flowClass, flowArgs);
+        } catch (RuntimeException e) {
+            step.failed("start", e);
+            inFlight.release();
+            return;
+        }
+        handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> {
+            if (error == null) {
+                step.latencies.recordValue(Math.max(1, (System.nanoTime() - intendedNanos) / 1000));
+            } else {
+                step.failed("flow", error);
+            }
+            handle.close();
+            inFlight.release();
+        });
+    }
+
+    static final class Step {
+        private final double rate;
+        // Latencies in microseconds, up to one hour with three significant digits.
+        private final Recorder latencies = new Recorder(3_600_000_000L, 3);
+        private final Histogram total = new Histogram(3_600_000_000L, 3);
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final Map<String, AtomicLong> failuresByType = new ConcurrentHashMap<>();
+        private Histogram interval;
+        private long elapsedNanos;
+
+        private Step(double rate) {
+            this.rate = rate;
+        }
+
+        long getStarted() {
+            return started.get();
+        }
+
+        long getCompleted() {
+            return total.getTotalCount();
+        }
+
+        long getFailures() {
+            return failures.get();
+        }
+
+        // Failures by stage (start or flow) and exception type.
+        Map<String, Long> getFailuresByType() {
+            final Map<String, Long> byType = new TreeMap<>();
+            failuresByType.forEach((type, failed) -> byType.put(type, failed.get()));
+            return byType;
+        }
+
+        private void failed(String stage, Throwable error) {
+            failures.incrementAndGet();
+            final Throwable cause = error.getCause() != null ? error.getCause() : error;
+            failuresByType.computeIfAbsent(stage + " " + cause.getClass().getName(), type -> new AtomicLong()).incrementAndGet();
+        }
+
+        private void report(PrintStream out) {
+            interval = latencies.getIntervalHistogram(interval);
+            total.add(interval);
+            out.printf(Locale.ROOT, "  %d started, %d completed, %d failed; last second: %d completed, p50 %.2f ms, p99 %.2f ms%n",
+                    started.get(), total.getTotalCount(), failures.get(), interval.getTotalCount(),
+                    interval.getValueAtPercentile(50.0) / 1000.0, interval.getValueAtPercentile(99.0) / 1000.0);
+        }
+
+        private void finish(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            interval = latencies.getIntervalHistogram(interval);
+            total.add(interval);
+        }
+
+        private double flowsPerSecond() {
+            return total.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        private String target() {
+            return rate > 0 ? String.format(Locale.ROOT, "%.1f flows/sec", rate) : "unthrottled";
+        }
+
+        private double millis(double percentile) {
+            return total.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        private void print(PrintStream out, String flow, int concurrency) {
+            out.printf(Locale.ROOT, "%s at %s, concurrency %d: %.1f flows/sec, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, %d of %d failed%n",
+                    flow, target(), concurrency, flowsPerSecond(), millis(50.0), millis(90.0), millis(99.0), millis(99.9),
+                    total.getMaxValue() / 1000.0, failures.get(), started.get());
+            new TreeMap<>(failuresByType).forEach((type, failed) -> out.printf("  %s: %d%n", type, failed.get()));
+        }
+
+        private void write(File directory, String flow, int concurrency) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            final String name = String.format(Locale.ROOT, "%s-r%.0f-c%d-%d", flow, rate, concurrency, System.currentTimeMillis());
+            try (PrintWriter json = new PrintWriter(new File(directory, name + ".json"), StandardCharsets.UTF_8.name())) {
+                final StringBuilder errors = new StringBuilder();
+                new TreeMap<>(failuresByType).forEach((type, failed) ->
+                        errors.append(errors.length() == 0 ? "" : ",").append('"').append(type).append("\":").append(failed.get()));
+                json.printf(Locale.ROOT, "{\"flow\":\"%s\",\"targetRate\":%.3f,\"concurrency\":%d,\"started\":%d,\"flows\":%d,\"failures\":%d,"
+                                + "\"elapsedMs\":%.3f,\"flowsPerSec\":%.3f,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,"
+                                + "\"maxMs\":%.3f,\"errors\":{%s}}%n",
+                        flow, rate, concurrency, started.get(), total.getTotalCount(), failures.get(), elapsedNanos / 1e6,
+                        flowsPerSecond(), millis(50.0), millis(90.0), millis(99.0), millis(99.9), total.getMaxValue() / 1000.0, errors);
+            }
+            try (PrintStream hgrm = new PrintStream(new FileOutputStream(new File(directory, name + ".hgrm")), false, StandardCharsets.UTF_8.name())) {
+                total.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+    }
+
+    static Map<String, String> parse(String[] args, int from) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i++) {
+            final int equals = args[i].indexOf('=');
+            if (equals < 1) throw new IllegalArgumentException("Expected name=value but got " + args[i]);
+            options.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+        }
+        return options;
+    }
+}
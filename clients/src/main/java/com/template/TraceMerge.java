@@ -0,0 +1,143 @@
+package com.template;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Merges the flow trace spans that FlowTrace logs on each node into a cross-node latency breakdown per transaction.
+ *
+ * Arguments are node log files, or directories searched for *.log files, plus optional {@code name=value} options:
+ *
+ *   slowest  number of traces to print in full, slowest first by the initiator's whole flow (default 10)
+ *
+ * Each printed trace lists its spans from every node in start order, with their offset from the first span. A summary
+ * of every flow, side and span across all traces follows. Offsets between nodes rely on the nodes' wall clocks, so a
+ * negative or outsized "transit" span points at clock skew rather than the network.
+ *
+ * Run it with {@code ./gradlew clients:mergeTraces -PtraceLogs="build/nodes/PartyA/logs build/nodes/PartyB/logs"}.
+ */
+public class TraceMerge {
+    private static final Pattern SPAN = Pattern.compile(
+            "span trace=(\\S+) tx=(\\S+) node=\"([^\"]*)\" flow=(\\S+) side=(\\S+) name=(\\S+) start=(\\d+) duration=(\\d+)");
+
+    private static final class Span {
+        private final String trace;
+        private final String tx;
+        private final String node;
+        private final String flow;
+        private final String side;
+        private final String name;
+        private final long startMicros;
+        private final long durationMicros;
+
+        private Span(Matcher match) {
+            this.trace = match.group(1);
+            this.tx = match.group(2);
+            this.node = match.group(3);
+            this.flow = match.group(4);
+            this.side = match.group(5);
+            this.name = match.group(6);
+            this.startMicros = Long.parseLong(match.group(7));
+            this.durationMicros = Long.parseLong(match.group(8));
+        }
+
+        private boolean isInitiatorFlow() {
+            return side.equals("initiator") && name.equals("flow");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int slowest = 10;
+        final List<Path> logs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("slowest=")) {
+                slowest = Integer.parseInt(arg.substring("slowest=".length()));
+            } else {
+                logs.addAll(logFiles(new File(arg).toPath()));
+            }
+        }
+        if (logs.isEmpty()) throw new IllegalArgumentException("Usage: TraceMerge [slowest=N] <node log file or directory> ...");
+        merge(logs, slowest, System.out);
+    }
+
+    /**
+     * Reads the spans in {@code logs} and prints the {@code slowest} traces and the summary to {@code out}.
+     */
+    static void merge(List<Path> logs, int slowest, PrintStream out) throws IOException {
+        final Map<String, List<Span>> traces = new HashMap<>();
+        for (Path log : logs) {
+            try (Stream<String> lines = Files.lines(log, StandardCharsets.UTF_8)) {
+                lines.forEach(line -> {
+                    final Matcher match = SPAN.matcher(line);
+                    if (match.find()) {
+                        final Span span = new Span(match);
+                        traces.computeIfAbsent(span.trace, trace -> new ArrayList<>()).add(span);
+                    }
+                });
+            }
+        }
+        print(out, traces, slowest);
+    }
+
+    private static List<Path> logFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) return Collections.singletonList(path);
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void print(PrintStream out, Map<String, List<Span>> traces, int slowest) {
+        out.printf("%d traces%n", traces.size());
+        final List<List<Span>> bySlowest = traces.values().stream()
+                .sorted(Comparator.comparingLong(TraceMerge::initiatorMicros).reversed())
+                .limit(slowest)
+                .collect(Collectors.toList());
+        for (List<Span> trace : bySlowest) {
+            trace.sort(Comparator.comparingLong((Span span) -> span.startMicros).thenComparing(span -> span.name.equals("flow")));
+            final long origin = trace.get(0).startMicros;
+            final String tx = trace.stream().map(span -> span.tx).filter(id -> !id.equals("-")).findFirst().orElse("-");
+            out.printf(Locale.ROOT, "%ntrace %s tx %s: %.2f ms%n", trace.get(0).trace, tx, initiatorMicros(trace) / 1000.0);
+            for (Span span : trace) {
+                out.printf(Locale.ROOT, "  +%9.2f ms %9.2f ms  %-10s %-30s %-18s %s%n",
+                        (span.startMicros - origin) / 1000.0, span.durationMicros / 1000.0,
+                        span.side, span.flow, span.name, span.node);
+            }
+        }
+
+        // Latencies in microseconds, up to one hour with three significant digits.
+        final Map<String, Histogram> summary = new TreeMap<>();
+        for (List<Span> trace : traces.values()) {
+            for (Span span : trace) {
+                summary.computeIfAbsent(span.flow + " " + span.side + " " + span.name, key -> new Histogram(3_600_000_000L, 3))
+                        .recordValue(Math.max(1, span.durationMicros));
+            }
+        }
+        out.printf("%nAll traces%n");
+        summary.forEach((key, histogram) -> out.printf(Locale.ROOT, "  %-70s x%-7d p50 %9.2f ms  p99 %9.2f ms  max %9.2f ms%n",
+                key, histogram.getTotalCount(), histogram.getValueAtPercentile(50.0) / 1000.0,
+                histogram.getValueAtPercentile(99.0) / 1000.0, histogram.getMaxValue() / 1000.0));
+    }
+
+    // The initiator's whole flow, or 0 for traces whose initiator did not finish or was not logged.
+    private static long initiatorMicros(List<Span> trace) {
+        return trace.stream().filter(Span::isInitiatorFlow).mapToLong(span -> span.durationMicros).max().orElse(0);
+    }
+}
@@ -0,0 +1,21 @@
+package com.template.webserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * How long an asynchronous request, such as one waiting for a flow to finish, may stay open before the webserver
+ * answers with 503 Service Unavailable. The flow itself keeps running on the node.
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+    @Value("${config.flow.timeoutMillis:120000}")
+    private long timeoutMillis;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(timeoutMillis);
+    }
+}
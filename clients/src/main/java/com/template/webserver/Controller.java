@@ -1,27 +1,191 @@
 package com.template.webserver;
 
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductUpdateFlow;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
 import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Define your API endpoints here.
+ *
+ * The product endpoints return {@link CompletableFuture}s, so a servlet thread is released as soon as a request has
+ * been handed to the node and the response is written when the flow or query completes.
  */
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final CordaRPCOps proxy;
+    private final NodeRPCConnection connection;
+    private final NodeRPCExecutor rpc;
+    private final ProductUpdateFeed updates;
+    private final ProductPageCache pages;
+    // Our identity, looked up on first use so that the webserver can start before the node.
+    private volatile Party us;
     private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-    public Controller(NodeRPCConnection rpc) {
-        this.proxy = rpc.proxy;
+    public Controller(NodeRPCConnection connection, NodeRPCExecutor rpc, ProductUpdateFeed updates, ProductPageCache pages) {
+        this.proxy = connection.proxy;
+        this.connection = connection;
+        this.rpc = rpc;
+        this.updates = updates;
+        this.pages = pages;
     }
 
     @GetMapping(value = "/templateendpoint", produces = "text/plain")
     private String templateendpoint() {
         return "Define an endpoint here.";
     }
-}
\ No newline at end of file
+
+    /**
+     * Issues a Pending product to {@code counterparty}, an X.500 name such as "O=PartyB,L=New York,C=US".
+     */
+    @PostMapping(value = "/products", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> createProduct(
+            @RequestParam("counterparty") String counterparty,
+            @RequestParam("color") String color,
+            @RequestParam(value = "name", defaultValue = "Gadgets") String name) {
+        return party(counterparty)
+                .thenCompose(party -> rpc.startFlow(ProductCreateFlow.Initiator.class, party, name, color, ProductStatus.PENDING.getLabel()))
+                .thenApply(stx -> ResponseEntity.status(HttpStatus.CREATED).body(transactionBody(stx)))
+                .exceptionally(this::errorResponse);
+    }
+
+    /**
+     * Marks one Pending product of the given color that {@code counterparty} sent us as Received.
+     */
+    @PostMapping(value = "/products/receive", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> receiveProduct(
+            @RequestParam("counterparty") String counterparty,
+            @RequestParam("color") String color) {
+        return ourIdentity()
+                .thenCompose(ours -> party(counterparty).thenCompose(party ->
+                        rpc.startFlow(ProductUpdateFlow.Initiator.class, ours, party, ProductStatus.RECEIVED.getLabel(), color)))
+                .thenApply(stx -> ResponseEntity.ok(transactionBody(stx)))
+                .exceptionally(this::errorResponse);
+    }
+
+    /**
+     * Lists unconsumed products one page at a time, optionally filtered by status and color labels. Pages are served
+     * from {@link ProductPageCache} when they have not changed since they were last read.
+     */
+    @GetMapping(value = "/products", produces = "application/json")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> products(
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "color", required = false) String color,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "size", defaultValue = "50") int size) {
+        final ProductStatus productStatus;
+        final ProductColor productColor;
+        try {
+            productStatus = status == null ? null : ProductStatus.fromLabel(status);
+            productColor = color == null ? null : ProductColor.fromLabel(color);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        if (page < 1 || size < 1 || size > MAX_PAGE_SIZE) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST,
+                    "page must be at least 1 and size between 1 and " + MAX_PAGE_SIZE));
+        }
+        return pages.get(new ProductPageCache.Key(productStatus, productColor, page, size))
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(this::errorResponse);
+    }
+
+    @GetMapping(value = "/products/cache", produces = "application/json")
+    public Map<String, Object> productCacheStats() {
+        return pages.getStats();
+    }
+
+    /**
+     * A server-sent event stream of product vault updates.
+     */
+    @GetMapping(value = "/products/updates", produces = "text/event-stream")
+    public SseEmitter productUpdates() {
+        return updates.subscribe();
+    }
+
+    @GetMapping(value = "/products/updates/stats", produces = "application/json")
+    public Map<String, Object> productUpdateStats() {
+        return updates.getStats();
+    }
+
+    /**
+     * The state of the webserver's RPC connections to the node.
+     */
+    @GetMapping(value = "/rpc/pool", produces = "application/json")
+    public Map<String, Object> rpcPool() {
+        final RPCConnectionPool pool = connection.getPool();
+        return ImmutableMap.of(
+                "size", pool.getSize(),
+                "connected", pool.getConnectedCount(),
+                "dispatch", pool.getDispatch().getConfigName(),
+                "connections", pool.getStats());
+    }
+
+    private CompletableFuture<Party> ourIdentity() {
+        final Party known = us;
+        if (known != null) return CompletableFuture.completedFuture(known);
+        return rpc.call(ops -> {
+            us = ops.nodeInfo().getLegalIdentities().get(0);
+            return us;
+        });
+    }
+
+    private CompletableFuture<Party> party(String name) {
+        return rpc.call(ops -> {
+            final Party party = ops.wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+            if (party == null) throw new IllegalArgumentException("Unknown party " + name);
+            return party;
+        });
+    }
+
+    private static Map<String, Object> transactionBody(SignedTransaction stx) {
+        final List<String> linearIds = new ArrayList<>();
+        for (ProductState product : stx.getTx().outputsOfType(ProductState.class)) {
+            linearIds.add(product.getLinearId().toString());
+        }
+        return ImmutableMap.of("txId", stx.getId().toString(), "linearIds", linearIds);
+    }
+
+    private ResponseEntity<Map<String, Object>> errorResponse(Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalArgumentException || cause instanceof FlowException) {
+            return error(HttpStatus.BAD_REQUEST, cause.getMessage());
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests are waiting for the node");
+        }
+        logger.error("Request to the node failed", cause);
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, String.valueOf(cause.getMessage()));
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(ImmutableMap.of("error", String.valueOf(message)));
+    }
+}
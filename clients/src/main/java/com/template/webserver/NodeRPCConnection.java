@@ -1,7 +1,5 @@
 package com.template.webserver;
 
-import net.corda.client.rpc.CordaRPCClient;
-import net.corda.client.rpc.CordaRPCConnection;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.utilities.NetworkHostAndPort;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,11 +7,16 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.time.Duration;
 
 /**
- * Wraps an RPC connection to a Corda node.
+ * Wraps a pool of RPC connections to a Corda node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments. The pool is tuned with the optional
+ * config.rpc.poolSize, config.rpc.dispatch (round-robin or least-busy), config.rpc.healthCheckMillis,
+ * config.rpc.healthCheckTimeoutMillis, config.rpc.reconnectInitialBackoffMillis and
+ * config.rpc.reconnectMaxBackoffMillis settings. Connections that drop, for example while the node restarts, are
+ * reopened in the background; see {@link RPCConnectionPool}.
  */
 @Component
 public class NodeRPCConnection implements AutoCloseable {
@@ -29,20 +32,40 @@ public class NodeRPCConnection implements AutoCloseable {
     // The password for logging into the RPC client.
     @Value("${config.rpc.port}")
     private int rpcPort;
+    // The number of RPC connections kept open to the node.
+    @Value("${config.rpc.poolSize:4}")
+    private int poolSize;
+    // How calls are spread over the connections: round-robin or least-busy.
+    @Value("${config.rpc.dispatch:round-robin}")
+    private String dispatch;
+    @Value("${config.rpc.healthCheckMillis:5000}")
+    private long healthCheckMillis;
+    @Value("${config.rpc.healthCheckTimeoutMillis:5000}")
+    private long healthCheckTimeoutMillis;
+    @Value("${config.rpc.reconnectInitialBackoffMillis:500}")
+    private long reconnectInitialBackoffMillis;
+    @Value("${config.rpc.reconnectMaxBackoffMillis:30000}")
+    private long reconnectMaxBackoffMillis;
 
-    private CordaRPCConnection rpcConnection;
+    private RPCConnectionPool pool;
     CordaRPCOps proxy;
 
     @PostConstruct
     public void initialiseNodeRPCConnection() {
         NetworkHostAndPort rpcAddress = new NetworkHostAndPort(host, rpcPort);
-        CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress);
-        rpcConnection = rpcClient.start(username, password);
-        proxy = rpcConnection.getProxy();
+        pool = new RPCConnectionPool(rpcAddress, username, password, poolSize, RPCConnectionPool.Dispatch.fromConfigName(dispatch),
+                Duration.ofMillis(healthCheckMillis), Duration.ofMillis(healthCheckTimeoutMillis),
+                Duration.ofMillis(reconnectInitialBackoffMillis), Duration.ofMillis(reconnectMaxBackoffMillis));
+        pool.start();
+        proxy = pool.getProxy();
+    }
+
+    public RPCConnectionPool getPool() {
+        return pool;
     }
 
     @PreDestroy
     public void close() {
-        rpcConnection.notifyServerAndClose();
+        pool.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package com.template.webserver;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs RPC calls for the controllers off the servlet threads.
+ *
+ * Every RPC call is a blocking round trip to the node, so calls are made on a small bounded pool and handed back as
+ * {@link CompletableFuture}s. A started flow's result arrives through its {@code CordaFuture} without holding any
+ * thread, so the number of flows in flight is not limited by either pool. When the queue of pending calls is full, the
+ * returned future fails with a {@link java.util.concurrent.RejectedExecutionException}.
+ */
+@Component
+public class NodeRPCExecutor {
+    // The number of threads making RPC calls.
+    @Value("${config.rpc.threads:8}")
+    private int threads;
+    // The number of RPC calls that may wait for a thread.
+    @Value("${config.rpc.queueSize:1000}")
+    private int queueSize;
+
+    private final CordaRPCOps proxy;
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public NodeRPCExecutor(NodeRPCConnection rpc) {
+        this.proxy = rpc.proxy;
+    }
+
+    /**
+     * An executor over the given RPC proxy with explicit pool settings, for use outside Spring. Call {@link #start()}
+     * before use.
+     */
+    public NodeRPCExecutor(CordaRPCOps proxy, int threads, int queueSize) {
+        this.proxy = proxy;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "rpc-call-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes an RPC call on the RPC pool.
+     */
+    public <T> CompletableFuture<T> call(Function<CordaRPCOps, T> rpcCall) {
+        try {
+            return CompletableFuture.supplyAsync(() -> rpcCall.apply(proxy), executor);
+        } catch (RejectedExecutionException e) {
+            // supplyAsync throws rather than failing the future when the executor refuses the call.
+            final CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Starts a flow and completes with its return value once the flow finishes on the node.
+     */
+    public <T> CompletableFuture<T> startFlow(Class<? extends FlowLogic<T>> flowClass, Object... args) {
+        return call(rpc -> rpc.startFlowDynamic(flowClass, args)).thenCompose(handle ->
+                handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> closeQuietly(handle)));
+    }
+
+    private static void closeQuietly(FlowHandle<?> handle) {
+        try {
+            handle.close();
+        } catch (RuntimeException e) {
+            // The flow has finished; a failure to release its handle does not change the result.
+        }
+    }
+}
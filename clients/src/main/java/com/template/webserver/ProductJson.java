@@ -0,0 +1,54 @@
+package com.template.webserver;
+
+import com.google.common.collect.ImmutableMap;
+import com.template.states.ProductState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.node.services.Vault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JSON shape of products in the webserver's responses and events.
+ */
+public class ProductJson {
+    private ProductJson() { }
+
+    public static Map<String, Object> product(StateAndRef<ProductState> stateAndRef) {
+        final ProductState product = stateAndRef.getState().getData();
+        return ImmutableMap.<String, Object>builder()
+                .put("linearId", product.getLinearId().toString())
+                .put("from", partyName(product.getFrom()))
+                .put("to", partyName(product.getTo()))
+                .put("name", product.getProductName())
+                .put("color", product.getProductColor().getLabel())
+                .put("status", product.getStatus().getLabel())
+                .put("stateRef", stateRef(stateAndRef.getRef()))
+                .build();
+    }
+
+    public static Map<String, Object> page(Vault.Page<ProductState> result, int page, int size) {
+        final List<Map<String, Object>> products = new ArrayList<>(result.getStates().size());
+        for (StateAndRef<ProductState> stateAndRef : result.getStates()) {
+            products.add(product(stateAndRef));
+        }
+        return ImmutableMap.of(
+                "page", page,
+                "size", size,
+                "totalStatesAvailable", result.getTotalStatesAvailable(),
+                "products", products);
+    }
+
+    public static String stateRef(StateRef ref) {
+        return ref.toString();
+    }
+
+    private static String partyName(AbstractParty party) {
+        final CordaX500Name name = party.nameOrNull();
+        return name == null ? party.getOwningKey().toString() : name.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package com.template.webserver;
+
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.ProductQueries;
+import com.template.flows.VaultPager;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caches pages of the product list, keyed by status and color filter, page and page size.
+ *
+ * Entries do not expire. They are evicted least recently used once there are more than config.cache.maxEntries, and
+ * invalidated by the product vault feed: an update evicts every cached page whose filter matches a consumed or
+ * produced state, and marks matching loads still in flight so that their results are not stored. Concurrent misses
+ * for the same page share one load. While the feed is down the cache is empty and every read goes to the node.
+ */
+@Component
+public class ProductPageCache implements ProductUpdateFeed.Listener {
+    public static final class Key {
+        private final ProductStatus status;
+        private final ProductColor color;
+        private final int page;
+        private final int size;
+
+        /**
+         * A null status or color matches products with any status or color.
+         */
+        public Key(ProductStatus status, ProductColor color, int page, int size) {
+            this.status = status;
+            this.color = color;
+            this.page = page;
+            this.size = size;
+        }
+
+        public ProductStatus getStatus() { return status; }
+        public ProductColor getColor() { return color; }
+        public int getPage() { return page; }
+        public int getSize() { return size; }
+
+        public QueryCriteria criteria() {
+            QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+            if (status != null) criteria = criteria.and(ProductQueries.withStatus(status));
+            if (color != null) criteria = criteria.and(ProductQueries.withColor(color));
+            return criteria;
+        }
+
+        private boolean matches(boolean[][] touched) {
+            for (ProductStatus s : ProductStatus.values()) {
+                if (status != null && s != status) continue;
+                for (ProductColor c : ProductColor.values()) {
+                    if (color != null && c != color) continue;
+                    if (touched[s.ordinal()][c.ordinal()]) return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return page == key.page && size == key.size && status == key.status && color == key.color;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(status, color, page, size);
+        }
+
+        @Override
+        public String toString() {
+            return "Key(status=" + status + ", color=" + color + ", page=" + page + ", size=" + size + ")";
+        }
+    }
+
+    private static final class Load {
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        // Set when an update may have changed the page after the load started.
+        private boolean stale;
+    }
+
+    private final int maxEntries;
+    private final Function<Key, CompletableFuture<Map<String, Object>>> loader;
+    private ProductUpdateFeed feed;
+
+    // Guarded by this.
+    private final LinkedHashMap<Key, Map<String, Object>> entries;
+    private final Map<Key, Load> loading = new HashMap<>();
+    private boolean live;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    // Latencies in microseconds, up to one hour with three significant digits.
+    private final Histogram hitLatency = new ConcurrentHistogram(3_600_000_000L, 3);
+    private final Histogram missLatency = new ConcurrentHistogram(3_600_000_000L, 3);
+
+    @Autowired
+    public ProductPageCache(NodeRPCExecutor rpc, ProductUpdateFeed feed, @Value("${config.cache.maxEntries:1000}") int maxEntries) {
+        this(maxEntries, key -> rpc.call(ops -> ops.vaultQueryBy(key.criteria(),
+                new PageSpecification(key.getPage(), key.getSize()), VaultPager.STABLE_SORT, ProductState.class))
+                .thenApply(result -> ProductJson.page(result, key.getPage(), key.getSize())));
+        this.feed = feed;
+    }
+
+    /**
+     * A cache that loads pages with the given loader. It serves reads from the cache once {@link #resumed()} is
+     * called, which the Spring constructor leaves to the product update feed.
+     */
+    public ProductPageCache(int maxEntries, Function<Key, CompletableFuture<Map<String, Object>>> loader) {
+        this.maxEntries = maxEntries;
+        this.loader = loader;
+        this.entries = new LinkedHashMap<Key, Map<String, Object>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Map<String, Object>> eldest) {
+                if (size() <= ProductPageCache.this.maxEntries) return false;
+                evicted.increment();
+                return true;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        if (feed != null) feed.addListener(this);
+    }
+
+    public CompletableFuture<Map<String, Object>> get(Key key) {
+        final long start = System.nanoTime();
+        final Load load;
+        final boolean loadHere;
+        synchronized (this) {
+            final Map<String, Object> cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                hitLatency.recordValue(micros(start));
+                return CompletableFuture.completedFuture(cached);
+            }
+            if (!live) {
+                load = null;
+                loadHere = false;
+            } else if (loading.containsKey(key)) {
+                load = loading.get(key);
+                loadHere = false;
+            } else {
+                load = new Load();
+                loading.put(key, load);
+                loadHere = true;
+            }
+        }
+        if (load == null) {
+            bypassed.increment();
+            return timed(load(key), start);
+        }
+        if (!loadHere) {
+            coalesced.increment();
+            return timed(load.future, start);
+        }
+        load(key).whenComplete((body, error) -> {
+            synchronized (this) {
+                if (loading.get(key) == load) loading.remove(key);
+                if (error == null && live && !load.stale) entries.put(key, body);
+            }
+            if (error == null) {
+                load.future.complete(body);
+            } else {
+                load.future.completeExceptionally(error);
+            }
+        });
+        return timed(load.future, start);
+    }
+
+    @Override
+    public synchronized void resumed() {
+        clear();
+        live = true;
+    }
+
+    @Override
+    public void updated(Vault.Update<ProductState> update) {
+        final boolean[][] touched = new boolean[ProductStatus.values().length][ProductColor.values().length];
+        for (StateAndRef<ProductState> state : update.getConsumed()) {
+            touch(touched, state.getState().getData());
+        }
+        for (StateAndRef<ProductState> state : update.getProduced()) {
+            touch(touched, state.getState().getData());
+        }
+        synchronized (this) {
+            final Iterator<Key> cached = entries.keySet().iterator();
+            while (cached.hasNext()) {
+                if (cached.next().matches(touched)) {
+                    cached.remove();
+                    invalidated.increment();
+                }
+            }
+            final Iterator<Map.Entry<Key, Load>> inFlight = loading.entrySet().iterator();
+            while (inFlight.hasNext()) {
+                final Map.Entry<Key, Load> entry = inFlight.next();
+                if (entry.getKey().matches(touched)) {
+                    entry.getValue().stale = true;
+                    inFlight.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void interrupted() {
+        live = false;
+        clear();
+    }
+
+    public Map<String, Object> getStats() {
+        final long served = hits.sum() + coalesced.sum();
+        final long requests = served + loads.sum();
+        final int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return ImmutableMap.<String, Object>builder()
+                .put("live", isLive())
+                .put("entries", size)
+                .put("maxEntries", maxEntries)
+                .put("hits", hits.sum())
+                .put("coalesced", coalesced.sum())
+                .put("loads", loads.sum())
+                .put("bypassed", bypassed.sum())
+                .put("hitRatio", requests == 0 ? 0.0 : (double) served / requests)
+                .put("invalidated", invalidated.sum())
+                .put("evicted", evicted.sum())
+                .put("hitLatency", latency(hitLatency))
+                .put("missLatency", latency(missLatency))
+                .build();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    private synchronized boolean isLive() {
+        return live;
+    }
+
+    // Guarded by this.
+    private void clear() {
+        entries.clear();
+        for (Load load : loading.values()) {
+            load.stale = true;
+        }
+        loading.clear();
+    }
+
+    private CompletableFuture<Map<String, Object>> load(Key key) {
+        loads.increment();
+        try {
+            return loader.apply(key);
+        } catch (RuntimeException e) {
+            final CompletableFuture<Map<String, Object>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private CompletableFuture<Map<String, Object>> timed(CompletableFuture<Map<String, Object>> future, long start) {
+        future.whenComplete((body, error) -> missLatency.recordValue(micros(start)));
+        return future;
+    }
+
+    private static void touch(boolean[][] touched, ProductState product) {
+        touched[product.getStatus().ordinal()][product.getProductColor().ordinal()] = true;
+    }
+
+    private static long micros(long startNanos) {
+        return Math.max(1, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    private static Map<String, Object> latency(Histogram histogram) {
+        return ImmutableMap.of(
+                "count", histogram.getTotalCount(),
+                "p50Ms", histogram.getValueAtPercentile(50.0) / 1000.0,
+                "p99Ms", histogram.getValueAtPercentile(99.0) / 1000.0,
+                "maxMs", histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,398 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.template.states.ProductState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import rx.Observable;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Streams product vault updates to HTTP clients as server-sent events.
+ *
+ * All subscribers share one upstream vaultTrackBy feed, opened when the first subscriber arrives and closed when the
+ * last one leaves. Each update is rendered to JSON once and queued for every subscriber in a buffer of
+ * config.sse.bufferSize events, which a small pool of sender threads writes out. When a slow subscriber's buffer is
+ * full, config.sse.overflow decides what happens: "drop" discards its oldest queued events and tells it how many were
+ * lost in a "dropped" event, and "disconnect" closes its stream. Either way the webserver holds at most bufferSize
+ * events per subscriber.
+ *
+ * If the upstream feed fails, for example because the node restarted, it is reopened with backoff and subscribers
+ * receive a "resync" event, since updates may have been missed in between.
+ *
+ * Components inside the webserver can follow the same feed as a {@link Listener}. A listener keeps the feed open for
+ * as long as the webserver runs.
+ */
+@Component
+public class ProductUpdateFeed {
+    private static final Logger logger = LoggerFactory.getLogger(ProductUpdateFeed.class);
+
+    public enum Overflow {
+        DROP_OLDEST("drop"),
+        DISCONNECT("disconnect");
+
+        private final String configName;
+
+        Overflow(String configName) {
+            this.configName = configName;
+        }
+
+        public static Overflow fromConfigName(String configName) {
+            for (Overflow overflow : values()) {
+                if (overflow.configName.equals(configName)) return overflow;
+            }
+            throw new IllegalArgumentException("Unknown SSE overflow policy " + configName + "; expected drop or disconnect");
+        }
+    }
+
+    /**
+     * Follows product updates inside the webserver. Callbacks run on the RPC client's thread and must not block.
+     */
+    public interface Listener {
+        /** The feed is open, and every update from now on will be delivered. */
+        void resumed();
+
+        void updated(Vault.Update<ProductState> update);
+
+        /** The feed failed; updates may be missed until the next {@link #resumed()}. */
+        void interrupted();
+    }
+
+    // Events buffered per subscriber.
+    @Value("${config.sse.bufferSize:256}")
+    private int bufferSize;
+    // What happens when a subscriber's buffer is full: drop or disconnect.
+    @Value("${config.sse.overflow:drop}")
+    private String overflowConfig;
+    // How long a stream may stay open; 0 keeps it open until either side closes it.
+    @Value("${config.sse.timeoutMillis:0}")
+    private long timeoutMillis;
+    // Idle streams receive a comment this often, which also finds clients that have gone away.
+    @Value("${config.sse.heartbeatMillis:15000}")
+    private long heartbeatMillis;
+    // Threads writing events to subscribers.
+    @Value("${config.sse.senderThreads:4}")
+    private int senderThreads;
+    @Value("${config.sse.resubscribeMaxBackoffMillis:30000}")
+    private long resubscribeMaxBackoffMillis;
+
+    private final Supplier<Observable<Vault.Update<ProductState>>> upstreamUpdates;
+    private final Supplier<SseEmitter> emitters;
+    private final ObjectMapper mapper;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong resubscribes = new AtomicLong();
+
+    private Overflow overflow;
+    private ExecutorService senders;
+    private ScheduledExecutorService scheduler;
+    // Guarded by this.
+    private Subscription upstream;
+    private int failedSubscribeAttempts;
+    private boolean resubscribePending;
+    private boolean missedUpdates;
+
+    @Autowired
+    public ProductUpdateFeed(NodeRPCConnection rpc, ObjectMapper mapper) {
+        final CordaRPCOps proxy = rpc.proxy;
+        // Only updates are streamed, so the snapshot is kept to a single state.
+        this.upstreamUpdates = () -> proxy.vaultTrackByWithPagingSpec(
+                ProductState.class,
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                new PageSpecification(DEFAULT_PAGE_NUM, 1)).getUpdates();
+        this.emitters = () -> new SseEmitter(timeoutMillis);
+        this.mapper = mapper;
+    }
+
+    /**
+     * A feed that opens its upstream with {@code upstreamUpdates} and streams to the emitters made by {@code emitters},
+     * with one sender thread and the other settings at their defaults. Call {@link #start()} before use.
+     */
+    public ProductUpdateFeed(Supplier<Observable<Vault.Update<ProductState>>> upstreamUpdates, Supplier<SseEmitter> emitters,
+                             ObjectMapper mapper, int bufferSize, Overflow overflow) {
+        this.upstreamUpdates = upstreamUpdates;
+        this.emitters = emitters;
+        this.mapper = mapper;
+        this.bufferSize = bufferSize;
+        this.overflowConfig = overflow.configName;
+        this.heartbeatMillis = 15000;
+        this.senderThreads = 1;
+        this.resubscribeMaxBackoffMillis = 30000;
+    }
+
+    @PostConstruct
+    public void start() {
+        overflow = Overflow.fromConfigName(overflowConfig);
+        senders = Executors.newFixedThreadPool(senderThreads, daemon("sse-sender"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemon("sse-scheduler"));
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        if (upstream != null) {
+            upstream.unsubscribe();
+            upstream = null;
+        }
+        senders.shutdownNow();
+    }
+
+    /**
+     * Opens a stream of product updates for one HTTP client.
+     */
+    public SseEmitter subscribe() {
+        final Subscriber subscriber = new Subscriber(emitters.get());
+        subscribers.add(subscriber);
+        subscriber.emitter.onCompletion(subscriber::close);
+        subscriber.emitter.onTimeout(subscriber::close);
+        ensureUpstream();
+        return subscriber.emitter;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        if (upstream != null) {
+            listener.resumed();
+        } else {
+            ensureUpstream();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return ImmutableMap.<String, Object>builder()
+                .put("subscribers", subscribers.size())
+                .put("upstreamOpen", isUpstreamOpen())
+                .put("published", published.get())
+                .put("dropped", dropped.get())
+                .put("disconnected", disconnected.get())
+                .put("resubscribes", resubscribes.get())
+                .put("bufferSize", bufferSize)
+                .put("overflow", overflow.configName)
+                .build();
+    }
+
+    private synchronized boolean isUpstreamOpen() {
+        return upstream != null;
+    }
+
+    private synchronized void ensureUpstream() {
+        if (upstream != null || resubscribePending || (subscribers.isEmpty() && listeners.isEmpty())) return;
+        try {
+            upstream = upstreamUpdates.get().subscribe(this::publish, this::upstreamFailed, () -> upstreamFailed(null));
+            failedSubscribeAttempts = 0;
+            for (Listener listener : listeners) {
+                listener.resumed();
+            }
+            if (missedUpdates) {
+                missedUpdates = false;
+                resubscribes.incrementAndGet();
+                broadcast("resync", "{}");
+            }
+        } catch (RuntimeException e) {
+            failedSubscribeAttempts++;
+            final long delay = Math.min(resubscribeMaxBackoffMillis, 250L << Math.min(failedSubscribeAttempts - 1, 20));
+            logger.warn("Could not subscribe to product updates ({}); retrying in {} ms", e.getMessage(), delay);
+            missedUpdates = true;
+            resubscribePending = true;
+            for (Listener listener : listeners) {
+                listener.interrupted();
+            }
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    resubscribePending = false;
+                }
+                ensureUpstream();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void upstreamFailed(Throwable error) {
+        logger.warn("Product update feed ended{}", error == null ? "" : ": " + error.getMessage());
+        synchronized (this) {
+            upstream = null;
+            missedUpdates = true;
+        }
+        for (Listener listener : listeners) {
+            listener.interrupted();
+        }
+        ensureUpstream();
+    }
+
+    private synchronized void releaseUpstreamIfUnused() {
+        if (subscribers.isEmpty() && listeners.isEmpty() && upstream != null) {
+            upstream.unsubscribe();
+            upstream = null;
+        }
+    }
+
+    private void publish(Vault.Update<ProductState> update) {
+        for (Listener listener : listeners) {
+            listener.updated(update);
+        }
+        if (subscribers.isEmpty()) return;
+        final List<String> consumed = new ArrayList<>(update.getConsumed().size());
+        for (StateAndRef<ProductState> state : update.getConsumed()) {
+            consumed.add(ProductJson.stateRef(state.getRef()));
+        }
+        final List<Map<String, Object>> produced = new ArrayList<>(update.getProduced().size());
+        for (StateAndRef<ProductState> state : update.getProduced()) {
+            produced.add(ProductJson.product(state));
+        }
+        try {
+            broadcast("update", mapper.writeValueAsString(ImmutableMap.of(
+                    "type", update.getType().name(), "consumed", consumed, "produced", produced)));
+            published.incrementAndGet();
+        } catch (JsonProcessingException e) {
+            logger.error("Could not render a product update", e);
+        }
+    }
+
+    private void broadcast(String name, String data) {
+        final Event event = new Event(name, data);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeat();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Event {
+        private static final Event HEARTBEAT = new Event(null, null);
+
+        private final String name;
+        private final String data;
+
+        private Event(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Events dropped since the subscriber was last told about it.
+        private final AtomicLong unreportedDrops = new AtomicLong();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(Event event) {
+            while (!closed.get() && !queue.offer(event)) {
+                if (overflow == Overflow.DISCONNECT) {
+                    disconnected.incrementAndGet();
+                    close();
+                    return;
+                }
+                if (queue.poll() != null) {
+                    unreportedDrops.incrementAndGet();
+                    dropped.incrementAndGet();
+                }
+            }
+            scheduleDrain();
+        }
+
+        private void heartbeat() {
+            if (queue.isEmpty() && queue.offer(Event.HEARTBEAT)) scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!closed.get() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        // Only one drain runs per subscriber at a time, so the emitter is never written to concurrently.
+        private void drain() {
+            try {
+                Event event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    final long drops = unreportedDrops.getAndSet(0);
+                    if (drops > 0) {
+                        emitter.send(SseEmitter.event().name("dropped").data(drops));
+                    }
+                    if (event == Event.HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().name(event.name).data(event.data));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the stream already completed.
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // An event offered after the loop's last poll but before draining was cleared would otherwise wait.
+            if (!queue.isEmpty()) scheduleDrain();
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            subscribers.remove(this);
+            queue.clear();
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // Already completed.
+            }
+            releaseUpstreamIfUnused();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.template.webserver;
+
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.RPCException;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed number of RPC connections to one node, used through a single {@link CordaRPCOps} proxy that sends every call
+ * down one of the connections that is currently up.
+ *
+ * Calls are dispatched round-robin or to the connection with the fewest calls in progress. A background task checks
+ * each connection with a cheap RPC call every health check interval; a connection whose check fails or times out, or
+ * whose call fails with an {@link RPCException}, is closed and reopened with capped exponential backoff. Failed calls
+ * are not retried, since starting a flow is not idempotent. Flow handles and observables belong to the connection
+ * they were obtained on and end with an error if it goes down.
+ */
+public class RPCConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RPCConnectionPool.class);
+    // How often connections are looked at; checks and reconnects are made when each one is due.
+    private static final long MAINTENANCE_PERIOD_MILLIS = 100;
+
+    public enum Dispatch {
+        ROUND_ROBIN("round-robin"),
+        LEAST_BUSY("least-busy");
+
+        private final String configName;
+
+        Dispatch(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public static Dispatch fromConfigName(String configName) {
+            for (Dispatch dispatch : values()) {
+                if (dispatch.configName.equals(configName)) return dispatch;
+            }
+            throw new IllegalArgumentException("Unknown RPC dispatch " + configName + "; expected round-robin or least-busy");
+        }
+    }
+
+    private final NetworkHostAndPort address;
+    private final String username;
+    private final String password;
+    private final Dispatch dispatch;
+    private final long healthCheckIntervalMillis;
+    private final long healthCheckTimeoutMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final List<Member> members;
+    private final AtomicLong next = new AtomicLong();
+    private final CordaRPCOps proxy;
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(daemon("rpc-pool-maintenance"));
+    private final ExecutorService checks = Executors.newCachedThreadPool(daemon("rpc-pool-check"));
+
+    public RPCConnectionPool(NetworkHostAndPort address, String username, String password, int size, Dispatch dispatch,
+                             Duration healthCheckInterval, Duration healthCheckTimeout, Duration initialBackoff, Duration maxBackoff) {
+        if (size < 1) throw new IllegalArgumentException("An RPC connection pool needs at least one connection");
+        this.address = address;
+        this.username = username;
+        this.password = password;
+        this.dispatch = dispatch;
+        this.healthCheckIntervalMillis = healthCheckInterval.toMillis();
+        this.healthCheckTimeoutMillis = healthCheckTimeout.toMillis();
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        final List<Member> members = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            members.add(new Member(i));
+        }
+        this.members = Collections.unmodifiableList(members);
+        this.proxy = (CordaRPCOps) Proxy.newProxyInstance(
+                CordaRPCOps.class.getClassLoader(), new Class<?>[]{CordaRPCOps.class}, (target, method, args) -> invoke(method, args));
+    }
+
+    /**
+     * Opens the connections and starts maintaining them. Connections that cannot be opened now are retried in the
+     * background, so the pool can be started before the node is up.
+     */
+    public void start() {
+        for (Member member : members) {
+            member.reconnect();
+        }
+        maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_PERIOD_MILLIS, MAINTENANCE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The proxy to make RPC calls through. It stays valid for the life of the pool, across reconnects.
+     */
+    public CordaRPCOps getProxy() {
+        return proxy;
+    }
+
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public int getSize() {
+        return members.size();
+    }
+
+    public int getConnectedCount() {
+        int connected = 0;
+        for (Member member : members) {
+            if (member.connection != null) connected++;
+        }
+        return connected;
+    }
+
+    /**
+     * A point-in-time view of every connection in the pool.
+     */
+    public List<ConnectionStats> getStats() {
+        final List<ConnectionStats> stats = new ArrayList<>(members.size());
+        for (Member member : members) {
+            stats.add(new ConnectionStats(member));
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+        checks.shutdownNow();
+        for (Member member : members) {
+            member.disconnect(null);
+        }
+    }
+
+    private Object invoke(Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return "RPCConnectionPool(" + address + ")";
+            }
+        }
+        final Member member = select();
+        final CordaRPCConnection connection = member == null ? null : member.connection;
+        if (connection == null) {
+            throw new RPCException("No RPC connection to " + address + " is available");
+        }
+        member.busy.incrementAndGet();
+        member.calls.incrementAndGet();
+        try {
+            return method.invoke(connection.getProxy(), args);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RPCException) {
+                member.failures.incrementAndGet();
+                member.disconnect(cause);
+            }
+            throw cause;
+        } finally {
+            member.busy.decrementAndGet();
+        }
+    }
+
+    private Member select() {
+        final int size = members.size();
+        final int start = (int) Math.floorMod(next.getAndIncrement(), (long) size);
+        Member best = null;
+        for (int i = 0; i < size; i++) {
+            final Member member = members.get((start + i) % size);
+            if (member.connection == null) continue;
+            if (dispatch == Dispatch.ROUND_ROBIN) return member;
+            if (best == null || member.busy.get() < best.busy.get()) best = member;
+        }
+        return best;
+    }
+
+    private void maintain() {
+        final long now = System.currentTimeMillis();
+        for (Member member : members) {
+            try {
+                if (member.connection == null) {
+                    if (now >= member.nextAttemptAt) member.reconnect();
+                } else if (now - member.lastCheckedAt >= healthCheckIntervalMillis) {
+                    member.check();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("RPC connection {} to {} could not be maintained", member.index, address, e);
+            }
+        }
+    }
+
+    // Exponential backoff capped at maxBackoffMillis, with jitter so that the connections do not retry in lockstep.
+    private long backoff(int failedAttempts) {
+        final long capped = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(failedAttempts - 1, 20));
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class Member {
+        private final int index;
+        private final AtomicInteger busy = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong reconnects = new AtomicLong();
+        private volatile CordaRPCConnection connection;
+        private volatile boolean everConnected;
+        private volatile int failedAttempts;
+        private volatile long nextAttemptAt;
+        private volatile long lastCheckedAt;
+        private volatile String lastError;
+
+        private Member(int index) {
+            this.index = index;
+        }
+
+        private void reconnect() {
+            try {
+                final CordaRPCConnection opened = new CordaRPCClient(address).start(username, password);
+                synchronized (this) {
+                    connection = opened;
+                    lastCheckedAt = System.currentTimeMillis();
+                    failedAttempts = 0;
+                    if (everConnected) reconnects.incrementAndGet();
+                    everConnected = true;
+                }
+                logger.info("RPC connection {} to {} is up", index, address);
+            } catch (RuntimeException e) {
+                failedAttempts++;
+                lastError = String.valueOf(e.getMessage());
+                final long delay = backoff(failedAttempts);
+                nextAttemptAt = System.currentTimeMillis() + delay;
+                logger.warn("RPC connection {} to {} could not be opened ({}); retrying in {} ms", index, address, lastError, delay);
+            }
+        }
+
+        private void check() {
+            final CordaRPCConnection checked = connection;
+            if (checked == null) return;
+            lastCheckedAt = System.currentTimeMillis();
+            try {
+                CompletableFuture.runAsync(() -> checked.getProxy().currentNodeTime(), checks)
+                        .get(healthCheckTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                disconnect(new RPCException("Health check timed out after " + healthCheckTimeoutMillis + " ms"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                disconnect(e.getCause() != null ? e.getCause() : e);
+            }
+        }
+
+        private void disconnect(Throwable reason) {
+            final CordaRPCConnection closed;
+            synchronized (this) {
+                closed = connection;
+                if (closed == null) return;
+                connection = null;
+                // The first reconnect is attempted straight away.
+                nextAttemptAt = 0;
+            }
+            if (reason != null) {
+                lastError = String.valueOf(reason.getMessage());
+                logger.warn("RPC connection {} to {} is down: {}", index, address, lastError);
+            }
+            try {
+                closed.forceClose();
+            } catch (RuntimeException e) {
+                // The connection is already unusable.
+            }
+        }
+    }
+
+    /**
+     * The state and counters of one pooled connection.
+     */
+    public static final class ConnectionStats {
+        private final int index;
+        private final boolean connected;
+        private final int busy;
+        private final long calls;
+        private final long failures;
+        private final long reconnects;
+        private final String lastError;
+
+        private ConnectionStats(Member member) {
+            this.index = member.index;
+            this.connected = member.connection != null;
+            this.busy = member.busy.get();
+            this.calls = member.calls.get();
+            this.failures = member.failures.get();
+            this.reconnects = member.reconnects.get();
+            this.lastError = member.lastError;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public int getBusy() {
+            return busy;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getReconnects() {
+            return reconnects;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.internal.concurrent.CordaFutureImplKt;
+import net.corda.core.internal.concurrent.OpenFuture;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.testing.core.TestIdentity;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadGeneratorTest {
+    private static final Party US = new TestIdentity(new CordaX500Name("PartyA", "London", "GB")).getParty();
+    private static final Party COUNTERPARTY = new TestIdentity(new CordaX500Name("PartyB", "New York", "US")).getParty();
+
+    private final ScheduledExecutorService completions = Executors.newSingleThreadScheduledExecutor();
+    private LoadGenerator generator;
+
+    @After
+    public void tearDown() {
+        if (generator != null) generator.stop();
+        completions.shutdownNow();
+    }
+
+    @Test
+    public void argumentsAreReadAsNameValuePairsAfterTheFirst() {
+        final Map<String, String> options = LoadGenerator.parse(
+                new String[]{"load", "localhost:10006", "user", "flow=iou", "rate=10,20", "out=a=b"}, 3);
+        assertEquals(ImmutableMap.of("flow", "iou", "rate", "10,20", "out", "a=b"), options);
+    }
+
+    @Test
+    public void anArgumentWithoutANameIsRejected() {
+        for (String argument : ImmutableList.of("rate", "=10")) {
+            try {
+                LoadGenerator.parse(new String[]{argument}, 0);
+                fail("Expected " + argument + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(argument));
+            }
+        }
+    }
+
+    @Test
+    public void settingsDefaultToAnUnpacedCreateRun() {
+        final LoadGenerator.Settings settings = new LoadGenerator.Settings(ImmutableMap.of());
+        assertEquals("create", settings.flow);
+        assertEquals(ImmutableList.of(0.0), settings.rates);
+        assertEquals(64, settings.concurrency);
+        assertEquals(TimeUnit.SECONDS.toNanos(60), settings.durationNanos);
+        assertEquals(TimeUnit.SECONDS.toNanos(10), settings.warmupNanos);
+        assertEquals(4, settings.starters);
+        assertEquals("Red", settings.color);
+        assertEquals(new File("build/load"), settings.out);
+    }
+
+    @Test
+    public void settingsStepThroughEveryListedRate() {
+        final LoadGenerator.Settings settings = new LoadGenerator.Settings(
+                ImmutableMap.of("rate", "5, 10,20", "concurrency", "8", "warmup", "0"));
+        assertEquals(ImmutableList.of(5.0, 10.0, 20.0), settings.rates);
+        assertEquals(8, settings.concurrency);
+        assertEquals(0, settings.warmupNanos);
+    }
+
+    @Test
+    public void invalidSettingsAreRejected() {
+        for (Map<String, String> options : ImmutableList.<Map<String, String>>of(
+                ImmutableMap.of("rate", "10,-1"),
+                ImmutableMap.of("rate", "fast"),
+                ImmutableMap.of("concurrency", "0"),
+                ImmutableMap.of("starters", "0"),
+                ImmutableMap.of("duration", "0"),
+                ImmutableMap.of("warmup", "-1"))) {
+            try {
+                new LoadGenerator.Settings(options);
+                fail("Expected " + options + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException too.
+            }
+        }
+    }
+
+    @Test
+    public void anUnknownFlowIsRejected() {
+        try {
+            new LoadGenerator(rpc(() -> completed()), US, "transfer", COUNTERPARTY, "Red", 1, 1);
+            fail("Expected an unknown flow to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("transfer"));
+        }
+    }
+
+    @Test
+    public void flowsAreStartedAtTheTargetRate() throws Exception {
+        generator = new LoadGenerator(rpc(() -> completed()), US, "create", COUNTERPARTY, "Red", 64, 2);
+        final LoadGenerator.Step step = generator.step(20, TimeUnit.SECONDS.toNanos(1), null);
+
+        assertTrue("started " + step.getStarted(), step.getStarted() >= 15 && step.getStarted() <= 25);
+        assertEquals(step.getStarted(), step.getCompleted());
+        assertEquals(0, step.getFailures());
+    }
+
+    @Test
+    public void noMoreThanTheConcurrencyAreInFlightAndAllFinishBeforeTheStepEnds() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        generator = new LoadGenerator(rpc(() -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            final OpenFuture<Object> result = CordaFutureImplKt.openFuture();
+            completions.schedule(() -> {
+                running.decrementAndGet();
+                result.set("done");
+            }, 20, TimeUnit.MILLISECONDS);
+            return result;
+        }), US, "iou", COUNTERPARTY, "Red", 3, 4);
+        final LoadGenerator.Step step = generator.step(0, TimeUnit.MILLISECONDS.toNanos(500), null);
+
+        assertEquals(3, peak.get());
+        assertEquals(0, running.get());
+        assertTrue("started " + step.getStarted(), step.getStarted() > 3);
+        assertEquals(step.getStarted(), step.getCompleted());
+    }
+
+    @Test
+    public void failuresAreBrokenDownByStageAndType() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        generator = new LoadGenerator(rpc(() -> {
+            final int call = calls.incrementAndGet();
+            if (call % 3 == 0) throw new RuntimeException("RPC connection lost");
+            final OpenFuture<Object> result = CordaFutureImplKt.openFuture();
+            if (call % 3 == 1) {
+                result.setException(new FlowException("Counterparty refused"));
+            } else {
+                result.set("done");
+            }
+            return result;
+        }), US, "update", COUNTERPARTY, "Red", 1, 1);
+        final LoadGenerator.Step step = generator.step(0, TimeUnit.MILLISECONDS.toNanos(200), null);
+
+        final Map<String, Long> byType = step.getFailuresByType();
+        assertEquals(ImmutableList.of("flow net.corda.core.flows.FlowException", "start java.lang.RuntimeException"),
+                ImmutableList.copyOf(byType.keySet()));
+        assertEquals(step.getFailures(), byType.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(step.getStarted(), step.getCompleted() + step.getFailures());
+        assertTrue(step.getCompleted() > 0);
+    }
+
+    private static CordaFuture<Object> completed() {
+        final OpenFuture<Object> result = CordaFutureImplKt.openFuture();
+        result.set("done");
+        return result;
+    }
+
+    // A CordaRPCOps whose startFlowDynamic returns a handle over the next result and fails every other call.
+    private static CordaRPCOps rpc(Supplier<CordaFuture<Object>> results) {
+        return (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(), new Class<?>[]{CordaRPCOps.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("startFlowDynamic")) throw new UnsupportedOperationException(method.getName());
+                    final CordaFuture<Object> result = results.get();
+                    return new FlowHandle<Object>() {
+                        private final StateMachineRunId id = StateMachineRunId.Companion.createRandom();
+
+                        @Override
+                        public StateMachineRunId getId() {
+                            return id;
+                        }
+
+                        @Override
+                        public CordaFuture<Object> getReturnValue() {
+                            return result;
+                        }
+
+                        @Override
+                        public void close() {
+                        }
+                    };
+                });
+    }
+}
@@ -0,0 +1,88 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceMergeTest {
+    private static final String FLOW = "ProductCreateFlow$Initiator";
+    private static final String RESPONDER = "ProductCreateFlow$Acceptor";
+    private static final String PARTY_A = "O=PartyA, L=London, C=GB";
+    private static final String PARTY_B = "O=PartyB, L=New York, C=US";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spansFromEveryNodeAreMergedByTraceInStartOrder() throws Exception {
+        final Path initiatorLog = log("node-a.log",
+                "[INFO ] 2026-10-18T10:00:00,000Z [pool-1] trace. Flow started",
+                span("t1", "-", PARTY_A, FLOW, "initiator", "build", 1_000, 500),
+                span("t1", "ABC", PARTY_A, FLOW, "initiator", "handshake", 1_500, 200),
+                span("t1", "ABC", PARTY_A, FLOW, "initiator", "collectSignatures", 1_700, 3_000),
+                span("t1", "ABC", PARTY_A, FLOW, "initiator", "finality", 4_700, 5_000),
+                span("t1", "ABC", PARTY_A, FLOW, "initiator", "flow", 1_000, 8_700),
+                span("t2", "DEF", PARTY_A, FLOW, "initiator", "flow", 20_000, 2_000));
+        final Path responderLog = log("node-b.log",
+                span("t1", "-", PARTY_B, RESPONDER, "responder", "transit", 1_600, 100),
+                span("t1", "ABC", PARTY_B, RESPONDER, "responder", "signTransaction", 1_800, 2_000));
+
+        final List<String> out = merge(ImmutableList.of(initiatorLog, responderLog));
+
+        assertEquals("2 traces", out.get(0));
+        final int t1 = out.indexOf("trace t1 tx ABC: 8.70 ms");
+        final int t2 = out.indexOf("trace t2 tx DEF: 2.00 ms");
+        assertTrue(t1 > 0);
+        assertTrue("The slowest trace comes first", t2 > t1);
+        assertEquals(
+                ImmutableList.of("build", "flow", "handshake", "transit", "collectSignatures", "signTransaction", "finality"),
+                spanNames(out, t1 + 1));
+        assertTrue(out.get(t1 + 4).contains(RESPONDER) && out.get(t1 + 4).contains(PARTY_B));
+        assertTrue(out.get(t1 + 4).trim().startsWith("+     0.60 ms      0.10 ms"));
+
+        final String summary = out.stream().filter(line -> line.contains(FLOW + " initiator flow")).findFirst().orElse("");
+        assertTrue(summary, summary.contains("x2"));
+    }
+
+    private Path log(String name, String... lines) throws IOException {
+        final Path log = folder.newFile(name).toPath();
+        Files.write(log, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return log;
+    }
+
+    private static String span(String trace, String tx, String node, String flow, String side, String name, long start, long duration) {
+        return "[INFO ] 2026-10-18T10:00:00,000Z [pool-1] trace. span trace=" + trace + " tx=" + tx + " node=\"" + node
+                + "\" flow=" + flow + " side=" + side + " name=" + name + " start=" + start + " duration=" + duration;
+    }
+
+    private static List<String> merge(List<Path> logs) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, true, "UTF-8")) {
+            TraceMerge.merge(logs, 10, out);
+        }
+        return Arrays.asList(new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\\R"));
+    }
+
+    // The span names of the trace printed from line {@code first}, up to the blank line that ends it.
+    private static List<String> spanNames(List<String> out, int first) {
+        final List<String> names = new ArrayList<>();
+        for (int i = first; i < out.size() && !out.get(i).isEmpty(); i++) {
+            names.add(out.get(i).trim().split("\\s+")[7]);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,81 @@
+package com.template.webserver;
+
+import net.corda.core.messaging.CordaRPCOps;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ControllerTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private NodeRPCExecutor rpc;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (rpc != null) rpc.stop();
+    }
+
+    @Test
+    public void productListingRejectsUnknownLabelsAndBadPaging() throws Exception {
+        final Controller controller = controller(new RPCOpsStub().proxy(), 1, 10);
+        assertBadRequest(controller.products("Lost", null, 1, 50));
+        assertBadRequest(controller.products(null, "Blue", 1, 50));
+        assertBadRequest(controller.products(null, null, 0, 50));
+        assertBadRequest(controller.products(null, null, 1, 0));
+        assertBadRequest(controller.products(null, null, 1, 201));
+    }
+
+    @Test
+    public void productCreationRejectsAnUnknownOrMalformedCounterparty() throws Exception {
+        final Controller controller = controller(
+                new RPCOpsStub().answer("wellKnownPartyFromX500Name", args -> null).proxy(), 1, 10);
+        assertBadRequest(controller.createProduct("O=Nobody,L=London,C=GB", "Red", "Gadgets"));
+        assertBadRequest(controller.createProduct("not a name", "Red", "Gadgets"));
+    }
+
+    @Test
+    public void requestsAreRefusedWhileTheRPCQueueIsFull() throws Exception {
+        final Controller controller = controller(new RPCOpsStub().proxy(), 1, 1);
+        // One call holds the only RPC thread and another fills the queue.
+        rpc.call(ops -> await());
+        rpc.call(ops -> await());
+
+        final ResponseEntity<Map<String, Object>> response =
+                controller.createProduct("O=PartyB,L=New York,C=US", "Red", "Gadgets").get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertTrue(response.getBody().containsKey("error"));
+    }
+
+    private Controller controller(CordaRPCOps ops, int threads, int queueSize) {
+        final NodeRPCConnection connection = new NodeRPCConnection();
+        connection.proxy = ops;
+        rpc = new NodeRPCExecutor(ops, threads, queueSize);
+        rpc.start();
+        // Validation and RPC failures are answered before the update feed or the page cache is used.
+        return new Controller(connection, rpc, null, null);
+    }
+
+    private static void assertBadRequest(CompletableFuture<ResponseEntity<Map<String, Object>>> response) throws Exception {
+        final ResponseEntity<Map<String, Object>> entity = response.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+        assertTrue(entity.getBody().containsKey("error"));
+    }
+
+    private Object await() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.template.webserver;
+
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.internal.concurrent.CordaFutureImplKt;
+import net.corda.core.internal.concurrent.OpenFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NodeRPCExecutorTest {
+    private final OpenFuture<String> flowResult = CordaFutureImplKt.openFuture();
+    private final RPCOpsStub.Handle<String> handle = new RPCOpsStub.Handle<>(flowResult);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private NodeRPCExecutor rpc;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (rpc != null) rpc.stop();
+    }
+
+    @Test
+    public void aStartedFlowCompletesWithItsResultAndReleasesItsHandle() throws Exception {
+        rpc = executor(2, 10);
+        final CompletableFuture<String> result = rpc.startFlow(Echo.class);
+        assertFalse(result.isDone());
+        assertFalse(handle.isClosed());
+
+        flowResult.set("done");
+        assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        assertTrue(handle.isClosed());
+    }
+
+    @Test
+    public void aFailedFlowStillReleasesItsHandle() throws Exception {
+        rpc = executor(2, 10);
+        final CompletableFuture<String> result = rpc.startFlow(Echo.class);
+
+        flowResult.setException(new FlowException("refused"));
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("The flow's failure was not passed on.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+        assertTrue(handle.isClosed());
+    }
+
+    @Test
+    public void callsBeyondTheQueueFailWithoutBlocking() throws Exception {
+        rpc = executor(1, 1);
+        // One call holds the only thread and another fills the queue.
+        final CompletableFuture<Object> running = rpc.call(ops -> await());
+        final CompletableFuture<Object> queued = rpc.call(ops -> await());
+
+        final CompletableFuture<Object> refused = rpc.call(ops -> "never run");
+        assertTrue(refused.isCompletedExceptionally());
+        try {
+            refused.get();
+            fail("A call beyond the queue was accepted.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    private NodeRPCExecutor executor(int threads, int queueSize) {
+        final NodeRPCExecutor executor = new NodeRPCExecutor(
+                new RPCOpsStub().answer("startFlowDynamic", args -> handle).proxy(), threads, queueSize);
+        executor.start();
+        return executor;
+    }
+
+    private Object await() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    public static class Echo extends FlowLogic<String> {
+        @Override
+        public String call() {
+            return "echo";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.template.webserver;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.node.services.Vault;
+import net.corda.testing.core.TestIdentity;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProductPageCacheTest {
+    private static final TestIdentity SENDER = new TestIdentity(new CordaX500Name("PartyA", "London", "GB"));
+    private static final TestIdentity RECEIVER = new TestIdentity(new CordaX500Name("PartyB", "New York", "US"));
+    private static final TestIdentity NOTARY = new TestIdentity(new CordaX500Name("Notary", "London", "GB"));
+
+    private static final ProductPageCache.Key PENDING_RED = new ProductPageCache.Key(ProductStatus.PENDING, ProductColor.RED, 1, 50);
+    private static final ProductPageCache.Key PENDING_GREEN = new ProductPageCache.Key(ProductStatus.PENDING, ProductColor.GREEN, 1, 50);
+    private static final ProductPageCache.Key RECEIVED = new ProductPageCache.Key(ProductStatus.RECEIVED, null, 1, 50);
+    private static final ProductPageCache.Key ALL = new ProductPageCache.Key(null, null, 1, 50);
+
+    // Every load the cache has started, oldest first. Loads complete only when a test completes them.
+    private final List<CompletableFuture<Map<String, Object>>> loads = new CopyOnWriteArrayList<>();
+    private final List<ProductPageCache.Key> loaded = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void theLeastRecentlyUsedPageIsEvicted() {
+        final ProductPageCache cache = liveCache(2);
+        read(cache, PENDING_RED);
+        read(cache, PENDING_GREEN);
+        // Reading PENDING_RED again makes PENDING_GREEN the least recently used page.
+        read(cache, PENDING_RED);
+        read(cache, RECEIVED);
+        assertEquals(3, loaded.size());
+
+        read(cache, PENDING_RED);
+        assertEquals(3, loaded.size());
+        read(cache, PENDING_GREEN);
+        assertEquals(4, loaded.size());
+        assertEquals(PENDING_GREEN, loaded.get(3));
+        assertEquals(2L, cache.getStats().get("evicted"));
+    }
+
+    @Test
+    public void concurrentMissesForAPageShareOneLoad() throws Exception {
+        final ProductPageCache cache = liveCache(10);
+        final CompletableFuture<Map<String, Object>> first = cache.get(PENDING_RED);
+        final CompletableFuture<Map<String, Object>> second = cache.get(PENDING_RED);
+        assertEquals(1, loads.size());
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        final Map<String, Object> body = body(PENDING_RED);
+        loads.get(0).complete(body);
+        assertSame(body, first.get());
+        assertSame(body, second.get());
+        assertEquals(1L, cache.getStats().get("coalesced"));
+
+        assertSame(body, cache.get(PENDING_RED).get());
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    public void anUpdateEvictsTheMatchingPagesOnly() {
+        final ProductPageCache cache = liveCache(10);
+        read(cache, PENDING_RED);
+        read(cache, PENDING_GREEN);
+        read(cache, ALL);
+
+        cache.updated(produced(ProductStatus.PENDING, ProductColor.RED));
+        read(cache, PENDING_GREEN);
+        assertEquals(3, loaded.size());
+        read(cache, PENDING_RED);
+        read(cache, ALL);
+        assertEquals(5, loaded.size());
+        assertEquals(2L, cache.getStats().get("invalidated"));
+    }
+
+    @Test
+    public void aLoadOverlappingAMatchingUpdateIsNotStored() throws Exception {
+        final ProductPageCache cache = liveCache(10);
+        final CompletableFuture<Map<String, Object>> stale = cache.get(PENDING_RED);
+        final CompletableFuture<Map<String, Object>> unaffected = cache.get(PENDING_GREEN);
+        cache.updated(produced(ProductStatus.PENDING, ProductColor.RED));
+        loads.get(0).complete(body(PENDING_RED));
+        loads.get(1).complete(body(PENDING_GREEN));
+
+        // The caller still gets the page it asked for, but the next read goes back to the node.
+        assertEquals(body(PENDING_RED), stale.get());
+        assertEquals(body(PENDING_GREEN), unaffected.get());
+        cache.get(PENDING_GREEN);
+        assertEquals(2, loads.size());
+        cache.get(PENDING_RED);
+        assertEquals(3, loads.size());
+    }
+
+    @Test
+    public void readsBypassTheCacheWhileTheFeedIsDown() {
+        final ProductPageCache cache = liveCache(10);
+        read(cache, PENDING_RED);
+        cache.interrupted();
+        read(cache, PENDING_RED);
+        read(cache, PENDING_RED);
+        assertEquals(3, loaded.size());
+        assertEquals(2L, cache.getStats().get("bypassed"));
+
+        cache.resumed();
+        read(cache, PENDING_RED);
+        read(cache, PENDING_RED);
+        assertEquals(4, loaded.size());
+        assertTrue((Boolean) cache.getStats().get("live"));
+    }
+
+    private ProductPageCache liveCache(int maxEntries) {
+        final ProductPageCache cache = new ProductPageCache(maxEntries, key -> {
+            final CompletableFuture<Map<String, Object>> load = new CompletableFuture<>();
+            loads.add(load);
+            loaded.add(key);
+            return load;
+        });
+        cache.resumed();
+        return cache;
+    }
+
+    // Reads a page, completing its load straight away if the read reached the node.
+    private void read(ProductPageCache cache, ProductPageCache.Key key) {
+        final int before = loads.size();
+        final CompletableFuture<Map<String, Object>> page = cache.get(key);
+        if (loads.size() > before) loads.get(before).complete(body(key));
+        assertEquals(body(key), page.join());
+    }
+
+    private static Map<String, Object> body(ProductPageCache.Key key) {
+        return ImmutableMap.of("key", key.toString());
+    }
+
+    private static Vault.Update<ProductState> produced(ProductStatus status, ProductColor color) {
+        final ProductState product = new ProductState(SENDER.getParty(), RECEIVER.getParty(), "Gadgets", color, status,
+                new UniqueIdentifier());
+        final StateAndRef<ProductState> produced = new StateAndRef<>(
+                new TransactionState<>(product, ProductContract.PRODUCT_CONTRACT_ID, NOTARY.getParty()),
+                new StateRef(SecureHash.sha256("product"), 0));
+        return new Vault.Update<>(Collections.emptySet(), ImmutableSet.of(produced), null, Vault.UpdateType.GENERAL,
+                Collections.emptySet());
+    }
+}
@@ -0,0 +1,177 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.node.services.Vault;
+import net.corda.testing.core.TestIdentity;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import rx.subjects.PublishSubject;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductUpdateFeedTest {
+    private static final TestIdentity SENDER = new TestIdentity(new CordaX500Name("PartyA", "London", "GB"));
+    private static final TestIdentity RECEIVER = new TestIdentity(new CordaX500Name("PartyB", "New York", "US"));
+    private static final TestIdentity NOTARY = new TestIdentity(new CordaX500Name("Notary", "London", "GB"));
+    private static final SecureHash TX_ID = SecureHash.sha256("products");
+
+    // Every upstream feed the webserver has opened, oldest first.
+    private final List<PublishSubject<Vault.Update<ProductState>>> upstreams = new CopyOnWriteArrayList<>();
+    private RecordingEmitter emitter;
+    private ProductUpdateFeed feed;
+
+    @After
+    public void tearDown() {
+        if (emitter != null) emitter.release();
+        if (feed != null) feed.stop();
+    }
+
+    @Test
+    public void aSlowSubscriberLosesItsOldestEventsAndIsToldHowMany() throws Exception {
+        start(2, ProductUpdateFeed.Overflow.DROP_OLDEST, true);
+        publish(1);
+        // The sender thread is now writing the first update and stays blocked until released.
+        assertEvent("update", stateRef(1), emitter.next());
+        for (int i = 2; i <= 5; i++) {
+            publish(i);
+        }
+        emitter.release();
+
+        assertEvent("dropped", "2", emitter.next());
+        assertEvent("update", stateRef(4), emitter.next());
+        assertEvent("update", stateRef(5), emitter.next());
+        assertEquals(2L, feed.getStats().get("dropped"));
+        assertEquals(1, feed.getStats().get("subscribers"));
+    }
+
+    @Test
+    public void aSlowSubscriberIsDisconnectedWhenItsBufferIsFull() throws Exception {
+        start(2, ProductUpdateFeed.Overflow.DISCONNECT, true);
+        publish(1);
+        assertEvent("update", stateRef(1), emitter.next());
+        publish(2);
+        publish(3);
+        assertFalse(emitter.completed);
+
+        publish(4);
+        assertTrue(emitter.completed);
+        assertEquals(1L, feed.getStats().get("disconnected"));
+        assertEquals(0, feed.getStats().get("subscribers"));
+        // The last subscriber has gone, so the upstream feed is released.
+        assertEquals(false, feed.getStats().get("upstreamOpen"));
+        assertFalse(upstreams.get(0).hasObservers());
+    }
+
+    @Test
+    public void subscribersAreToldToResyncWhenTheUpstreamFeedIsReopened() throws Exception {
+        start(2, ProductUpdateFeed.Overflow.DROP_OLDEST, false);
+        upstreams.get(0).onError(new IllegalStateException("The node restarted"));
+
+        assertEquals(2, upstreams.size());
+        assertEvent("resync", "{}", emitter.next());
+        assertEquals(1L, feed.getStats().get("resubscribes"));
+
+        publish(1);
+        assertEvent("update", stateRef(1), emitter.next());
+    }
+
+    private void start(int bufferSize, ProductUpdateFeed.Overflow overflow, boolean blockSends) {
+        emitter = new RecordingEmitter(blockSends);
+        feed = new ProductUpdateFeed(() -> {
+            final PublishSubject<Vault.Update<ProductState>> upstream = PublishSubject.create();
+            upstreams.add(upstream);
+            return upstream;
+        }, () -> emitter, new ObjectMapper(), bufferSize, overflow);
+        feed.start();
+        feed.subscribe();
+        assertEquals(1, upstreams.size());
+    }
+
+    // Publishes an update consuming the product at output index i of TX_ID.
+    private void publish(int i) {
+        final ProductState product = new ProductState(SENDER.getParty(), RECEIVER.getParty(), "Gadgets", ProductColor.RED,
+                ProductStatus.PENDING, new UniqueIdentifier());
+        final StateAndRef<ProductState> consumed = new StateAndRef<>(
+                new TransactionState<>(product, ProductContract.PRODUCT_CONTRACT_ID, NOTARY.getParty()),
+                new StateRef(TX_ID, i));
+        upstreams.get(upstreams.size() - 1).onNext(new Vault.Update<>(ImmutableSet.of(consumed), Collections.emptySet(),
+                null, Vault.UpdateType.GENERAL, Collections.emptySet()));
+    }
+
+    private static String stateRef(int i) {
+        return ProductJson.stateRef(new StateRef(TX_ID, i));
+    }
+
+    private static void assertEvent(String name, String content, String event) {
+        assertNotNull("No " + name + " event was sent", event);
+        assertTrue(event, event.startsWith("event:" + name + "\n"));
+        assertTrue(event, event.contains(content));
+    }
+
+    /**
+     * Records the events written to it. When blocking, every write waits for {@link #release()}, like a client that
+     * has stopped reading.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private final CountDownLatch released;
+        private volatile boolean completed;
+
+        private RecordingEmitter(boolean blocking) {
+            this.released = new CountDownLatch(blocking ? 1 : 0);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            final StringBuilder event = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                event.append(part.getData());
+            }
+            events.add(event.toString());
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing an event", e);
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+
+        private String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            released.countDown();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.template.webserver;
+
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A CordaRPCOps that answers only the calls a test gives it, by method name, and fails every other call.
+ */
+class RPCOpsStub {
+    private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+
+    RPCOpsStub answer(String method, Function<Object[], Object> answer) {
+        answers.put(method, answer);
+        return this;
+    }
+
+    CordaRPCOps proxy() {
+        return (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(), new Class<?>[] { CordaRPCOps.class },
+                (proxy, method, args) -> {
+                    final Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer == null) throw new UnsupportedOperationException(method.getName());
+                    return answer.apply(args);
+                });
+    }
+
+    /**
+     * A flow handle over the given return value that records whether it was closed.
+     */
+    static class Handle<T> implements FlowHandle<T> {
+        private final StateMachineRunId id = StateMachineRunId.Companion.createRandom();
+        private final CordaFuture<T> returnValue;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Handle(CordaFuture<T> returnValue) {
+            this.returnValue = returnValue;
+        }
+
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        @Override
+        public StateMachineRunId getId() {
+            return id;
+        }
+
+        @Override
+        public CordaFuture<T> getReturnValue() {
+            return returnValue;
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import net.corda.core.contracts.CommandWithParties;
 import net.corda.core.identity.Party;
 
 import java.security.PublicKey;
-import java.util.Arrays;
 import java.util.List;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.Contract;
@@ -17,36 +16,113 @@ import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
 public class IOUContract implements Contract {
     public static final String ID = "com.template.contracts.IOUContract";
 
+    public interface Commands extends CommandData {
+    }
+
     // Our Create command.
-    public static class Create implements CommandData {
+    public static class Create implements Commands {
+    }
+
+    // Issues many IOUs between the same lender and borrower in one transaction.
+    public static class BatchCreate implements Commands {
+    }
+
+    // Replaces IOUs between two parties, in either direction, with at most one IOU for their net balance.
+    public static class Net implements Commands {
     }
 
     @Override
     public void verify(LedgerTransaction tx) {
-        final CommandWithParties<IOUContract.Create> command = requireSingleCommand(tx.getCommands(), IOUContract.Create.class);
+        final CommandWithParties<IOUContract.Commands> command = requireSingleCommand(tx.getCommands(), IOUContract.Commands.class);
+        if (command.getValue() instanceof Net) {
+            verifyNet(tx, command.getSigners());
+            return;
+        }
 
         // Constraints on the shape of the transaction.
         if (!tx.getInputs().isEmpty())
             throw new IllegalArgumentException("No inputs should be consumed when issuing an IOU.");
-        if (!(tx.getOutputs().size() == 1))
-            throw new IllegalArgumentException("There should be one and ONLY one output state of type IOUState.");
-
-        // IOU-specific constraints.
-        final IOUState output = tx.outputsOfType(IOUState.class).get(0);
-        final Party lender = output.getLender();
-        final Party borrower = output.getBorrower();
-        if (output.getValue() <= 0)
-            throw new IllegalArgumentException("The IOU's value must be non-negative and greater than zero");
-        if (lender.equals(borrower))
-            throw new IllegalArgumentException("The lender and the borrower cannot be the same entity.");
+        if (command.getValue() instanceof Create) {
+            if (!(tx.getOutputs().size() == 1))
+                throw new IllegalArgumentException("There should be one and ONLY one output state of type IOUState.");
+        } else if (command.getValue() instanceof BatchCreate) {
+            if (tx.getOutputs().isEmpty())
+                throw new IllegalArgumentException("A batch should issue at least one IOU.");
+        } else {
+            throw new IllegalArgumentException("Unrecognised command.");
+        }
+        final List<IOUState> outputs = tx.outputsOfType(IOUState.class);
+        if (outputs.size() != tx.getOutputs().size())
+            throw new IllegalArgumentException("Every output state should be of type IOUState.");
+
+        // IOU-specific constraints, checked for every IOU. A batch is issued between one lender and one borrower.
+        final Party lender = outputs.get(0).getLender();
+        final Party borrower = outputs.get(0).getBorrower();
+        for (int i = 0; i < outputs.size(); i++) {
+            final IOUState output = outputs.get(i);
+            if (output.getValue() <= 0)
+                throw new IllegalArgumentException("The IOU's value must be non-negative and greater than zero");
+            if (output.getLender().equals(output.getBorrower()))
+                throw new IllegalArgumentException("The lender and the borrower cannot be the same entity.");
+            if (!output.getLender().equals(lender) || !output.getBorrower().equals(borrower))
+                throw new IllegalArgumentException("Every IOU in a batch must have the same lender and borrower.");
+        }
 
         // Constraints on the signers.
         final List<PublicKey> requiredSigners = command.getSigners();
-        final List<PublicKey> expectedSigners = Arrays.asList(borrower.getOwningKey(), lender.getOwningKey());
         if (requiredSigners.size() != 2)
             throw new IllegalArgumentException("There must be two signers.");
-        if (!(requiredSigners.containsAll(expectedSigners)))
+        if (!requiredSigners.contains(borrower.getOwningKey()) || !requiredSigners.contains(lender.getOwningKey()))
             throw new IllegalArgumentException("The borrower and lender must be signers.");
 
     }
-}
\ No newline at end of file
+
+    private static void verifyNet(LedgerTransaction tx, List<PublicKey> requiredSigners) {
+        // Constraints on the shape of the transaction.
+        final List<IOUState> inputs = tx.inputsOfType(IOUState.class);
+        final List<IOUState> outputs = tx.outputsOfType(IOUState.class);
+        if (inputs.size() < 2)
+            throw new IllegalArgumentException("Netting should consume at least two IOUs.");
+        if (inputs.size() != tx.getInputs().size())
+            throw new IllegalArgumentException("Every input state should be of type IOUState.");
+        if (outputs.size() != tx.getOutputs().size())
+            throw new IllegalArgumentException("Every output state should be of type IOUState.");
+        if (outputs.size() > 1)
+            throw new IllegalArgumentException("Netting should produce at most one IOU.");
+
+        // Every IOU, consumed or produced, is between the same two parties, in either direction.
+        final Party party = inputs.get(0).getLender();
+        final Party otherParty = inputs.get(0).getBorrower();
+        if (party.equals(otherParty))
+            throw new IllegalArgumentException("The lender and the borrower cannot be the same entity.");
+
+        // The net value owed to the first input's lender, which the output must carry unchanged.
+        long inputBalance = 0;
+        for (IOUState input : inputs) {
+            inputBalance += balanceOwedTo(party, otherParty, input);
+        }
+        long outputBalance = 0;
+        for (IOUState output : outputs) {
+            if (output.getValue() <= 0)
+                throw new IllegalArgumentException("The IOU's value must be non-negative and greater than zero");
+            outputBalance += balanceOwedTo(party, otherParty, output);
+        }
+        if (inputBalance != outputBalance)
+            throw new IllegalArgumentException("Netting must conserve the value owed between the two parties.");
+
+        // Constraints on the signers.
+        if (requiredSigners.size() != 2)
+            throw new IllegalArgumentException("There must be two signers.");
+        if (!requiredSigners.contains(party.getOwningKey()) || !requiredSigners.contains(otherParty.getOwningKey()))
+            throw new IllegalArgumentException("Both parties must be signers.");
+    }
+
+    // The IOU's value as a credit to {@code party}, or as a debit if {@code party} is the borrower.
+    private static long balanceOwedTo(Party party, Party otherParty, IOUState iou) {
+        if (iou.getLender().equals(party) && iou.getBorrower().equals(otherParty))
+            return iou.getValue();
+        if (iou.getLender().equals(otherParty) && iou.getBorrower().equals(party))
+            return -(long) iou.getValue();
+        throw new IllegalArgumentException("Every IOU being netted must be between the same two parties.");
+    }
+}
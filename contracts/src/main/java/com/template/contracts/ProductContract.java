@@ -1,20 +1,38 @@
 package com.template.contracts;
 
+import com.google.common.io.ByteStreams;
+import com.template.states.ProductReissueLock;
 import com.template.states.ProductState;
+import com.template.states.ProductStatus;
 import net.corda.core.contracts.*;
-import net.corda.core.identity.AbstractParty;
+import net.corda.core.crypto.CryptoUtils;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.SerializationFactory;
 import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.ByteSequence;
 
+import java.io.IOException;
 import java.security.PublicKey;
-import java.util.HashSet;
-import java.util.Set;
-
-import static java.util.stream.Collectors.toSet;
-import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
-import static net.corda.core.contracts.ContractsDSL.requireThat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 
+/**
+ * Every node that validates a product's backchain, including the validating notary, runs verify once per transaction,
+ * so it is written to avoid per-call allocations: the states and signers are checked in place with indexed loops
+ * instead of through streams, collected sets and requireThat lambdas, and each input and output list is walked once.
+ */
 public class ProductContract implements Contract {
     public static final String PRODUCT_CONTRACT_ID = "com.template.contracts.ProductContract";
+    // The entry holding the serialized exit transaction in the attachment of a completed re-issuance.
+    public static final String EXIT_PROOF_ENTRY = "exit.tx";
 
     public interface Commands extends CommandData {
         class Create extends TypeOnlyCommandData implements Commands {
@@ -23,63 +41,397 @@ public class ProductContract implements Contract {
         class UpdateStatus extends TypeOnlyCommandData implements Commands {
         }
 
+        class BatchCreate extends TypeOnlyCommandData implements Commands {
+        }
+
+        class BulkUpdateStatus extends TypeOnlyCommandData implements Commands {
+        }
+
+        /**
+         * Rewrites products unchanged, so that states read through an older serialized form are recorded again in the
+         * current one.
+         */
+        class Migrate extends TypeOnlyCommandData implements Commands {
+        }
+
+        /**
+         * Issues a ProductReissueLock holding an unchanged copy of a product, with its linearId, as the first step of
+         * a re-issuance. The lock has no inputs, so whoever later receives the reissued product does not resolve the
+         * product's history.
+         */
+        class Reissue extends TypeOnlyCommandData implements Commands {
+        }
+
+        /**
+         * Consumes a product without replacing it, as the second step of a re-issuance. The exit names the lock, with
+         * StateRef lockRef, that may be redeemed for the product's copy once the exit is notarised, and references
+         * it, so that the lock checked against the exited product is the one the notary finds unconsumed.
+         */
+        class Exit implements Commands {
+            private final StateRef lockRef;
+
+            public Exit(StateRef lockRef) {
+                this.lockRef = lockRef;
+            }
+
+            public StateRef getLockRef() {
+                return lockRef;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Exit && Objects.equals(lockRef, ((Exit) o).lockRef);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(lockRef);
+            }
+        }
+
+        /**
+         * Redeems a ProductReissueLock for its product, as the last step of a re-issuance. The transaction attaches,
+         * as the attachment with id exitAttachmentId, the notarised exit that consumed the lock's original product and
+         * named the lock. The notary consumes the lock, and the original can only be exited once, so every product
+         * is reissued at most once.
+         */
+        class CompleteReissue implements Commands {
+            private final SecureHash exitAttachmentId;
+
+            public CompleteReissue(SecureHash exitAttachmentId) {
+                this.exitAttachmentId = exitAttachmentId;
+            }
+
+            public SecureHash getExitAttachmentId() {
+                return exitAttachmentId;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof CompleteReissue && Objects.equals(exitAttachmentId, ((CompleteReissue) o).exitAttachmentId);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(exitAttachmentId);
+            }
+        }
+
     }
 
     @Override
     public void verify(LedgerTransaction tx) {
-        final CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
-        final Commands commandData = command.getValue();
-        final Set<PublicKey> setOfSigners = new HashSet<>(command.getSigners());
+        final CommandWithParties<CommandData> command = requireSingleProductCommand(tx);
+        final CommandData commandData = command.getValue();
+        final List<PublicKey> signers = command.getSigners();
         if (commandData instanceof Commands.Create) {
-            verifyCreate(tx, setOfSigners);
+            verifyCreate(tx, signers);
         } else if (commandData instanceof Commands.UpdateStatus) {
-            verifyUpdateStatus(tx, setOfSigners);
+            verifyUpdateStatus(tx, signers);
+        } else if (commandData instanceof Commands.BatchCreate) {
+            verifyBatchCreate(tx, signers);
+        } else if (commandData instanceof Commands.BulkUpdateStatus) {
+            verifyBulkUpdateStatus(tx, signers);
+        } else if (commandData instanceof Commands.Migrate) {
+            verifyMigrate(tx, signers);
+        } else if (commandData instanceof Commands.Reissue) {
+            verifyReissue(tx, signers);
+        } else if (commandData instanceof Commands.Exit) {
+            verifyExit(tx, signers, ((Commands.Exit) commandData).getLockRef());
+        } else if (commandData instanceof Commands.CompleteReissue) {
+            verifyCompleteReissue(tx, signers, ((Commands.CompleteReissue) commandData).getExitAttachmentId());
         } else {
             throw new IllegalArgumentException("Unrecognised command.");
         }
     }
 
-    private Set<PublicKey> keysFromParticipants(ProductState product) {
-        return product
-                .getParticipants().stream()
-                .map(AbstractParty::getOwningKey)
-                .collect(toSet());
+    // Behaves like requireSingleCommand(tx.getCommands(), Commands.class) without filtering into a new list.
+    private static CommandWithParties<CommandData> requireSingleProductCommand(LedgerTransaction tx) {
+        final List<CommandWithParties<CommandData>> commands = tx.getCommands();
+        CommandWithParties<CommandData> found = null;
+        for (int i = 0; i < commands.size(); i++) {
+            final CommandWithParties<CommandData> command = commands.get(i);
+            if (command.getValue() instanceof Commands) {
+                if (found != null) throw new IllegalArgumentException("List has more than one element.");
+                found = command;
+            }
+        }
+        if (found == null) throw new IllegalStateException("Required " + Commands.class.getName() + " command");
+        return found;
     }
 
+    private void verifyCreate(LedgerTransaction tx, List<PublicKey> signers) {
+        require(tx.getInputs().isEmpty(), "No inputs should be consumed when creating a product.");
+        require(tx.getOutputs().size() == 1, "Only one product state should be created.");
+        ProductState product = (ProductState) tx.getOutputs().get(0).getData();
+        verifyNewProduct(product);
+        require(signedByExactly(signers, product),
+                "Both sender and receiver company should sign product create transaction.");
+    }
 
-    private void verifyCreate(LedgerTransaction tx, Set<PublicKey> signers) {
-        requireThat(req -> {
-            req.using("No inputs should be consumed when creating a product.",
-                    tx.getInputStates().isEmpty());
-            req.using("Only one product state should be created.", tx.getOutputStates().size() == 1);
-            ProductState product = (ProductState) tx.getOutputStates().get(0);
-            req.using("Name of the product created must be Gadgets", "Gadgets".equals(product.getProductName()));
-            req.using("A newly issued Product must have be of color either Red or Green", ("Green".equals(product.getProductColor()) || "Red".equals(product.getProductColor())));
-            req.using("A newly issued Product must have status of Pending by default", ("Pending".equals(product.getStatus())));
-            req.using("Both sender and receiver company should sign product create transaction.",
-                    signers.equals(keysFromParticipants(product)));
-            return null;
-        });
+    private void verifyBatchCreate(LedgerTransaction tx, List<PublicKey> signers) {
+        require(tx.getInputs().isEmpty(), "No inputs should be consumed when creating a batch of products.");
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+        require(!outputs.isEmpty(), "At least one product state should be created.");
+        for (int i = 0; i < outputs.size(); i++) {
+            final ContractState output = outputs.get(i).getData();
+            require(output instanceof ProductState, "Every output of a batch create must be a product state.");
+            final ProductState product = (ProductState) output;
+            verifyNewProduct(product);
+            require(signedByParticipantsOf(signers, product),
+                    "Every sender and receiver company should sign a batch product create transaction.");
+        }
+        require(everySignerParticipates(signers, outputs),
+                "Every sender and receiver company should sign a batch product create transaction.");
+    }
+
+    private void verifyNewProduct(ProductState product) {
+        require("Gadgets".equals(product.getProductName()), "Name of the product created must be Gadgets");
+        require(product.getProductColor() != null, "A newly issued Product must have be of color either Red or Green");
+        require(product.getStatus() == ProductStatus.PENDING, "A newly issued Product must have status of Pending by default");
     }
 
 
-    private void verifyUpdateStatus(LedgerTransaction tx, Set<PublicKey> signers) {
-        ProductState inputProductState = tx.inputsOfType(ProductState.class).get(0);
-        ProductState outputProductState = tx.outputsOfType(ProductState.class).get(0);
-        // Constraints on the shape of the transaction.
+    private void verifyUpdateStatus(LedgerTransaction tx, List<PublicKey> signers) {
+        // Constraints on the shape of the transaction, checked before any state is read.
         if (tx.getInputs().isEmpty())
             throw new IllegalArgumentException("A product update transaction should consume one input state ---------> tx.getInputs().isEmpty() ");
         if (tx.getInputs().size() > 1)
             throw new IllegalArgumentException("A product update transaction should consume ONLY one input state -----------> tx.getInputs().size() > 1");
         if (tx.getOutputs().size() > 1)
             throw new IllegalArgumentException("A product update transaction should create ONLY one output state ------------> tx.getOutputs().size() > 1");
-        if (!("Received".equals(outputProductState.getStatus())))
+        if (tx.getOutputs().isEmpty() || !(tx.getInputs().get(0).getState().getData() instanceof ProductState)
+                || !(tx.getOutputs().get(0).getData() instanceof ProductState))
+            throw new IllegalArgumentException("A product update transaction should consume and create one product state");
+        ProductState outputProductState = (ProductState) tx.getOutputs().get(0).getData();
+        if (outputProductState.getStatus() != ProductStatus.RECEIVED)
             throw new IllegalArgumentException("The Product state must change to  RECEIVED after update transaction ---------------> 'Received'.equals(outputProductState.getStatus())");
-        if (!("Red".equals(outputProductState.getProductColor()) || "Green".equals(outputProductState.getProductColor())))
+        if (outputProductState.getProductColor() == null)
             throw new IllegalArgumentException("The Product color must either be Red or Green  ---------------> 'Red'.equals(outputProductState.getStatus())");
-        if(!(signers.equals(keysFromParticipants(outputProductState))))
+        if (!signedByExactly(signers, outputProductState))
             throw new IllegalArgumentException("Both the parties (from and to) should sign the update product transaction -------------------> signers.equals(keysFromParticipants(outputProductState))");
 
     }
 
-}
\ No newline at end of file
+    private void verifyBulkUpdateStatus(LedgerTransaction tx, List<PublicKey> signers) {
+        final List<StateAndRef<ContractState>> inputs = tx.getInputs();
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+        require(!inputs.isEmpty(), "A bulk product update transaction should consume at least one input state.");
+        require(inputs.size() == outputs.size(),
+                "A bulk product update transaction should create one output state per input state.");
+
+        // The one allocation on this path: pairing inputs with outputs in a single pass over each list.
+        final Map<UniqueIdentifier, ProductState> inputsByLinearId = new HashMap<>(inputs.size() * 4 / 3 + 1);
+        for (int i = 0; i < inputs.size(); i++) {
+            final ContractState input = inputs.get(i).getState().getData();
+            require(input instanceof ProductState, "Every input of a bulk update must be a product state.");
+            final ProductState product = (ProductState) input;
+            require(product.getStatus() == ProductStatus.PENDING, "Every product consumed by a bulk update must be Pending.");
+            require(inputsByLinearId.put(product.getLinearId(), product) == null,
+                    "A product may only be consumed once in a bulk update.");
+        }
+
+        for (int i = 0; i < outputs.size(); i++) {
+            final ContractState output = outputs.get(i).getData();
+            require(output instanceof ProductState, "Every output of a bulk update must be a product state.");
+            final ProductState product = (ProductState) output;
+            // Pairing by linearId and removing the match also rules out two outputs for the same input.
+            final ProductState input = inputsByLinearId.remove(product.getLinearId());
+            require(input != null, "Every output of a bulk update must have an input with the same linearId.");
+            require(product.getStatus() == ProductStatus.RECEIVED, "The Product state must change to Received after a bulk update.");
+            require(input.getProductName().equals(product.getProductName()), "A bulk update must not change the product name.");
+            require(input.getProductColor() == product.getProductColor(), "A bulk update must not change the product color.");
+            require(sameParticipants(input, product), "A bulk update must keep the same participants.");
+            require(signedByParticipantsOf(signers, product),
+                    "Every sender and receiver company should sign a bulk product update transaction.");
+        }
+        require(everySignerParticipates(signers, outputs),
+                "Every sender and receiver company should sign a bulk product update transaction.");
+    }
+
+    private void verifyMigrate(LedgerTransaction tx, List<PublicKey> signers) {
+        final List<StateAndRef<ContractState>> inputs = tx.getInputs();
+        final List<TransactionState<ContractState>> outputs = tx.getOutputs();
+        require(!inputs.isEmpty(), "A product migration should consume at least one input state.");
+        require(inputs.size() == outputs.size(), "A product migration should create one output state per input state.");
+
+        final Map<UniqueIdentifier, ProductState> inputsByLinearId = new HashMap<>(inputs.size() * 4 / 3 + 1);
+        for (int i = 0; i < inputs.size(); i++) {
+            final ContractState input = inputs.get(i).getState().getData();
+            require(input instanceof ProductState, "Every input of a product migration must be a product state.");
+            final ProductState product = (ProductState) input;
+            require(inputsByLinearId.put(product.getLinearId(), product) == null,
+                    "A product may only be consumed once in a product migration.");
+        }
+
+        for (int i = 0; i < outputs.size(); i++) {
+            final ContractState output = outputs.get(i).getData();
+            require(output instanceof ProductState, "Every output of a product migration must be a product state.");
+            final ProductState product = (ProductState) output;
+            final ProductState input = inputsByLinearId.remove(product.getLinearId());
+            require(input != null, "Every output of a product migration must have an input with the same linearId.");
+            require(sameProduct(input, product), "A product migration must not change the product.");
+            require(signedByParticipantsOf(signers, product),
+                    "Every sender and receiver company should sign a product migration.");
+        }
+        require(everySignerParticipates(signers, outputs),
+                "Every sender and receiver company should sign a product migration.");
+    }
+
+    private void verifyReissue(LedgerTransaction tx, List<PublicKey> signers) {
+        require(tx.getInputs().isEmpty(), "No inputs should be consumed when reissuing a product.");
+        require(tx.getOutputs().size() == 1, "Only one product re-issuance lock should be issued.");
+        final ContractState output = tx.getOutputs().get(0).getData();
+        require(output instanceof ProductReissueLock, "The output of a product re-issuance must be a product re-issuance lock.");
+        final ProductReissueLock lock = (ProductReissueLock) output;
+        require(lock.getOriginal() != null, "A product re-issuance lock must name the product it reissues.");
+        final ProductState product = lock.getProduct();
+        require(product.getProductColor() != null && product.getStatus() != null,
+                "A reissued product must have a color and a status.");
+        require(signedByExactly(signers, product),
+                "Both sender and receiver company should sign a product re-issuance.");
+    }
+
+    private void verifyExit(LedgerTransaction tx, List<PublicKey> signers, StateRef lockRef) {
+        require(lockRef != null, "A product exit must name the re-issuance lock it releases.");
+        require(tx.getInputs().size() == 1, "A product exit should consume one input state.");
+        require(tx.getOutputs().isEmpty(), "A product exit should not create any output state.");
+        final StateAndRef<ContractState> input = tx.getInputs().get(0);
+        require(input.getState().getData() instanceof ProductState, "The input of a product exit must be a product state.");
+        final ProductState product = (ProductState) input.getState().getData();
+        require(tx.getReferences().size() == 1 && tx.getReferences().get(0).getRef().equals(lockRef),
+                "A product exit should reference only the re-issuance lock it releases.");
+        final ContractState reference = tx.getReferences().get(0).getState().getData();
+        require(reference instanceof ProductReissueLock, "The reference of a product exit must be a product re-issuance lock.");
+        final ProductReissueLock lock = (ProductReissueLock) reference;
+        require(input.getRef().equals(lock.getOriginal()), "A product exit must release a lock issued for the exited product.");
+        require(sameProduct(lock.getProduct(), product), "A product exit must release a lock holding the exited product.");
+        require(signedByExactly(signers, product),
+                "Both sender and receiver company should sign a product exit.");
+    }
+
+    private void verifyCompleteReissue(LedgerTransaction tx, List<PublicKey> signers, SecureHash exitAttachmentId) {
+        require(tx.getInputs().size() == 1, "A completed re-issuance should consume one re-issuance lock.");
+        require(tx.getOutputs().size() == 1, "Only one product state should be reissued.");
+        final StateAndRef<ContractState> lockInput = tx.getInputs().get(0);
+        require(lockInput.getState().getData() instanceof ProductReissueLock,
+                "The input of a completed re-issuance must be a product re-issuance lock.");
+        final ProductReissueLock lock = (ProductReissueLock) lockInput.getState().getData();
+        final ContractState output = tx.getOutputs().get(0).getData();
+        require(output instanceof ProductState, "The output of a completed re-issuance must be a product state.");
+        final ProductState product = (ProductState) output;
+        require(sameProduct(lock.getProduct(), product), "A reissued product must be the one held by its lock.");
+        require(signedByExactly(signers, product),
+                "Both sender and receiver company should sign a completed re-issuance.");
+
+        final SignedTransaction exit = exitAttachmentId == null ? null : readExitProof(tx, exitAttachmentId);
+        require(exit != null, "A completed re-issuance must attach the transaction that exited the original product.");
+        require(exit.getTx().getInputs().size() == 1 && exit.getTx().getInputs().get(0).equals(lock.getOriginal()),
+                "The attached exit must consume the product the lock was issued for.");
+        require(exit.getTx().getReferences().size() == 1 && exit.getTx().getReferences().get(0).equals(lockInput.getRef()),
+                "The attached exit must reference the lock being redeemed.");
+        final List<Command<?>> exitCommands = exit.getTx().getCommands();
+        require(exitCommands.size() == 1 && exitCommands.get(0).getValue() instanceof Commands.Exit
+                        && lockInput.getRef().equals(((Commands.Exit) exitCommands.get(0).getValue()).getLockRef()),
+                "The attached exit must name the lock being redeemed.");
+        require(notarisedBy(exit, tx.getNotary()), "The attached exit must be notarised by the lock's notary.");
+    }
+
+    /**
+     * Reads the exit transaction that the flow completing a re-issuance packs into the attachment with the given id,
+     * or returns null if the transaction has no such attachment or it holds no exit. An attachment that cannot be read
+     * or an exit that cannot be deserialized is an error, not a missing proof, and is thrown.
+     */
+    public static SignedTransaction readExitProof(LedgerTransaction tx, SecureHash attachmentId) {
+        Attachment attachment = null;
+        for (Attachment candidate : tx.getAttachments()) {
+            if (candidate.getId().equals(attachmentId)) attachment = candidate;
+        }
+        if (attachment == null) return null;
+        try (JarInputStream jar = attachment.openAsJAR()) {
+            JarEntry entry;
+            while ((entry = jar.getNextJarEntry()) != null) {
+                if (EXIT_PROOF_ENTRY.equals(entry.getName())) {
+                    final SerializationFactory factory = SerializationFactory.Companion.getDefaultFactory();
+                    return factory.deserialize(ByteSequence.of(ByteStreams.toByteArray(jar)), SignedTransaction.class,
+                            factory.getDefaultContext());
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the exit proof in attachment " + attachmentId, e);
+        }
+    }
+
+    // The transaction carries valid signatures that fulfil the notary's key, so its inputs were consumed by it.
+    private static boolean notarisedBy(SignedTransaction stx, Party notary) {
+        if (notary == null || !notary.equals(stx.getTx().getNotary())) return false;
+        final List<PublicKey> validSigners = new ArrayList<>(stx.getSigs().size());
+        for (TransactionSignature signature : stx.getSigs()) {
+            if (isValid(signature, stx.getId())) validSigners.add(signature.getBy());
+        }
+        return CryptoUtils.isFulfilledBy(notary.getOwningKey(), validSigners);
+    }
+
+    private static boolean isValid(TransactionSignature signature, SecureHash txId) {
+        try {
+            return signature.isValid(txId);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether two product states hold the same product, field for field, since ProductState does not define equality.
+     */
+    public static boolean sameProduct(ProductState a, ProductState b) {
+        return a.getLinearId().equals(b.getLinearId())
+                && a.getFrom().equals(b.getFrom()) && a.getTo().equals(b.getTo())
+                && a.getProductName().equals(b.getProductName())
+                && a.getProductColor() == b.getProductColor()
+                && a.getStatus() == b.getStatus()
+                && Objects.equals(a.getReceiptDeadline(), b.getReceiptDeadline());
+    }
+
+    // Same message format as requireThat, but the message is only built when the requirement fails.
+    private static void require(boolean requirement, String message) {
+        if (!requirement) throw new IllegalArgumentException("Failed requirement: " + message);
+    }
+
+    // The set of signers equals the set of the product's participant keys.
+    private static boolean signedByExactly(List<PublicKey> signers, ProductState product) {
+        if (!signedByParticipantsOf(signers, product)) return false;
+        for (int i = 0; i < signers.size(); i++) {
+            if (!isParticipantKey(signers.get(i), product)) return false;
+        }
+        return true;
+    }
+
+    private static boolean signedByParticipantsOf(List<PublicKey> signers, ProductState product) {
+        return signers.contains(product.getFrom().getOwningKey()) && signers.contains(product.getTo().getOwningKey());
+    }
+
+    // Together with signedByParticipantsOf on every output, this makes the set of signers equal the union of the
+    // outputs' participant keys.
+    private static boolean everySignerParticipates(List<PublicKey> signers, List<TransactionState<ContractState>> outputs) {
+        for (int i = 0; i < signers.size(); i++) {
+            final PublicKey signer = signers.get(i);
+            boolean participates = false;
+            for (int j = 0; j < outputs.size() && !participates; j++) {
+                participates = isParticipantKey(signer, (ProductState) outputs.get(j).getData());
+            }
+            if (!participates) return false;
+        }
+        return true;
+    }
+
+    private static boolean isParticipantKey(PublicKey key, ProductState product) {
+        return key.equals(product.getFrom().getOwningKey()) || key.equals(product.getTo().getOwningKey());
+    }
+
+    private static boolean sameParticipants(ProductState a, ProductState b) {
+        return isParticipantKey(a.getFrom().getOwningKey(), b) && isParticipantKey(a.getTo().getOwningKey(), b)
+                && isParticipantKey(b.getFrom().getOwningKey(), a) && isParticipantKey(b.getTo().getOwningKey(), a);
+    }
+
+}
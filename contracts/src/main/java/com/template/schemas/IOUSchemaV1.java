@@ -0,0 +1,65 @@
+package com.template.schemas;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * An IOUState schema.
+ *
+ * The lender and borrower columns are indexed together, so that the IOUs between a pair of parties can be found by
+ * the database instead of by loading every IOU state in the vault.
+ */
+public class IOUSchemaV1 extends MappedSchema {
+    public IOUSchemaV1() {
+        super(IOUSchema.class, 1, ImmutableList.of(PersistentIOU.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "iou.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "iou_states", indexes = {
+            @Index(name = "iou_lender_borrower_idx", columnList = "lender, borrower"),
+            @Index(name = "iou_borrower_idx", columnList = "borrower")
+    })
+    public static class PersistentIOU extends PersistentState {
+        @Column(name = "lender") private final String lender;
+        @Column(name = "borrower") private final String borrower;
+        @Column(name = "iou_value") private final int value;
+
+        public PersistentIOU(String lender, String borrower, int value) {
+            this.lender = lender;
+            this.borrower = borrower;
+            this.value = value;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentIOU() {
+            this.lender = null;
+            this.borrower = null;
+            this.value = 0;
+        }
+
+        public String getLender() {
+            return lender;
+        }
+
+        public String getBorrower() {
+            return borrower;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.template.schemas;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.hibernate.annotations.Type;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Consumed product states moved out of the vault by ProductArchiveFlow. A row keeps the product's columns from
+ * product_states together with the times the vault recorded and consumed the state.
+ *
+ * The archive is not a vault table, so it is read through ProductArchiveQueryFlow rather than through vault queries.
+ */
+public class ProductArchiveSchemaV1 extends MappedSchema {
+    public ProductArchiveSchemaV1() {
+        super(ProductArchiveSchema.class, 1, ImmutableList.of(PersistentArchivedProduct.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "product-archive.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "product_states_archive", indexes = {
+            @Index(name = "product_archive_linear_id_idx", columnList = "linear_id"),
+            @Index(name = "product_archive_consumed_idx", columnList = "consumed_timestamp"),
+            @Index(name = "product_archive_from_idx", columnList = "from_party"),
+            @Index(name = "product_archive_to_idx", columnList = "to_party")
+    })
+    public static class PersistentArchivedProduct extends PersistentState {
+        @Column(name = "from_party") private final String from;
+        @Column(name = "to_party") private final String to;
+        @Column(name = "product_name") private final String productName;
+        @Column(name = "product_color") private final String productColor;
+        @Column(name = "status") private final String status;
+        @Column(name = "linear_id") @Type(type = "uuid-char") private final UUID linearId;
+        @Column(name = "recorded_timestamp") private final Instant recordedTime;
+        @Column(name = "consumed_timestamp") private final Instant consumedTime;
+        @Column(name = "archived_timestamp") private final Instant archivedTime;
+
+        public PersistentArchivedProduct(String from, String to, String productName, String productColor, String status,
+                                         UUID linearId, Instant recordedTime, Instant consumedTime, Instant archivedTime) {
+            this.from = from;
+            this.to = to;
+            this.productName = productName;
+            this.productColor = productColor;
+            this.status = status;
+            this.linearId = linearId;
+            this.recordedTime = recordedTime;
+            this.consumedTime = consumedTime;
+            this.archivedTime = archivedTime;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentArchivedProduct() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public String getProductColor() {
+            return productColor;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+
+        public Instant getRecordedTime() {
+            return recordedTime;
+        }
+
+        public Instant getConsumedTime() {
+            return consumedTime;
+        }
+
+        public Instant getArchivedTime() {
+            return archivedTime;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.template.schemas;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.hibernate.annotations.Type;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * A ProductReissueLock schema.
+ *
+ * The product a lock was issued for is indexed, so that ProductReissueFlow finds a lock left by an earlier run with
+ * one lookup instead of by loading every lock in the vault.
+ */
+public class ProductReissueLockSchemaV1 extends MappedSchema {
+    public ProductReissueLockSchemaV1() {
+        super(ProductReissueLockSchema.class, 1, ImmutableList.of(PersistentReissueLock.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "product-reissue-lock.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "product_reissue_locks", indexes = {
+            @Index(name = "product_reissue_original_idx", columnList = "original_transaction_id, original_output_index")
+    })
+    public static class PersistentReissueLock extends PersistentState {
+        @Column(name = "original_transaction_id") private final String originalTxId;
+        @Column(name = "original_output_index") private final Integer originalIndex;
+        @Column(name = "linear_id") @Type(type = "uuid-char") private final UUID linearId;
+
+        public PersistentReissueLock(String originalTxId, Integer originalIndex, UUID linearId) {
+            this.originalTxId = originalTxId;
+            this.originalIndex = originalIndex;
+            this.linearId = linearId;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentReissueLock() {
+            this(null, null, null);
+        }
+
+        public String getOriginalTxId() {
+            return originalTxId;
+        }
+
+        public Integer getOriginalIndex() {
+            return originalIndex;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+    }
+}
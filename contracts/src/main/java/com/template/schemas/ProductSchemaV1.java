@@ -0,0 +1,103 @@
+package com.template.schemas;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.hibernate.annotations.Type;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A ProductState schema.
+ *
+ * The columns the flows filter on are indexed, so that vault lookups by status, color, name or counterparty are
+ * answered by the database instead of by loading every product state. Status and receipt deadline are indexed
+ * together for AutoReceiptService, which looks for Pending products past their deadline.
+ */
+public class ProductSchemaV1 extends MappedSchema {
+    public ProductSchemaV1() {
+        super(ProductSchema.class, 1, ImmutableList.of(PersistentProduct.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "product.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "product_states", indexes = {
+            @Index(name = "product_status_color_idx", columnList = "status, product_color"),
+            @Index(name = "product_color_idx", columnList = "product_color"),
+            @Index(name = "product_name_idx", columnList = "product_name"),
+            @Index(name = "product_from_idx", columnList = "from_party"),
+            @Index(name = "product_to_idx", columnList = "to_party"),
+            @Index(name = "product_linear_id_idx", columnList = "linear_id"),
+            @Index(name = "product_status_deadline_idx", columnList = "status, receipt_deadline")
+    })
+    public static class PersistentProduct extends PersistentState {
+        @Column(name = "from_party") private final String from;
+        @Column(name = "to_party") private final String to;
+        @Column(name = "product_name") private final String productName;
+        @Column(name = "product_color") private final String productColor;
+        @Column(name = "status") private final String status;
+        @Column(name = "linear_id") @Type(type = "uuid-char") private final UUID linearId;
+        @Column(name = "receipt_deadline") private final Instant receiptDeadline;
+
+        public PersistentProduct(String from, String to, String productName, String productColor, String status, UUID linearId,
+                                 Instant receiptDeadline) {
+            this.from = from;
+            this.to = to;
+            this.productName = productName;
+            this.productColor = productColor;
+            this.status = status;
+            this.linearId = linearId;
+            this.receiptDeadline = receiptDeadline;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentProduct() {
+            this.from = null;
+            this.to = null;
+            this.productName = null;
+            this.productColor = null;
+            this.status = null;
+            this.linearId = null;
+            this.receiptDeadline = null;
+        }
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public String getProductColor() {
+            return productColor;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+
+        public Instant getReceiptDeadline() {
+            return receiptDeadline;
+        }
+    }
+}
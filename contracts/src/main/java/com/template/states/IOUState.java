@@ -1,11 +1,15 @@
 package com.template.states;
 
 
+import com.google.common.collect.ImmutableList;
 import com.template.contracts.IOUContract;
+import com.template.schemas.IOUSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 
 import java.util.Arrays;
 import java.util.List;
@@ -15,7 +19,7 @@ import java.util.List;
 // *********
 
 @BelongsToContract(IOUContract.class)
-public class IOUState implements ContractState {
+public class IOUState implements QueryableState {
     private final int value;
     private final Party lender;
     private final Party borrower;
@@ -42,4 +46,18 @@ public class IOUState implements ContractState {
     public List<AbstractParty> getParticipants() {
         return Arrays.asList(lender, borrower);
     }
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof IOUSchemaV1) {
+            return new IOUSchemaV1.PersistentIOU(lender.getName().toString(), borrower.getName().toString(), value);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new IOUSchemaV1());
+    }
 }
\ No newline at end of file
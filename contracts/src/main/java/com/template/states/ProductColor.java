@@ -0,0 +1,48 @@
+package com.template.states;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The colors a product can be made in. A ProductState serializes only the one-byte code, and the vault schema stores
+ * the label, so neither may change for an existing constant.
+ */
+@CordaSerializable
+public enum ProductColor {
+    RED((byte) 1, "Red"),
+    GREEN((byte) 2, "Green");
+
+    private final byte code;
+    private final String label;
+
+    ProductColor(byte code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static ProductColor fromCode(byte code) {
+        for (ProductColor color : values()) {
+            if (color.code == code) return color;
+        }
+        throw new IllegalArgumentException("Unknown product color code " + code);
+    }
+
+    public static ProductColor fromLabel(String label) {
+        for (ProductColor color : values()) {
+            if (color.label.equals(label)) return color;
+        }
+        throw new IllegalArgumentException("Unknown product color " + label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
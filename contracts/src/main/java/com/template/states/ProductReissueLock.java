@@ -0,0 +1,58 @@
+package com.template.states;
+
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.ProductContract;
+import com.template.schemas.ProductReissueLockSchemaV1;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
+
+import java.util.List;
+
+/**
+ * Holds the copy of a product that a re-issuance will issue, until the original product has been exited. It is issued
+ * without inputs, so the reissued product's history starts here, and it can only be redeemed for its product by a
+ * transaction that attaches the notarised exit of {@code original} naming this lock. The exit also references the
+ * lock, so the contract can check that the lock holds the product being exited.
+ */
+@BelongsToContract(ProductContract.class)
+public class ProductReissueLock implements QueryableState {
+    private final StateRef original;
+    private final ProductState product;
+
+    public ProductReissueLock(StateRef original, ProductState product) {
+        this.original = original;
+        this.product = product;
+    }
+
+    public StateRef getOriginal() {
+        return original;
+    }
+
+    public ProductState getProduct() {
+        return product;
+    }
+
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return product.getParticipants();
+    }
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof ProductReissueLockSchemaV1) {
+            return new ProductReissueLockSchemaV1.PersistentReissueLock(original.getTxhash().toString(),
+                    original.getIndex(), product.getLinearId().getId());
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new ProductReissueLockSchemaV1());
+    }
+}
@@ -1,23 +1,44 @@
 package com.template.states;
 
 import com.template.contracts.ProductContract;
+import com.template.schemas.ProductSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
 import net.corda.core.contracts.LinearState;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import net.corda.core.serialization.ConstructorForDeserialization;
+import net.corda.core.serialization.DeprecatedConstructorForDeserialization;
 import com.google.common.collect.ImmutableList;
 
+import java.time.Instant;
 import java.util.List;
 
+/**
+ * A product sent from one company to another. Color and status are serialized as one-byte codes rather than as
+ * strings or enums: every state in a backchain carries its own AMQP schema, and a byte field adds neither the
+ * repeated text nor an enum type listing its constants. Products issued before the codes were introduced are
+ * still read through the version 1 constructor, and products issued before receipt deadlines through version 2.
+ *
+ * A Pending product past its receipt deadline is marked Received by the receiver's AutoReceiptService.
+ */
 @BelongsToContract(ProductContract.class)
-public class ProductState implements LinearState {
+public class ProductState implements LinearState, QueryableState {
+    // The version of the serialized form written by this class, counting the deprecated constructors' versions.
+    public static final int CURRENT_ENCODING_VERSION = 3;
+
     private final AbstractParty to;
     private final AbstractParty from;
     private final String productName;
-    private final String productColor;
-    private final String status;
+    private final ProductColor productColor;
+    private final ProductStatus status;
     private final UniqueIdentifier linearId;
+    private final Instant receiptDeadline;
+    // Not serialized: there is no constructor parameter for it.
+    private final int encodingVersion;
 
     public AbstractParty getTo() {
         return to;
@@ -31,26 +52,80 @@ public class ProductState implements LinearState {
         return productName;
     }
 
-    public String getProductColor() {
+    public ProductColor getProductColor() {
         return productColor;
-    } // Only Red or Green allowed. This is addressed in contract
+    }
 
-    public String getStatus() {
+    public ProductStatus getStatus() {
         return status;
     }
 
+    public byte getColorCode() {
+        return productColor.getCode();
+    }
+
+    public byte getStatusCode() {
+        return status.getCode();
+    }
+
     public UniqueIdentifier getLinearId() {
         return linearId;
     }
 
-    @ConstructorForDeserialization
-    public ProductState(AbstractParty from, AbstractParty to, String productName, String productColor, String status, UniqueIdentifier linearId) {
+    /**
+     * When a Pending product is received automatically, or null if it is only received on request.
+     */
+    public Instant getReceiptDeadline() {
+        return receiptDeadline;
+    }
+
+    /**
+     * The version of the serialized form this product was read from, which is that of the deprecated constructor the
+     * node deserialized it through, or {@link #CURRENT_ENCODING_VERSION} for the current form and for products
+     * created in code.
+     */
+    public int getEncodingVersion() {
+        return encodingVersion;
+    }
+
+    public ProductState(AbstractParty from, AbstractParty to, String productName, ProductColor productColor, ProductStatus status, UniqueIdentifier linearId) {
+        this(from, to, productName, productColor, status, linearId, null);
+    }
+
+    public ProductState(AbstractParty from, AbstractParty to, String productName, ProductColor productColor, ProductStatus status, UniqueIdentifier linearId, Instant receiptDeadline) {
+        this(from, to, productName, productColor, status, linearId, receiptDeadline, CURRENT_ENCODING_VERSION);
+    }
+
+    private ProductState(AbstractParty from, AbstractParty to, String productName, ProductColor productColor, ProductStatus status, UniqueIdentifier linearId, Instant receiptDeadline, int encodingVersion) {
         this.from = from;
         this.to = to;
         this.productName = productName;
         this.productColor = productColor;
         this.status = status;
         this.linearId = linearId;
+        this.receiptDeadline = receiptDeadline;
+        this.encodingVersion = encodingVersion;
+    }
+
+    @ConstructorForDeserialization
+    public ProductState(AbstractParty from, AbstractParty to, String productName, byte colorCode, byte statusCode, UniqueIdentifier linearId, Instant receiptDeadline) {
+        this(from, to, productName, ProductColor.fromCode(colorCode), ProductStatus.fromCode(statusCode), linearId, receiptDeadline);
+    }
+
+    /**
+     * Reads products serialized before receipt deadlines.
+     */
+    @DeprecatedConstructorForDeserialization(version = 2)
+    public ProductState(AbstractParty from, AbstractParty to, String productName, byte colorCode, byte statusCode, UniqueIdentifier linearId) {
+        this(from, to, productName, ProductColor.fromCode(colorCode), ProductStatus.fromCode(statusCode), linearId, null, 2);
+    }
+
+    /**
+     * Reads products serialized with the color and status as their labels, before the compact codes.
+     */
+    @DeprecatedConstructorForDeserialization(version = 1)
+    public ProductState(AbstractParty from, AbstractParty to, String productName, String productColor, String status, UniqueIdentifier linearId) {
+        this(from, to, productName, ProductColor.fromLabel(productColor), ProductStatus.fromLabel(status), linearId, null, 1);
     }
 
 
@@ -59,4 +134,31 @@ public class ProductState implements LinearState {
         return ImmutableList.of(from, to);
     }
 
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof ProductSchemaV1) {
+            return new ProductSchemaV1.PersistentProduct(
+                    partyName(from),
+                    partyName(to),
+                    productName,
+                    productColor.getLabel(),
+                    status.getLabel(),
+                    linearId.getId(),
+                    receiptDeadline);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new ProductSchemaV1());
+    }
+
+    // Anonymous parties have no name, so they are stored as null.
+    private static String partyName(AbstractParty party) {
+        final CordaX500Name name = party.nameOrNull();
+        return name == null ? null : name.toString();
+    }
+
 }
\ No newline at end of file
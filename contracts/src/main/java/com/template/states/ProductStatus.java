@@ -0,0 +1,48 @@
+package com.template.states;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * Where a product is in its delivery. A ProductState serializes only the one-byte code, and the vault schema stores the
+ * label, so neither may change for an existing constant.
+ */
+@CordaSerializable
+public enum ProductStatus {
+    PENDING((byte) 1, "Pending"),
+    RECEIVED((byte) 2, "Received");
+
+    private final byte code;
+    private final String label;
+
+    ProductStatus(byte code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static ProductStatus fromCode(byte code) {
+        for (ProductStatus status : values()) {
+            if (status.code == code) return status;
+        }
+        throw new IllegalArgumentException("Unknown product status code " + code);
+    }
+
+    public static ProductStatus fromLabel(String label) {
+        for (ProductStatus status : values()) {
+            if (status.label.equals(label)) return status;
+        }
+        throw new IllegalArgumentException("Unknown product status " + label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -1,13 +1,421 @@
 package com.template.contracts;
 
+import com.google.common.collect.ImmutableList;
+import com.template.states.IOUState;
+import com.template.states.ProductColor;
+import com.template.states.ProductReissueLock;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.dsl.LedgerDSL;
+import net.corda.testing.dsl.TestLedgerDSLInterpreter;
+import net.corda.testing.dsl.TestTransactionDSLInterpreter;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
 
+import java.security.PublicKey;
+import java.util.List;
+
+import static com.template.contracts.ProductContract.PRODUCT_CONTRACT_ID;
+import static net.corda.testing.node.NodeTestUtils.ledger;
+import static net.corda.testing.node.NodeTestUtils.transaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class ContractTests {
-    private final MockServices ledgerServices = new MockServices();
+    private final MockServices ledgerServices = new MockServices(ImmutableList.of("com.template.contracts"));
+    private final TestIdentity sender = new TestIdentity(new CordaX500Name("PartyA", "London", "GB"));
+    private final TestIdentity receiver = new TestIdentity(new CordaX500Name("PartyB", "Seattle", "US"));
+    private final List<PublicKey> bothKeys = ImmutableList.of(sender.getPublicKey(), receiver.getPublicKey());
 
     @Test
     public void dummyTest() {
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void batchCreateAcceptsManyPendingProducts() {
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.RED, ProductStatus.PENDING));
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.GREEN, ProductStatus.PENDING));
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.RED, ProductStatus.PENDING));
+            tx.command(bothKeys, new ProductContract.Commands.BatchCreate());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void batchCreateRejectsAnyInvalidProduct() {
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.RED, ProductStatus.PENDING));
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.GREEN, ProductStatus.RECEIVED));
+            tx.command(bothKeys, new ProductContract.Commands.BatchCreate());
+            tx.failsWith("A newly issued Product must have status of Pending by default");
+            return null;
+        });
+    }
+
+    @Test
+    public void batchCreateRequiresBothSigners() {
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.RED, ProductStatus.PENDING));
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.GREEN, ProductStatus.PENDING));
+            tx.command(sender.getPublicKey(), new ProductContract.Commands.BatchCreate());
+            tx.failsWith("Every sender and receiver company should sign a batch product create transaction.");
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkUpdatePairsEveryInputWithItsOutput() {
+        final ProductState red = product(ProductColor.RED, ProductStatus.PENDING);
+        final ProductState green = product(ProductColor.GREEN, ProductStatus.PENDING);
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, red);
+            tx.input(PRODUCT_CONTRACT_ID, green);
+            tx.output(PRODUCT_CONTRACT_ID, received(green));
+            tx.output(PRODUCT_CONTRACT_ID, received(red));
+            tx.command(bothKeys, new ProductContract.Commands.BulkUpdateStatus());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkUpdateRejectsAnOutputWithoutMatchingInput() {
+        final ProductState red = product(ProductColor.RED, ProductStatus.PENDING);
+        final ProductState green = product(ProductColor.GREEN, ProductStatus.PENDING);
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, red);
+            tx.input(PRODUCT_CONTRACT_ID, green);
+            tx.output(PRODUCT_CONTRACT_ID, received(red));
+            tx.output(PRODUCT_CONTRACT_ID, received(red));
+            tx.command(bothKeys, new ProductContract.Commands.BulkUpdateStatus());
+            tx.failsWith("Every output of a bulk update must have an input with the same linearId.");
+            return null;
+        });
+    }
+
+    @Test
+    public void createRejectsASignerWhoIsNotAParticipant() {
+        final TestIdentity outsider = new TestIdentity(new CordaX500Name("PartyC", "Paris", "FR"));
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, product(ProductColor.RED, ProductStatus.PENDING));
+            tx.command(ImmutableList.of(sender.getPublicKey(), receiver.getPublicKey(), outsider.getPublicKey()),
+                    new ProductContract.Commands.Create());
+            tx.failsWith("Both sender and receiver company should sign product create transaction.");
+            return null;
+        });
+    }
+
+    @Test
+    public void updateWithoutAnInputIsRejectedByTheShapeCheck() {
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, received(product(ProductColor.RED, ProductStatus.PENDING)));
+            tx.command(bothKeys, new ProductContract.Commands.UpdateStatus());
+            tx.failsWith("A product update transaction should consume one input state");
+            return null;
+        });
+    }
+
+    @Test
+    public void migrateRewritesProductsUnchanged() {
+        final ProductState red = product(ProductColor.RED, ProductStatus.PENDING);
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, red);
+            tx.output(PRODUCT_CONTRACT_ID, copyOf(red, red.getStatus()));
+            tx.command(bothKeys, new ProductContract.Commands.Migrate());
+            tx.verifies();
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, red);
+            tx.output(PRODUCT_CONTRACT_ID, copyOf(red, ProductStatus.RECEIVED));
+            tx.command(bothKeys, new ProductContract.Commands.Migrate());
+            tx.failsWith("A product migration must not change the product.");
+            return null;
+        });
+    }
+
+    @Test
+    public void exitConsumesAProductWithoutReplacingIt() {
+        final ProductState red = product(ProductColor.RED, ProductStatus.PENDING);
+        ledger(ledgerServices, l -> {
+            final StateRef lockRef = lockFor(l, red, red);
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(lockRef));
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(null));
+                return tx.failsWith("A product exit must name the re-issuance lock it releases.");
+            });
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(sender.getPublicKey(), new ProductContract.Commands.Exit(lockRef));
+                return tx.failsWith("Both sender and receiver company should sign a product exit.");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void exitMustReferenceALockHoldingTheExitedProduct() {
+        final ProductState red = product(ProductColor.RED, ProductStatus.PENDING);
+        ledger(ledgerServices, l -> {
+            final StateRef lockRef = lockFor(l, red, copyOf(red, ProductStatus.RECEIVED));
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(lockRef));
+                return tx.failsWith("A product exit must release a lock holding the exited product.");
+            });
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(lockRef));
+                return tx.failsWith("A product exit should reference only the re-issuance lock it releases.");
+            });
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(new StateRef(SecureHash.randomSHA256(), 0)));
+                return tx.failsWith("A product exit should reference only the re-issuance lock it releases.");
+            });
+            return null;
+        });
+        ledger(ledgerServices, l -> {
+            l.unverifiedTransaction(tx -> {
+                tx.output(PRODUCT_CONTRACT_ID, "original", red);
+                tx.output(PRODUCT_CONTRACT_ID, "lock", new ProductReissueLock(new StateRef(SecureHash.randomSHA256(), 0), red));
+                return null;
+            });
+            final StateRef lockRef = l.retrieveOutputStateAndRef(ProductReissueLock.class, "lock").getRef();
+            l.transaction(tx -> {
+                tx.input("original");
+                tx.reference("lock");
+                tx.command(bothKeys, new ProductContract.Commands.Exit(lockRef));
+                return tx.failsWith("A product exit must release a lock issued for the exited product.");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void reissueIssuesOneLockWithoutInputs() {
+        final ProductState received = received(product(ProductColor.GREEN, ProductStatus.PENDING));
+        final ProductReissueLock lock = new ProductReissueLock(new StateRef(SecureHash.randomSHA256(), 0), received);
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, lock);
+            tx.command(bothKeys, new ProductContract.Commands.Reissue());
+            tx.verifies();
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, received);
+            tx.output(PRODUCT_CONTRACT_ID, lock);
+            tx.command(bothKeys, new ProductContract.Commands.Reissue());
+            tx.failsWith("No inputs should be consumed when reissuing a product.");
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, received);
+            tx.command(bothKeys, new ProductContract.Commands.Reissue());
+            tx.failsWith("The output of a product re-issuance must be a product re-issuance lock.");
+            return null;
+        });
+    }
+
+    @Test
+    public void completedReissueMustRedeemTheLockedProductWithItsExit() {
+        final ProductState received = received(product(ProductColor.GREEN, ProductStatus.PENDING));
+        final ProductReissueLock lock = new ProductReissueLock(new StateRef(SecureHash.randomSHA256(), 0), received);
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, lock);
+            tx.output(PRODUCT_CONTRACT_ID, copyOf(received, ProductStatus.PENDING));
+            tx.command(bothKeys, new ProductContract.Commands.CompleteReissue(SecureHash.randomSHA256()));
+            tx.failsWith("A reissued product must be the one held by its lock.");
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(PRODUCT_CONTRACT_ID, lock);
+            tx.output(PRODUCT_CONTRACT_ID, received);
+            tx.command(bothKeys, new ProductContract.Commands.CompleteReissue(SecureHash.randomSHA256()));
+            tx.failsWith("A completed re-issuance must attach the transaction that exited the original product.");
+            return null;
+        });
+    }
+
+    @Test
+    public void compactEncodingDoesNotGrowWithTheLabels() {
+        final ProductState shortLabels = product(ProductColor.RED, ProductStatus.PENDING);
+        final ProductState longLabels = product(ProductColor.GREEN, ProductStatus.RECEIVED);
+        transaction(ledgerServices, tx -> {
+            // Green and Received are longer than Red and Pending, which only the legacy strings carry.
+            assertEquals(serializedSize(shortLabels), serializedSize(longLabels));
+            assertTrue(serializedSize(legacy(shortLabels)) < serializedSize(legacy(longLabels)));
+            return null;
+        });
+    }
+
+    @Test
+    public void productsReadThroughADeprecatedConstructorReportItsVersion() {
+        final ProductState current = product(ProductColor.GREEN, ProductStatus.PENDING);
+        assertEquals(ProductState.CURRENT_ENCODING_VERSION, current.getEncodingVersion());
+        assertEquals(ProductState.CURRENT_ENCODING_VERSION, new ProductState(current.getFrom(), current.getTo(),
+                current.getProductName(), current.getColorCode(), current.getStatusCode(), current.getLinearId(), null)
+                .getEncodingVersion());
+        assertEquals(2, new ProductState(current.getFrom(), current.getTo(), current.getProductName(),
+                current.getColorCode(), current.getStatusCode(), current.getLinearId()).getEncodingVersion());
+        assertEquals(1, new ProductState(current.getFrom(), current.getTo(), current.getProductName(),
+                "Green", "Pending", current.getLinearId()).getEncodingVersion());
+    }
+
+    @Test
+    public void iouBatchCreateAcceptsManyIOUsWithDifferentValues() {
+        transaction(ledgerServices, tx -> {
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), receiver.getParty()));
+            tx.output(IOUContract.ID, new IOUState(25, sender.getParty(), receiver.getParty()));
+            tx.output(IOUContract.ID, new IOUState(1, sender.getParty(), receiver.getParty()));
+            tx.command(bothKeys, new IOUContract.BatchCreate());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void iouBatchCreateValidatesEveryIOU() {
+        transaction(ledgerServices, tx -> {
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), receiver.getParty()));
+            tx.output(IOUContract.ID, new IOUState(0, sender.getParty(), receiver.getParty()));
+            tx.command(bothKeys, new IOUContract.BatchCreate());
+            tx.failsWith("The IOU's value must be non-negative and greater than zero");
+            return null;
+        });
+    }
+
+    @Test
+    public void iouBatchCreateRejectsADifferentBorrower() {
+        final TestIdentity other = new TestIdentity(new CordaX500Name("PartyC", "Paris", "FR"));
+        transaction(ledgerServices, tx -> {
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), receiver.getParty()));
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), other.getParty()));
+            tx.command(ImmutableList.of(sender.getPublicKey(), receiver.getPublicKey(), other.getPublicKey()), new IOUContract.BatchCreate());
+            tx.failsWith("Every IOU in a batch must have the same lender and borrower.");
+            return null;
+        });
+    }
+
+    @Test
+    public void iouCreateStillIssuesExactlyOneIOU() {
+        transaction(ledgerServices, tx -> {
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), receiver.getParty()));
+            tx.output(IOUContract.ID, new IOUState(10, sender.getParty(), receiver.getParty()));
+            tx.command(bothKeys, new IOUContract.Create());
+            tx.failsWith("There should be one and ONLY one output state of type IOUState.");
+            return null;
+        });
+    }
+
+    @Test
+    public void iouNetReplacesOppositeIOUsWithTheirBalance() {
+        transaction(ledgerServices, tx -> {
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(20, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(45, receiver.getParty(), sender.getParty()));
+            tx.output(IOUContract.ID, new IOUState(5, sender.getParty(), receiver.getParty()));
+            tx.command(bothKeys, new IOUContract.Net());
+            tx.verifies();
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(30, receiver.getParty(), sender.getParty()));
+            tx.command(bothKeys, new IOUContract.Net());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void iouNetMustConserveTheBalance() {
+        transaction(ledgerServices, tx -> {
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(45, receiver.getParty(), sender.getParty()));
+            tx.output(IOUContract.ID, new IOUState(15, sender.getParty(), receiver.getParty()));
+            tx.command(bothKeys, new IOUContract.Net());
+            tx.failsWith("Netting must conserve the value owed between the two parties.");
+            return null;
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(45, receiver.getParty(), sender.getParty()));
+            tx.command(bothKeys, new IOUContract.Net());
+            tx.failsWith("Netting must conserve the value owed between the two parties.");
+            return null;
+        });
+    }
+
+    @Test
+    public void iouNetRejectsAThirdParty() {
+        final TestIdentity other = new TestIdentity(new CordaX500Name("PartyC", "Paris", "FR"));
+        transaction(ledgerServices, tx -> {
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), receiver.getParty()));
+            tx.input(IOUContract.ID, new IOUState(30, sender.getParty(), other.getParty()));
+            tx.output(IOUContract.ID, new IOUState(60, sender.getParty(), receiver.getParty()));
+            tx.command(ImmutableList.of(sender.getPublicKey(), receiver.getPublicKey(), other.getPublicKey()), new IOUContract.Net());
+            tx.failsWith("Every IOU being netted must be between the same two parties.");
+            return null;
+        });
+    }
+
+    private static int serializedSize(Object object) {
+        final SerializationFactory factory = SerializationFactory.Companion.getDefaultFactory();
+        return SerializationAPIKt.serialize(object, factory, factory.getDefaultContext()).getSize();
+    }
+
+    private static LegacyProductState legacy(ProductState product) {
+        return new LegacyProductState(product.getFrom(), product.getTo(), product.getProductName(),
+                product.getProductColor().getLabel(), product.getStatus().getLabel(), product.getLinearId());
+    }
+
+    // Records the product as "original" and a lock on it holding the given copy as "lock", and returns the lock's ref.
+    private static StateRef lockFor(LedgerDSL<TestTransactionDSLInterpreter, TestLedgerDSLInterpreter> l,
+                                    ProductState original, ProductState held) {
+        l.unverifiedTransaction(tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, "original", original);
+            return null;
+        });
+        final StateRef originalRef = l.retrieveOutputStateAndRef(ProductState.class, "original").getRef();
+        l.unverifiedTransaction(tx -> {
+            tx.output(PRODUCT_CONTRACT_ID, "lock", new ProductReissueLock(originalRef, held));
+            return null;
+        });
+        return l.retrieveOutputStateAndRef(ProductReissueLock.class, "lock").getRef();
+    }
+
+    private ProductState product(ProductColor color, ProductStatus status) {
+        return new ProductState(sender.getParty(), receiver.getParty(), "Gadgets", color, status, new UniqueIdentifier());
+    }
+
+    private ProductState received(ProductState pending) {
+        return new ProductState(receiver.getParty(), sender.getParty(), pending.getProductName(), pending.getProductColor(),
+                ProductStatus.RECEIVED, pending.getLinearId());
+    }
+
+    private ProductState copyOf(ProductState product, ProductStatus status) {
+        return new ProductState(product.getFrom(), product.getTo(), product.getProductName(), product.getProductColor(),
+                status, product.getLinearId());
+    }
+}
@@ -0,0 +1,51 @@
+package com.template.contracts;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The serialized shape of ProductState before color and status became one-byte codes, kept to compare the encodings.
+ */
+@CordaSerializable
+public class LegacyProductState {
+    private final AbstractParty from;
+    private final AbstractParty to;
+    private final String productName;
+    private final String productColor;
+    private final String status;
+    private final UniqueIdentifier linearId;
+
+    public LegacyProductState(AbstractParty from, AbstractParty to, String productName, String productColor, String status, UniqueIdentifier linearId) {
+        this.from = from;
+        this.to = to;
+        this.productName = productName;
+        this.productColor = productColor;
+        this.status = status;
+        this.linearId = linearId;
+    }
+
+    public AbstractParty getFrom() {
+        return from;
+    }
+
+    public AbstractParty getTo() {
+        return to;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public String getProductColor() {
+        return productColor;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public UniqueIdentifier getLinearId() {
+        return linearId;
+    }
+}
@@ -0,0 +1,45 @@
+package com.template.jmh;
+
+import com.template.contracts.ProductContract;
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ProductContract.verify for each transaction shape the flows build.
+ *
+ * Run with the gc profiler (the jmh task's default) to see allocation rate and bytes/op next to throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ContractVerifyBenchmark {
+    @Param({"create", "update", "batchCreate", "bulkUpdate"})
+    public String shape;
+
+    // Only used by the batchCreate and bulkUpdate shapes.
+    @Param({"10", "100"})
+    public int batchSize;
+
+    private final ProductContract productContract = new ProductContract();
+    private LedgerTransaction productTx;
+
+    @Setup(Level.Trial)
+    public void buildTransaction() {
+        productTx = new LedgerTransactions().product(shape, batchSize);
+    }
+
+    @Benchmark
+    public void verifyProduct() {
+        productContract.verify(productTx);
+    }
+}
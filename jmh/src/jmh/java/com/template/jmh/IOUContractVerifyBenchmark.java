@@ -0,0 +1,49 @@
+package com.template.jmh;
+
+import com.template.contracts.IOUContract;
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures IOUContract.verify for the single-IOU issuance that IOUFlow builds and the batch issuance that
+ * IOUBatchFlow builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IOUContractVerifyBenchmark {
+    // Only used by verifyBatchCreate.
+    @Param({"10", "100"})
+    public int batchSize;
+
+    private final IOUContract iouContract = new IOUContract();
+    private LedgerTransaction createTx;
+    private LedgerTransaction batchCreateTx;
+
+    @Setup(Level.Trial)
+    public void buildTransaction() {
+        final LedgerTransactions transactions = new LedgerTransactions();
+        createTx = transactions.iouCreate();
+        batchCreateTx = transactions.iouBatchCreate(batchSize);
+    }
+
+    @Benchmark
+    public void verifyCreate() {
+        iouContract.verify(createTx);
+    }
+
+    @Benchmark
+    public void verifyBatchCreate() {
+        iouContract.verify(batchCreateTx);
+    }
+}
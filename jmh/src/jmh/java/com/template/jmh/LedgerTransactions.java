@@ -0,0 +1,128 @@
+package com.template.jmh;
+
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.IOUContract;
+import com.template.contracts.ProductContract;
+import com.template.states.IOUState;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+
+import java.security.PublicKey;
+import java.util.List;
+
+import static com.template.contracts.ProductContract.PRODUCT_CONTRACT_ID;
+import static net.corda.testing.node.NodeTestUtils.ledger;
+
+/**
+ * Builds fully resolved LedgerTransactions of the shapes the contracts verify, so that benchmarks measure only
+ * Contract.verify.
+ *
+ * Transactions are built inside the ledger DSL, which provides the serialization environment that building a
+ * WireTransaction needs. Issuances that later transactions spend are recorded in {@code ledgerServices} so their
+ * inputs resolve.
+ */
+final class LedgerTransactions {
+    static final TestIdentity SENDER = new TestIdentity(new CordaX500Name("PartyA", "London", "GB"));
+    static final TestIdentity RECEIVER = new TestIdentity(new CordaX500Name("PartyB", "Seattle", "US"));
+    static final TestIdentity NOTARY = new TestIdentity(new CordaX500Name("Notary", "London", "GB"));
+    static final List<PublicKey> BOTH_KEYS = ImmutableList.of(SENDER.getPublicKey(), RECEIVER.getPublicKey());
+
+    private final MockServices ledgerServices = new MockServices(ImmutableList.of("com.template.contracts"));
+
+    /**
+     * One of "create", "update", "batchCreate" or "bulkUpdate". {@code batchSize} is the number of products in the
+     * batch and bulk shapes.
+     */
+    LedgerTransaction product(String shape, int batchSize) {
+        final LedgerTransaction[] result = new LedgerTransaction[1];
+        ledger(ledgerServices, l -> {
+            switch (shape) {
+                case "create":
+                    result[0] = issue(1, new ProductContract.Commands.Create());
+                    break;
+                case "batchCreate":
+                    result[0] = issue(batchSize, new ProductContract.Commands.BatchCreate());
+                    break;
+                case "update":
+                    result[0] = receive(1, new ProductContract.Commands.UpdateStatus());
+                    break;
+                case "bulkUpdate":
+                    result[0] = receive(batchSize, new ProductContract.Commands.BulkUpdateStatus());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown shape " + shape);
+            }
+            return null;
+        });
+        return result[0];
+    }
+
+    LedgerTransaction iouCreate() {
+        final LedgerTransaction[] result = new LedgerTransaction[1];
+        ledger(ledgerServices, l -> {
+            final TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty())
+                    .addOutputState(new IOUState(10, SENDER.getParty(), RECEIVER.getParty()), IOUContract.ID)
+                    .addCommand(new IOUContract.Create(), BOTH_KEYS);
+            result[0] = toLedgerTransaction(builder);
+            return null;
+        });
+        return result[0];
+    }
+
+    LedgerTransaction iouBatchCreate(int count) {
+        final LedgerTransaction[] result = new LedgerTransaction[1];
+        ledger(ledgerServices, l -> {
+            final TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty())
+                    .addCommand(new IOUContract.BatchCreate(), BOTH_KEYS);
+            for (int i = 0; i < count; i++) {
+                builder.addOutputState(new IOUState(1 + i % 99, SENDER.getParty(), RECEIVER.getParty()), IOUContract.ID);
+            }
+            result[0] = toLedgerTransaction(builder);
+            return null;
+        });
+        return result[0];
+    }
+
+    private LedgerTransaction issue(int count, CommandData command) {
+        return toLedgerTransaction(issuance(count, command));
+    }
+
+    private LedgerTransaction receive(int count, CommandData command) {
+        final SignedTransaction issuance = ledgerServices.signInitialTransaction(
+                issuance(count, new ProductContract.Commands.BatchCreate()));
+        ledgerServices.recordTransactions(issuance);
+
+        final TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty()).addCommand(command, BOTH_KEYS);
+        for (int i = 0; i < count; i++) {
+            final StateAndRef<ProductState> pending = issuance.getTx().outRef(i);
+            final ProductState product = pending.getState().getData();
+            builder.addInputState(pending);
+            builder.addOutputState(new ProductState(RECEIVER.getParty(), SENDER.getParty(), product.getProductName(),
+                    product.getProductColor(), ProductStatus.RECEIVED, product.getLinearId()), PRODUCT_CONTRACT_ID);
+        }
+        return toLedgerTransaction(builder);
+    }
+
+    private TransactionBuilder issuance(int count, CommandData command) {
+        final TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty()).addCommand(command, BOTH_KEYS);
+        for (int i = 0; i < count; i++) {
+            builder.addOutputState(new ProductState(SENDER.getParty(), RECEIVER.getParty(), "Gadgets",
+                    i % 2 == 0 ? ProductColor.RED : ProductColor.GREEN, ProductStatus.PENDING, new UniqueIdentifier()), PRODUCT_CONTRACT_ID);
+        }
+        return builder;
+    }
+
+    private LedgerTransaction toLedgerTransaction(TransactionBuilder builder) {
+        return builder.toWireTransaction(ledgerServices).toLedgerTransaction(ledgerServices);
+    }
+}
@@ -0,0 +1,124 @@
+package com.template.jmh;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import com.template.webserver.ProductPageCache;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.services.Vault;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.template.contracts.ProductContract.PRODUCT_CONTRACT_ID;
+
+/**
+ * Replays the dashboards' repeated product list reads against the webserver's ProductPageCache and counts how many of
+ * them reach the node. The loader stands in for the vault query RPC and only counts calls, so the nodeCalls counter
+ * is the result to read: it equals reads for the uncached baseline, and drops to the working set plus whatever the
+ * simulated vault updates invalidate for the cached reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProductPageCacheBenchmark {
+    // Vault updates touching Pending Red products, per thousand reads.
+    @Param({"0", "10", "100"})
+    public int updatesPerThousandReads;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long reads;
+        public long nodeCalls;
+    }
+
+    // Each thread walks the working set on its own.
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        private ProductPageCache.Key next(ProductPageCache.Key[] keys) {
+            final ProductPageCache.Key key = keys[next];
+            next = (next + 1) % keys.length;
+            return key;
+        }
+    }
+
+    // Node calls made by each thread. The cache loads a missing page on the thread that asked for it.
+    private final ThreadLocal<long[]> loads = ThreadLocal.withInitial(() -> new long[1]);
+    private final Map<String, Object> body = ImmutableMap.of("products", Collections.emptyList());
+    private ProductPageCache.Key[] keys;
+    private ProductPageCache cache;
+    private Vault.Update<ProductState> update;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The dashboards' working set: every status and color filter, first three pages.
+        final ProductStatus[] statuses = {null, ProductStatus.PENDING, ProductStatus.RECEIVED};
+        final ProductColor[] colors = {null, ProductColor.RED, ProductColor.GREEN};
+        keys = new ProductPageCache.Key[statuses.length * colors.length * 3];
+        int i = 0;
+        for (ProductStatus status : statuses) {
+            for (ProductColor color : colors) {
+                for (int page = 1; page <= 3; page++) {
+                    keys[i++] = new ProductPageCache.Key(status, color, page, 50);
+                }
+            }
+        }
+        cache = new ProductPageCache(1000, key -> node());
+        cache.resumed();
+
+        final ProductState product = new ProductState(LedgerTransactions.SENDER.getParty(), LedgerTransactions.RECEIVER.getParty(),
+                "Gadgets", ProductColor.RED, ProductStatus.PENDING, new UniqueIdentifier());
+        final StateAndRef<ProductState> produced = new StateAndRef<>(
+                new TransactionState<>(product, PRODUCT_CONTRACT_ID, LedgerTransactions.NOTARY.getParty()),
+                new StateRef(SecureHash.sha256("product"), 0));
+        update = new Vault.Update<>(Collections.emptySet(), ImmutableSet.of(produced), null, Vault.UpdateType.GENERAL, Collections.emptySet());
+    }
+
+    @Benchmark
+    public Object uncached(Counters counters) {
+        counters.nodeCalls++;
+        return read(counters, node());
+    }
+
+    @Benchmark
+    public Object cached(Counters counters, Cursor cursor) {
+        final long before = loads.get()[0];
+        final Object page = read(counters, cache.get(cursor.next(keys)));
+        counters.nodeCalls += loads.get()[0] - before;
+        return page;
+    }
+
+    private Object read(Counters counters, CompletableFuture<Map<String, Object>> page) {
+        counters.reads++;
+        if (updatesPerThousandReads > 0 && counters.reads % (1000 / updatesPerThousandReads) == 0) {
+            cache.updated(update);
+        }
+        return page.join();
+    }
+
+    private CompletableFuture<Map<String, Object>> node() {
+        loads.get()[0]++;
+        return CompletableFuture.completedFuture(body);
+    }
+}
@@ -0,0 +1,121 @@
+package com.template.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.template.flows.IOUFanOutFlow;
+import com.template.flows.IOUFlow;
+import net.corda.core.identity.Party;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Issues one IOU from a lender to each of many borrowers on a multi-node {@link MockNetwork}, first by running IOUFlow
+ * for one borrower after another and then with a single IOUFanOutFlow, and compares their end-to-end times.
+ *
+ * Arguments are {@code name=value} pairs:
+ *
+ *   borrowers  number of borrower nodes (default 20)
+ *   window     borrowers the fan-out overlaps at once (default 32)
+ *   rounds     measured rounds of each approach, after one unmeasured round (default 5)
+ *   out        directory for the JSON summary (default build/benchmarks)
+ *
+ * Run it with {@code ./gradlew workflows:fanOutBenchmark -PbenchmarkArgs="borrowers=50 window=16"}.
+ */
+public class FanOutBenchmark {
+    private final MockNetwork network;
+    private final StartedMockNode lender;
+    private final List<Party> borrowers = new ArrayList<>();
+
+    private FanOutBenchmark(int borrowerCount) {
+        // Each node runs flows on its own thread and messages are delivered as they are sent, so borrowers really
+        // work in parallel.
+        this.network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.schemas"),
+                TestCordapp.findCordapp("com.template.flows")))
+                .withThreadPerNode(true)
+                .withNetworkSendManuallyPumped(false));
+        this.lender = network.createNode();
+        for (int i = 0; i < borrowerCount; i++) {
+            borrowers.add(network.createNode().getInfo().getLegalIdentities().get(0));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parse(args);
+        final int borrowerCount = Integer.parseInt(options.getOrDefault("borrowers", "20"));
+        final int window = Integer.parseInt(options.getOrDefault("window", "32"));
+        final int rounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+        final File out = new File(options.getOrDefault("out", "build/benchmarks"));
+
+        final FanOutBenchmark benchmark = new FanOutBenchmark(borrowerCount);
+        try {
+            benchmark.sequential();
+            benchmark.fanOut(window);
+            long sequentialNanos = 0;
+            long fanOutNanos = 0;
+            for (int round = 1; round <= rounds; round++) {
+                final long sequential = benchmark.sequential();
+                final long fanOut = benchmark.fanOut(window);
+                System.out.printf(Locale.ROOT, "round %d: sequential IOUFlow %.1f ms, IOUFanOutFlow %.1f ms%n",
+                        round, sequential / 1e6, fanOut / 1e6);
+                sequentialNanos += sequential;
+                fanOutNanos += fanOut;
+            }
+            final double sequentialMs = sequentialNanos / 1e6 / rounds;
+            final double fanOutMs = fanOutNanos / 1e6 / rounds;
+            System.out.printf(Locale.ROOT, "%d borrowers, window %d: sequential IOUFlow %.1f ms, IOUFanOutFlow %.1f ms, %.1fx faster%n",
+                    borrowerCount, window, sequentialMs, fanOutMs, sequentialMs / fanOutMs);
+            write(out, borrowerCount, window, rounds, sequentialMs, fanOutMs);
+        } finally {
+            benchmark.network.stopNodes();
+        }
+    }
+
+    private long sequential() throws Exception {
+        final long start = System.nanoTime();
+        for (Party borrower : borrowers) {
+            lender.startFlow(new IOUFlow(10, borrower)).get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long fanOut(int window) throws Exception {
+        final long start = System.nanoTime();
+        lender.startFlow(new IOUFanOutFlow(Collections.nCopies(borrowers.size(), 10), borrowers, window)).get();
+        return System.nanoTime() - start;
+    }
+
+    private static void write(File directory, int borrowers, int window, int rounds, double sequentialMs, double fanOutMs) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        final String name = String.format("fanout-b%d-w%d-%d", borrowers, window, System.currentTimeMillis());
+        try (PrintWriter json = new PrintWriter(new File(directory, name + ".json"), StandardCharsets.UTF_8.name())) {
+            json.printf(Locale.ROOT, "{\"borrowers\":%d,\"window\":%d,\"rounds\":%d,\"sequentialMs\":%.3f,\"fanOutMs\":%.3f,\"speedup\":%.3f}%n",
+                    borrowers, window, rounds, sequentialMs, fanOutMs, sequentialMs / fanOutMs);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals < 1) throw new IllegalArgumentException("Expected name=value but got " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,210 @@
+package com.template.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.template.flows.IOUFlow;
+import com.template.flows.ProductBatchCreateFlow;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductUpdateFlow;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkNotarySpec;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs a flow many times on a {@link MockNetwork} at a fixed concurrency and reports throughput and latency
+ * percentiles, so that changes to the flows can be checked for regressions.
+ *
+ * Arguments are {@code name=value} pairs:
+ *
+ *   flow         create, update or iou (default create)
+ *   flows        number of measured flows (default 1000)
+ *   warmup       number of unmeasured flows run first (default 200)
+ *   concurrency  flows in flight at once (default 16)
+ *   notaries     number of notaries on the network, which issuing flows are spread over (default 1)
+ *   out          directory for the JSON summary and HdrHistogram percentile file (default build/benchmarks)
+ *
+ * Run it with {@code ./gradlew workflows:flowBenchmark -PbenchmarkArgs="flow=update concurrency=32"}. Comparing runs
+ * with {@code notaries=1} and {@code notaries=4} at the same concurrency shows how issuance scales with notaries.
+ */
+public class FlowBenchmark {
+    // Largest batch the update scenario issues its Pending products in.
+    private static final int SEED_BATCH_SIZE = 500;
+
+    private final MockNetwork network;
+    private final StartedMockNode a;
+    private final StartedMockNode b;
+
+    private FlowBenchmark(int notaries) {
+        final List<MockNetworkNotarySpec> notarySpecs = new ArrayList<>();
+        for (int i = 1; i <= notaries; i++) {
+            notarySpecs.add(new MockNetworkNotarySpec(new CordaX500Name("Notary " + i, "London", "GB"), true));
+        }
+        // Each node runs flows on its own thread and messages are delivered as they are sent, so flows really overlap.
+        this.network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.schemas"),
+                TestCordapp.findCordapp("com.template.flows")))
+                .withNotarySpecs(notarySpecs)
+                .withThreadPerNode(true)
+                .withNetworkSendManuallyPumped(false));
+        this.a = network.createNode();
+        this.b = network.createNode();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parse(args);
+        final String flow = options.getOrDefault("flow", "create");
+        final int flows = Integer.parseInt(options.getOrDefault("flows", "1000"));
+        final int warmup = Integer.parseInt(options.getOrDefault("warmup", "200"));
+        final int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        final int notaries = Integer.parseInt(options.getOrDefault("notaries", "1"));
+        final File out = new File(options.getOrDefault("out", "build/benchmarks"));
+
+        final FlowBenchmark benchmark = new FlowBenchmark(notaries);
+        try {
+            final Scenario scenario = benchmark.scenario(flow, warmup + flows);
+            benchmark.run(scenario, warmup, concurrency);
+            final Result result = benchmark.run(scenario, flows, concurrency);
+            result.print(System.out, flow, concurrency, notaries);
+            result.write(out, flow, concurrency, notaries);
+        } finally {
+            benchmark.network.stopNodes();
+        }
+    }
+
+    private Scenario scenario(String flow, int totalFlows) throws Exception {
+        final Party partyA = a.getInfo().getLegalIdentities().get(0);
+        final Party partyB = b.getInfo().getLegalIdentities().get(0);
+        switch (flow) {
+            case "create":
+                return new Scenario(a, () -> new ProductCreateFlow.Initiator(partyB, "Gadgets", "Red", "Pending"));
+            case "update":
+                // Every update consumes one Pending product, so issue enough of them up front.
+                for (int issued = 0; issued < totalFlows; issued += SEED_BATCH_SIZE) {
+                    final int count = Math.min(SEED_BATCH_SIZE, totalFlows - issued);
+                    a.startFlow(new ProductBatchCreateFlow.Initiator(partyB, "Gadgets", "Red", count)).get();
+                }
+                // Updates are started by the receiving party.
+                return new Scenario(b, () -> new ProductUpdateFlow.Initiator(partyB, partyA, "Received", "Red"));
+            case "iou":
+                return new Scenario(a, () -> new IOUFlow(1, partyB));
+            default:
+                throw new IllegalArgumentException("Unknown flow " + flow + "; expected create, update or iou");
+        }
+    }
+
+    /**
+     * Starts {@code count} flows from the scenario, keeping at most {@code concurrency} in flight, and waits for all
+     * of them to finish.
+     */
+    private Result run(Scenario scenario, int count, int concurrency) throws InterruptedException {
+        final Result result = new Result();
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(count);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            final long flowStart = System.nanoTime();
+            scenario.initiator.startFlow(scenario.flows.get()).toCompletableFuture().whenComplete((value, error) -> {
+                result.record(System.nanoTime() - flowStart, error);
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals < 1) throw new IllegalArgumentException("Expected name=value but got " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static final class Scenario {
+        private final StartedMockNode initiator;
+        private final Supplier<FlowLogic<?>> flows;
+
+        private Scenario(StartedMockNode initiator, Supplier<FlowLogic<?>> flows) {
+            this.initiator = initiator;
+            this.flows = flows;
+        }
+    }
+
+    private static final class Result {
+        // Latencies in microseconds, up to one hour with three significant digits.
+        private final Histogram latencies = new ConcurrentHistogram(3_600_000_000L, 3);
+        private final AtomicLong failures = new AtomicLong();
+        private final Map<String, AtomicLong> failuresByType = new ConcurrentHashMap<>();
+        private long elapsedNanos;
+
+        private void record(long latencyNanos, Throwable error) {
+            if (error == null) {
+                latencies.recordValue(Math.max(1, latencyNanos / 1000));
+            } else {
+                failures.incrementAndGet();
+                final Throwable cause = error.getCause() != null ? error.getCause() : error;
+                failuresByType.computeIfAbsent(cause.getClass().getName(), type -> new AtomicLong()).incrementAndGet();
+            }
+        }
+
+        private double flowsPerSecond() {
+            return latencies.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        private void print(PrintStream out, String flow, int concurrency, int notaries) {
+            out.printf(Locale.ROOT, "%s x%d at concurrency %d with %d notaries: %.1f flows/sec, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, %d failed%n",
+                    flow, latencies.getTotalCount(), concurrency, notaries, flowsPerSecond(),
+                    millis(50.0), millis(99.0), millis(99.9), latencies.getMaxValue() / 1000.0, failures.get());
+            failuresByType.forEach((type, failed) -> out.printf("  %s: %d%n", type, failed.get()));
+        }
+
+        private void write(File directory, String flow, int concurrency, int notaries) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            final String name = String.format("%s-c%d-n%d-%d", flow, concurrency, notaries, System.currentTimeMillis());
+            try (PrintWriter json = new PrintWriter(new File(directory, name + ".json"), StandardCharsets.UTF_8.name())) {
+                json.printf(Locale.ROOT, "{\"flow\":\"%s\",\"concurrency\":%d,\"notaries\":%d,\"flows\":%d,\"failures\":%d,\"elapsedMs\":%.3f,"
+                                + "\"flowsPerSec\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"maxMs\":%.3f}%n",
+                        flow, concurrency, notaries, latencies.getTotalCount(), failures.get(), elapsedNanos / 1e6,
+                        flowsPerSecond(), millis(50.0), millis(99.0), millis(99.9), latencies.getMaxValue() / 1000.0);
+            }
+            try (PrintStream hgrm = new PrintStream(new FileOutputStream(new File(directory, name + ".hgrm")), false, "UTF-8")) {
+                latencies.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+
+        private double millis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.template.benchmark;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.ProductContract;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductReissueFlow;
+import com.template.flows.ProductShareFlow;
+import com.template.states.ProductState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Measures how long an observer takes to receive a product with a long history, before and after the product is
+ * reissued with ProductReissueFlow, on a {@link MockNetwork}.
+ *
+ * Each product is created, given {@code depth} more transactions by rewriting it unchanged, and shared with one
+ * observer node, which resolves and verifies the whole history. It is then reissued and shared with a second observer,
+ * which only has to verify the re-issuance. Arguments are {@code name=value} pairs:
+ *
+ *   depth     transactions added to each product's history before it is shared (default 200)
+ *   products  products measured, after one unmeasured product (default 5)
+ *   out       directory for the JSON summary (default build/benchmarks)
+ *
+ * Run it with {@code ./gradlew workflows:reissueBenchmark -PbenchmarkArgs="depth=500 products=5"}.
+ */
+public class ReissueBenchmark {
+    private final MockNetwork network;
+    private final StartedMockNode issuer;
+    private final Party counterparty;
+    private final Party observerBefore;
+    private final Party observerAfter;
+
+    private ReissueBenchmark() {
+        this.network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.schemas"),
+                TestCordapp.findCordapp("com.template.flows"),
+                TestCordapp.findCordapp("com.template.benchmark")))
+                .withThreadPerNode(true)
+                .withNetworkSendManuallyPumped(false));
+        this.issuer = network.createNode();
+        this.counterparty = network.createNode().getInfo().getLegalIdentities().get(0);
+        this.observerBefore = network.createNode().getInfo().getLegalIdentities().get(0);
+        this.observerAfter = network.createNode().getInfo().getLegalIdentities().get(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parse(args);
+        final int depth = Integer.parseInt(options.getOrDefault("depth", "200"));
+        final int products = Integer.parseInt(options.getOrDefault("products", "5"));
+        final File out = new File(options.getOrDefault("out", "build/benchmarks"));
+
+        final ReissueBenchmark benchmark = new ReissueBenchmark();
+        try {
+            benchmark.measure(depth);
+            long beforeNanos = 0;
+            long afterNanos = 0;
+            for (int product = 1; product <= products; product++) {
+                final long[] result = benchmark.measure(depth);
+                System.out.printf(Locale.ROOT, "product %d: resolution %.1f ms with %d transactions of history, %.1f ms after re-issuance%n",
+                        product, result[0] / 1e6, depth + 1, result[1] / 1e6);
+                beforeNanos += result[0];
+                afterNanos += result[1];
+            }
+            final double beforeMs = beforeNanos / 1e6 / products;
+            final double afterMs = afterNanos / 1e6 / products;
+            System.out.printf(Locale.ROOT, "depth %d: resolution %.1f ms before re-issuance, %.1f ms after, %.1fx faster%n",
+                    depth, beforeMs, afterMs, beforeMs / afterMs);
+            write(out, depth, products, beforeMs, afterMs);
+        } finally {
+            benchmark.network.stopNodes();
+        }
+    }
+
+    // Returns the time to share the product before and after its re-issuance, in nanoseconds.
+    private long[] measure(int depth) throws Exception {
+        final SignedTransaction created = issuer.startFlow(
+                new ProductCreateFlow.Initiator(counterparty, "Gadgets", "Red", "Pending")).get();
+        final UniqueIdentifier linearId = created.getTx().outputsOfType(ProductState.class).get(0).getLinearId();
+        issuer.startFlow(new ExtendHistory.Initiator(linearId, depth)).get();
+
+        long start = System.nanoTime();
+        issuer.startFlow(new ProductShareFlow.Initiator(linearId, observerBefore)).get();
+        final long before = System.nanoTime() - start;
+
+        issuer.startFlow(new ProductReissueFlow.Initiator(linearId)).get();
+
+        start = System.nanoTime();
+        issuer.startFlow(new ProductShareFlow.Initiator(linearId, observerAfter)).get();
+        final long after = System.nanoTime() - start;
+        return new long[] { before, after };
+    }
+
+    private static void write(File directory, int depth, int products, double beforeMs, double afterMs) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        final String name = String.format("reissue-d%d-%d", depth, System.currentTimeMillis());
+        try (PrintWriter json = new PrintWriter(new File(directory, name + ".json"), StandardCharsets.UTF_8.name())) {
+            json.printf(Locale.ROOT, "{\"depth\":%d,\"products\":%d,\"beforeMs\":%.3f,\"afterMs\":%.3f,\"speedup\":%.3f}%n",
+                    depth, products, beforeMs, afterMs, beforeMs / afterMs);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals < 1) throw new IllegalArgumentException("Expected name=value but got " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Gives a product a long history by rewriting it unchanged with the Migrate command, one transaction at a time.
+     */
+    public static class ExtendHistory {
+
+        @InitiatingFlow
+        public static class Initiator extends FlowLogic<Void> {
+            private final UniqueIdentifier linearId;
+            private final int depth;
+
+            public Initiator(UniqueIdentifier linearId, int depth) {
+                this.linearId = linearId;
+                this.depth = depth;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                final QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(
+                        null, ImmutableList.of(linearId), Vault.StateStatus.UNCONSUMED, null);
+                StateAndRef<ProductState> product = getServiceHub().getVaultService()
+                        .queryBy(ProductState.class, criteria).getStates().get(0);
+                final ProductState state = product.getState().getData();
+                final AbstractParty other = getOurIdentity().equals(state.getFrom()) ? state.getTo() : state.getFrom();
+                final Party counterparty = getServiceHub().getIdentityService().wellKnownPartyFromAnonymous(other);
+                if (counterparty == null) {
+                    throw new FlowException("Cannot resolve " + other + ", the counterparty of product " + linearId + ".");
+                }
+                final FlowSession session = initiateFlow(counterparty);
+                session.send(depth);
+                for (int i = 0; i < depth; i++) {
+                    final TransactionBuilder txBuilder = new TransactionBuilder(product.getState().getNotary())
+                            .addInputState(product)
+                            .addOutputState(new ProductState(state.getFrom(), state.getTo(), state.getProductName(),
+                                    state.getProductColor(), state.getStatus(), state.getLinearId(), state.getReceiptDeadline()),
+                                    ProductContract.PRODUCT_CONTRACT_ID)
+                            .addCommand(new Command<>(new ProductContract.Commands.Migrate(),
+                                    ImmutableList.of(state.getFrom().getOwningKey(), state.getTo().getOwningKey())));
+                    final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                            getServiceHub().signInitialTransaction(txBuilder), ImmutableList.of(session)));
+                    product = subFlow(new FinalityFlow(fullySignedTx, ImmutableList.of(session))).getTx().outRef(0);
+                }
+                return null;
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Responder extends FlowLogic<Void> {
+            private final FlowSession otherPartySession;
+
+            public Responder(FlowSession otherPartySession) {
+                this.otherPartySession = otherPartySession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                final int depth = otherPartySession.receive(Integer.class).unwrap(it -> it);
+                for (int i = 0; i < depth; i++) {
+                    final SignedTransaction signedTx = subFlow(new SignTransactionFlow(otherPartySession) {
+                        @Override
+                        protected void checkTransaction(SignedTransaction stx) {
+                            requireThat(require -> {
+                                require.using("This must be a product migration.",
+                                        stx.getTx().commandsOfType(ProductContract.Commands.Migrate.class).size() == 1);
+                                return null;
+                            });
+                        }
+                    });
+                    subFlow(new ReceiveFinalityFlow(otherPartySession, signedTx.getId()));
+                }
+                return null;
+            }
+        }
+    }
+}
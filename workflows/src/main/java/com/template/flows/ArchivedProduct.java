@@ -0,0 +1,82 @@
+package com.template.flows;
+
+import com.template.states.ProductColor;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A consumed product read back from the archive by ProductArchiveQueryFlow. Parties are given by name, as they are
+ * stored in product_states.
+ */
+@CordaSerializable
+public class ArchivedProduct {
+    private final StateRef ref;
+    private final String from;
+    private final String to;
+    private final String productName;
+    private final ProductColor productColor;
+    private final ProductStatus status;
+    private final UUID linearId;
+    private final Instant recordedTime;
+    private final Instant consumedTime;
+    private final Instant archivedTime;
+
+    public ArchivedProduct(StateRef ref, String from, String to, String productName, ProductColor productColor,
+                           ProductStatus status, UUID linearId, Instant recordedTime, Instant consumedTime,
+                           Instant archivedTime) {
+        this.ref = ref;
+        this.from = from;
+        this.to = to;
+        this.productName = productName;
+        this.productColor = productColor;
+        this.status = status;
+        this.linearId = linearId;
+        this.recordedTime = recordedTime;
+        this.consumedTime = consumedTime;
+        this.archivedTime = archivedTime;
+    }
+
+    public StateRef getRef() {
+        return ref;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public ProductColor getProductColor() {
+        return productColor;
+    }
+
+    public ProductStatus getStatus() {
+        return status;
+    }
+
+    public UUID getLinearId() {
+        return linearId;
+    }
+
+    public Instant getRecordedTime() {
+        return recordedTime;
+    }
+
+    public Instant getConsumedTime() {
+        return consumedTime;
+    }
+
+    public Instant getArchivedTime() {
+        return archivedTime;
+    }
+}
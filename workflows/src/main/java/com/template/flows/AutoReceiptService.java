@@ -0,0 +1,237 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.ProductStatus;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives Pending products past their receipt deadline in bulk, one ProductBulkUpdateFlow per sender at a time,
+ * instead of one update flow per product.
+ *
+ * The service sweeps the vault once the node is ready and then every "autoReceiptPollSeconds" (0 turns the sweeps
+ * off). A sweep looks up the senders of Pending products sent to us that are due with one SELECT DISTINCT over
+ * product_states, and for each one runs bulk updates of up to "productBulkUpdateMaxSize" products until a batch comes
+ * back short or none are left. At most "autoReceiptConcurrency"
+ * senders, and so bulk update flows, are handled at once, and sweeps never overlap. Nothing is kept between sweeps:
+ * only a lookup that finds no due products means nothing is due, and a bulk update that fails leaves its products
+ * Pending for the next sweep, including the first one after a restart.
+ *
+ * New products are given a deadline "productReceiptDeadlineMinutes" after they are issued; 0, the default, issues them
+ * without one.
+ */
+@CordaService
+public class AutoReceiptService extends SingletonSerializeAsToken {
+    public static final String DEADLINE_CONFIG = "productReceiptDeadlineMinutes";
+    public static final String POLL_CONFIG = "autoReceiptPollSeconds";
+    public static final String CONCURRENCY_CONFIG = "autoReceiptConcurrency";
+    public static final long DEFAULT_DEADLINE_MINUTES = 0;
+    public static final long DEFAULT_POLL_SECONDS = 60;
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final Logger logger = LoggerFactory.getLogger(AutoReceiptService.class);
+
+    private final AppServiceHub serviceHub;
+    private final int maxBatchSize;
+    // Runs the sweeps one at a time; the workers run the bulk updates for one sweep's senders.
+    private final ScheduledExecutorService sweeper;
+    private final ExecutorService workers;
+
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong bulkUpdates = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public AutoReceiptService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.maxBatchSize = FlowConfig.getInt(serviceHub, ProductBulkUpdateFlow.MAX_BATCH_SIZE_CONFIG,
+                ProductBulkUpdateFlow.DEFAULT_MAX_BATCH_SIZE);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "auto-receipt-sweep"));
+        this.workers = Executors.newFixedThreadPool(
+                FlowConfig.getInt(serviceHub, CONCURRENCY_CONFIG, DEFAULT_CONCURRENCY),
+                runnable -> daemon(runnable, "auto-receipt"));
+
+        final long pollSeconds = FlowConfig.getLong(serviceHub, POLL_CONFIG, DEFAULT_POLL_SECONDS);
+        if (pollSeconds > 0) {
+            // Flows cannot be started while the node is still creating its services.
+            serviceHub.getNetworkMapCache().getNodeReady().then(ready -> {
+                sweeper.scheduleWithFixedDelay(this::sweepDue, 0, pollSeconds, TimeUnit.SECONDS);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * The receipt deadline for a product issued now, or null if products are issued without one.
+     */
+    public static Instant receiptDeadline(ServiceHub serviceHub) {
+        final long minutes = FlowConfig.getLong(serviceHub, DEADLINE_CONFIG, DEFAULT_DEADLINE_MINUTES);
+        return minutes > 0 ? serviceHub.getClock().instant().plus(Duration.ofMinutes(minutes)) : null;
+    }
+
+    /**
+     * Queues a sweep for the products due by {@code dueBy}, after any sweep already running, and returns the number of
+     * products it receives.
+     */
+    public Future<Integer> sweep(Instant dueBy) {
+        return sweeper.submit(() -> receiveDue(dueBy));
+    }
+
+    public long getSweeps() {
+        return sweeps.get();
+    }
+
+    public long getBulkUpdates() {
+        return bulkUpdates.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void sweepDue() {
+        try {
+            receiveDue(serviceHub.getClock().instant());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Logged and retried at the next sweep; an exception here would cancel the schedule.
+            logger.warn("Automatic receipt sweep failed", e);
+        }
+    }
+
+    private int receiveDue(Instant dueBy) throws InterruptedException {
+        sweeps.incrementAndGet();
+        final List<Party> senders;
+        try {
+            senders = serviceHub.startFlow(new DueSendersFlow(dueBy)).getReturnValue().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not look up the senders of products due by " + dueBy, e.getCause());
+        }
+
+        final List<Future<Integer>> perSender = new ArrayList<>(senders.size());
+        for (Party sender : senders) {
+            perSender.add(workers.submit(() -> receiveDueFrom(sender, dueBy)));
+        }
+        int total = 0;
+        for (Future<Integer> count : perSender) {
+            try {
+                total += count.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Automatic receipt failed", e.getCause());
+            }
+        }
+        return total;
+    }
+
+    // Runs bulk updates of the sender's due products until a batch comes back short, and returns how many it received.
+    private int receiveDueFrom(Party sender, Instant dueBy) throws InterruptedException {
+        int total = 0;
+        while (true) {
+            final SignedTransaction stx;
+            try {
+                stx = serviceHub.startFlow(new ProductBulkUpdateFlow.Initiator(sender, null, maxBatchSize, dueBy))
+                        .getReturnValue().get();
+            } catch (ExecutionException e) {
+                // The last batch was exactly full, or another flow took the products: nothing is left.
+                if (e.getCause() instanceof ProductBulkUpdateFlow.NothingToUpdateException) return total;
+                // Anything else leaves the products Pending; the next sweep retries.
+                failures.incrementAndGet();
+                logger.warn("Automatic receipt of products from {} failed", sender, e.getCause());
+                return total;
+            }
+            final int count = stx.getTx().getOutputs().size();
+            bulkUpdates.incrementAndGet();
+            received.addAndGet(count);
+            total += count;
+            logger.info("Received {} products from {} past their receipt deadline", count, sender);
+            if (count < maxBatchSize) return total;
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Finds the senders of the Pending products sent to us whose receipt deadline is at or before a given time. Only
+     * the distinct sender names are read, from product_states through its status and deadline index, rather than every
+     * due product.
+     */
+    @StartableByService
+    public static class DueSendersFlow extends FlowLogic<List<Party>> {
+        private static final String DUE_SENDERS = "SELECT DISTINCT p.from_party FROM product_states p"
+                + " JOIN vault_states v ON v.transaction_id = p.transaction_id AND v.output_index = p.output_index"
+                + " WHERE p.status = ? AND p.receipt_deadline <= ? AND p.to_party = ? AND p.from_party IS NOT NULL"
+                + " AND v.state_status = ?";
+
+        private final Instant dueBy;
+
+        public DueSendersFlow(Instant dueBy) {
+            this.dueBy = dueBy;
+        }
+
+        @Suspendable
+        @Override
+        public List<Party> call() throws FlowException {
+            final List<String> senders = new ArrayList<>();
+            try (PreparedStatement query = getServiceHub().jdbcSession().prepareStatement(DUE_SENDERS)) {
+                query.setString(1, ProductStatus.PENDING.getLabel());
+                query.setTimestamp(2, Timestamp.from(dueBy));
+                query.setString(3, getOurIdentity().getName().toString());
+                query.setInt(4, Vault.StateStatus.UNCONSUMED.ordinal());
+                try (ResultSet rows = query.executeQuery()) {
+                    while (rows.next()) {
+                        senders.add(rows.getString(1));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new FlowException("Could not look up the senders of products due by " + dueBy + ".", e);
+            }
+
+            final List<Party> parties = new ArrayList<>(senders.size());
+            for (String sender : senders) {
+                final Party party = getServiceHub().getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(sender));
+                if (party == null) {
+                    getLogger().warn("Cannot resolve {}, the sender of products past their deadline", sender);
+                    continue;
+                }
+                parties.add(party);
+            }
+            return parties;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.template.flows;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.node.ServiceHub;
+
+/**
+ * Reads optional settings from the CorDapp's config file (cordapps/config/workflows-&lt;version&gt;.conf on a node),
+ * falling back to a default when a setting is not present.
+ */
+public class FlowConfig {
+    private FlowConfig() { }
+
+    public static int getInt(ServiceHub serviceHub, String path, int defaultValue) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(path) ? config.getInt(path) : defaultValue;
+    }
+
+    public static long getLong(ServiceHub serviceHub, String path, long defaultValue) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(path) ? config.getLong(path) : defaultValue;
+    }
+
+    public static boolean getBoolean(ServiceHub serviceHub, String path, boolean defaultValue) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(path) ? config.getBoolean(path) : defaultValue;
+    }
+
+    public static String getString(ServiceHub serviceHub, String path, String defaultValue) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(path) ? config.getString(path) : defaultValue;
+    }
+}
@@ -0,0 +1,217 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.utilities.ProgressTracker;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every step of a flow's progress tracker, including the steps of child trackers such as those of
+ * CollectSignaturesFlow and FinalityFlow, and exports a latency histogram per flow and step over JMX.
+ *
+ * A flow opts in by calling {@link #track} at the start of call(). Each step is timed from the tracker moving to it
+ * until the tracker moves on; moving a parent tracker also ends the steps of its children. Child steps are named by
+ * the parent step they run under, for example
+ * {@code Obtaining notary signature and recording transaction./Requesting signature by notary service}, and the
+ * whole flow is recorded as {@code (total)}.
+ *
+ * Histograms are registered as {@link StepTimingMXBean}s named
+ * {@code com.template:type=FlowTiming,node=...,flow=...,step=...}. A flow restored from a checkpoint is not tracked
+ * again.
+ */
+@CordaService
+public class FlowTimingService extends SingletonSerializeAsToken {
+    public static final String TOTAL = "(total)";
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowTimingService.class);
+
+    public interface StepTimingMXBean {
+        String getFlow();
+        String getStep();
+        long getCount();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP90Millis();
+        double getP99Millis();
+        double getMaxMillis();
+        void reset();
+    }
+
+    public static final class StepTiming implements StepTimingMXBean {
+        private final String flow;
+        private final String step;
+        // Microseconds, up to one hour with three significant digits.
+        private final Histogram micros = new ConcurrentHistogram(3_600_000_000L, 3);
+
+        private StepTiming(String flow, String step) {
+            this.flow = flow;
+            this.step = step;
+        }
+
+        private void record(long nanos) {
+            micros.recordValue(Math.max(1, nanos / 1000));
+        }
+
+        @Override public String getFlow() { return flow; }
+        @Override public String getStep() { return step; }
+        @Override public long getCount() { return micros.getTotalCount(); }
+        @Override public double getMeanMillis() { return micros.getMean() / 1000.0; }
+        @Override public double getP50Millis() { return micros.getValueAtPercentile(50.0) / 1000.0; }
+        @Override public double getP90Millis() { return micros.getValueAtPercentile(90.0) / 1000.0; }
+        @Override public double getP99Millis() { return micros.getValueAtPercentile(99.0) / 1000.0; }
+        @Override public double getMaxMillis() { return micros.getMaxValue() / 1000.0; }
+        @Override public void reset() { micros.reset(); }
+    }
+
+    private final String node;
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final Map<String, StepTiming> timings = new ConcurrentHashMap<>();
+
+    public FlowTimingService(AppServiceHub serviceHub) {
+        this.node = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString();
+    }
+
+    /**
+     * Starts timing the steps of {@code flow}'s progress tracker until it finishes. Flows without a progress tracker
+     * are ignored.
+     */
+    public void track(FlowLogic<?> flow) {
+        final ProgressTracker tracker = flow.getProgressTracker();
+        if (tracker == null) return;
+        final Steps steps = new Steps(flow.getClass().getName(), tracker);
+        tracker.getChanges().subscribe(
+                change -> {
+                    if (change instanceof ProgressTracker.Change.Position) {
+                        final ProgressTracker.Change.Position position = (ProgressTracker.Change.Position) change;
+                        steps.moved(position.getTracker(), position.getNewStep());
+                    }
+                },
+                error -> steps.finished(),
+                steps::finished);
+    }
+
+    public StepTimingMXBean getTiming(Class<?> flowClass, String step) {
+        return timings.get(key(flowClass.getName(), step));
+    }
+
+    public List<StepTimingMXBean> getTimings() {
+        return new ArrayList<>(timings.values());
+    }
+
+    private StepTiming timing(String flow, String step) {
+        return timings.computeIfAbsent(key(flow, step), key -> {
+            final StepTiming timing = new StepTiming(flow, step);
+            register(timing);
+            return timing;
+        });
+    }
+
+    private void register(StepTiming timing) {
+        try {
+            final ObjectName name = new ObjectName("com.template:type=FlowTiming"
+                    + ",node=" + ObjectName.quote(node)
+                    + ",flow=" + ObjectName.quote(timing.flow)
+                    + ",step=" + ObjectName.quote(timing.step));
+            try {
+                mBeanServer.registerMBean(timing, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by an earlier instance of this node in the same JVM, as in tests.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(timing, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not export timings of {} {} over JMX", timing.flow, timing.step, e);
+        }
+    }
+
+    private static String key(String flow, String step) {
+        return flow + '\n' + step;
+    }
+
+    /**
+     * The open steps of one flow. Changes arrive on the flow's own fiber, one at a time.
+     */
+    private final class Steps {
+        private final String flow;
+        private final ProgressTracker root;
+        private final long flowStart = System.nanoTime();
+        // The step each tracker is on, and when it got there.
+        private final Map<ProgressTracker, String> openSteps = new IdentityHashMap<>();
+        private final Map<ProgressTracker, Long> openedAt = new IdentityHashMap<>();
+
+        private Steps(String flow, ProgressTracker root) {
+            this.flow = flow;
+            this.root = root;
+        }
+
+        private void moved(ProgressTracker tracker, ProgressTracker.Step step) {
+            final long now = System.nanoTime();
+            final Map<ProgressTracker, String> paths = paths();
+            // Leaving a step also leaves everything its children were doing.
+            for (ProgressTracker open : new ArrayList<>(openSteps.keySet())) {
+                if (open == tracker || isDescendant(open, tracker, paths)) close(open, now);
+            }
+            if (step == ProgressTracker.UNSTARTED.INSTANCE || step == ProgressTracker.DONE.INSTANCE) return;
+            final String parentPath = paths.get(tracker);
+            if (parentPath == null) return;
+            openSteps.put(tracker, parentPath.isEmpty() ? step.getLabel() : parentPath + "/" + step.getLabel());
+            openedAt.put(tracker, now);
+        }
+
+        private void finished() {
+            final long now = System.nanoTime();
+            for (ProgressTracker open : new ArrayList<>(openSteps.keySet())) {
+                close(open, now);
+            }
+            timing(flow, TOTAL).record(now - flowStart);
+        }
+
+        private void close(ProgressTracker tracker, long now) {
+            final String step = openSteps.remove(tracker);
+            final Long start = openedAt.remove(tracker);
+            if (step != null && start != null) timing(flow, step).record(now - start);
+        }
+
+        private boolean isDescendant(ProgressTracker candidate, ProgressTracker ancestor, Map<ProgressTracker, String> paths) {
+            final String candidatePath = paths.get(candidate);
+            final String ancestorPath = paths.get(ancestor);
+            if (candidatePath == null || ancestorPath == null || candidate == ancestor) return false;
+            return ancestorPath.isEmpty() || candidatePath.startsWith(ancestorPath + "/");
+        }
+
+        /**
+         * Each tracker in the tree mapped to the path of the step it is a child of; the root maps to "". Child
+         * trackers are attached by subFlow as the flow runs, so the tree is walked on every change.
+         */
+        private Map<ProgressTracker, String> paths() {
+            final Map<ProgressTracker, String> paths = new IdentityHashMap<>();
+            walk(root, "", paths);
+            return paths;
+        }
+
+        private void walk(ProgressTracker tracker, String path, Map<ProgressTracker, String> paths) {
+            if (paths.put(tracker, path) != null) return;
+            for (ProgressTracker.Step step : tracker.getSteps()) {
+                final ProgressTracker child = tracker.getChildProgressTracker(step);
+                if (child != null) walk(child, path.isEmpty() ? step.getLabel() : path + "/" + step.getLabel(), paths);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.serialization.CordaSerializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+/**
+ * Records the spans of one side of an initiator/responder flow pair, so that the two nodes' timelines can be lined
+ * up by trace id.
+ *
+ * Tracing is off unless the "flowTracing" CorDapp config setting is true. It must be set the same way on every node
+ * that runs these flows together, since it decides whether a context is exchanged at all. When it is off, nothing is
+ * sent or logged and the flows do not ask for the counterparty's flow version, which costs the initiator a round trip
+ * before its first message.
+ *
+ * When it is on, the initiator opens a trace and sends its {@link Context} as the first message of the session. The
+ * responder receives it, records the message's transit as its first span and continues the same trace. Only
+ * initiators at {@link #VERSION} or later send a context, so each side checks the other's flow version first and falls
+ * back to an untraced exchange with older nodes.
+ *
+ * Every span is logged to the "com.template.trace" logger as one line:
+ *
+ *   span trace=... tx=... node="..." flow=... side=initiator name=collectSignatures start=<epoch micros> duration=<micros>
+ *
+ * {@code com.template.TraceMerge} in the clients module merges these lines from several nodes' logs. Start times
+ * come from each node's wall clock, so cross-node offsets are only as good as the nodes' clock synchronisation.
+ */
+public class FlowTrace {
+    // The flow version from which initiators send a trace context.
+    public static final int VERSION = 2;
+    public static final String ENABLED_CONFIG = "flowTracing";
+
+    private static final Logger logger = LoggerFactory.getLogger("com.template.trace");
+    // Spans are timed with nanoTime, anchored once to the wall clock.
+    private static final long ANCHOR_MICROS = System.currentTimeMillis() * 1000;
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    @CordaSerializable
+    public static class Context {
+        private final String traceId;
+        private final long sentAtMicros;
+
+        public Context(String traceId, long sentAtMicros) {
+            this.traceId = traceId;
+            this.sentAtMicros = sentAtMicros;
+        }
+
+        public String getTraceId() {
+            return traceId;
+        }
+
+        public long getSentAtMicros() {
+            return sentAtMicros;
+        }
+    }
+
+    private final String traceId;
+    private final boolean enabled;
+    private final String node;
+    private final String flow;
+    private final String side;
+    private final long startMicros = now();
+    private SecureHash txId;
+
+    private FlowTrace(String traceId, boolean enabled, FlowLogic<?> flow, String side) {
+        this.traceId = traceId;
+        this.enabled = enabled;
+        this.node = flow.getOurIdentity().getName().toString();
+        // Without the package, but keeping the outer class of nested flows such as ProductCreateFlow$Initiator.
+        this.flow = flow.getClass().getName().substring(flow.getClass().getName().lastIndexOf('.') + 1);
+        this.side = side;
+    }
+
+    /**
+     * Opens a new trace for an initiating flow.
+     */
+    public static FlowTrace initiator(FlowLogic<?> flow) {
+        return new FlowTrace(UUID.randomUUID().toString(), isEnabled(flow.getServiceHub()), flow, "initiator");
+    }
+
+    /**
+     * Continues the initiator's trace in its responder. This must be called before anything else is received from
+     * {@code session}.
+     */
+    @Suspendable
+    public static FlowTrace responder(FlowLogic<?> flow, FlowSession session) throws FlowException {
+        if (!isEnabled(flow.getServiceHub())) {
+            return new FlowTrace(UUID.randomUUID().toString(), false, flow, "responder");
+        }
+        if (session.getCounterpartyFlowInfo().getFlowVersion() < VERSION) {
+            return new FlowTrace(UUID.randomUUID().toString(), true, flow, "responder");
+        }
+        final Context context = session.receive(Context.class).unwrap(received -> {
+            if (received.getTraceId() == null) throw new FlowException("Trace context without a trace id");
+            return received;
+        });
+        final FlowTrace trace = new FlowTrace(context.getTraceId(), true, flow, "responder");
+        trace.span("transit", context.getSentAtMicros());
+        return trace;
+    }
+
+    /**
+     * Sends this trace's context to a responder that expects one. This must be the first message on the session.
+     */
+    @Suspendable
+    public void send(FlowSession session) throws FlowException {
+        if (enabled && session.getCounterpartyFlowInfo().getFlowVersion() >= VERSION) {
+            session.send(new Context(traceId, now()));
+        }
+    }
+
+    public void setTxId(SecureHash txId) {
+        this.txId = txId;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isEnabled(ServiceHub serviceHub) {
+        return FlowConfig.getBoolean(serviceHub, ENABLED_CONFIG, false);
+    }
+
+    /**
+     * The current time in epoch microseconds, for marking the start of a span.
+     */
+    public static long now() {
+        return ANCHOR_MICROS + (System.nanoTime() - ANCHOR_NANOS) / 1000;
+    }
+
+    /**
+     * Logs a span from {@code startMicros} until now, if tracing is on, and returns now so that spans can be chained.
+     */
+    public long span(String name, long startMicros) {
+        final long end = now();
+        if (!enabled) return end;
+        logger.info("span trace={} tx={} node=\"{}\" flow={} side={} name={} start={} duration={}",
+                traceId, txId == null ? "-" : txId, node, flow, side, name, startMicros, Math.max(0, end - startMicros));
+        return end;
+    }
+
+    /**
+     * Logs the whole flow as the span "flow".
+     */
+    public void finish() {
+        span("flow", startMicros);
+    }
+}
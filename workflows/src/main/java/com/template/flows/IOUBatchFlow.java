@@ -0,0 +1,91 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.IOUContract;
+import com.template.states.IOUState;
+import net.corda.core.contracts.Command;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Issues many IOUs, each with its own value, to one counterparty in a single transaction, so the whole batch shares
+ * one round of signature collection and one finality broadcast.
+ *
+ * The largest batch a node will build or sign is read from the "iouBatchMaxSize" CorDapp config setting.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class IOUBatchFlow extends FlowLogic<SignedTransaction> {
+    public static final String MAX_BATCH_SIZE_CONFIG = "iouBatchMaxSize";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    private final List<Integer> iouValues;
+    private final Party otherParty;
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    public IOUBatchFlow(List<Integer> iouValues, Party otherParty) {
+        this.iouValues = iouValues;
+        this.otherParty = otherParty;
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        getServiceHub().cordaService(FlowTimingService.class).track(this);
+        final int maxBatchSize = FlowConfig.getInt(getServiceHub(), MAX_BATCH_SIZE_CONFIG, DEFAULT_MAX_BATCH_SIZE);
+        if (iouValues.isEmpty()) {
+            throw new FlowException("An IOU batch must contain at least one IOU.");
+        }
+        if (iouValues.size() > maxBatchSize) {
+            throw new FlowException(String.format(
+                    "An IOU batch may contain at most %d IOUs, but %d were requested.", maxBatchSize, iouValues.size()));
+        }
+
+        // We pick one of the network's notaries.
+        NotarySelectorService notaries = getServiceHub().cordaService(NotarySelectorService.class);
+        Party notary = notaries.select();
+        // We create the transaction components, one output per IOU.
+        List<PublicKey> requiredSigners = Arrays.asList(getOurIdentity().getOwningKey(), otherParty.getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                .addCommand(new Command<>(new IOUContract.BatchCreate(), requiredSigners));
+        for (Integer iouValue : iouValues) {
+            txBuilder.addOutputState(new IOUState(iouValue, getOurIdentity(), otherParty), IOUContract.ID);
+        }
+
+        // Verifying the transaction.
+        txBuilder.verify(getServiceHub());
+
+        // Signing the transaction.
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+        // Creating a session with the other party.
+        FlowSession otherPartySession = initiateFlow(otherParty);
+
+        // Obtaining the counterparty's signature.
+        SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                signedTx, Arrays.asList(otherPartySession), CollectSignaturesFlow.tracker()));
+
+        // Finalising the transaction.
+        return NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, otherPartySession));
+    }
+}
@@ -0,0 +1,50 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.IOUContract;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(IOUBatchFlow.class)
+public class IOUBatchFlowResponder extends FlowLogic<SignedTransaction> {
+    private final FlowSession otherPartySession;
+
+    public IOUBatchFlowResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        final int maxBatchSize = FlowConfig.getInt(getServiceHub(), IOUBatchFlow.MAX_BATCH_SIZE_CONFIG, IOUBatchFlow.DEFAULT_MAX_BATCH_SIZE);
+
+        class SignTxFlow extends SignTransactionFlow {
+            private SignTxFlow(FlowSession otherPartySession) {
+                super(otherPartySession);
+            }
+
+            @Override
+            protected void checkTransaction(@NotNull SignedTransaction stx) {
+                requireThat(require -> {
+                    require.using("This must be an IOU batch.",
+                            !stx.getTx().commandsOfType(IOUContract.BatchCreate.class).isEmpty());
+                    require.using("The batch can't hold more than " + maxBatchSize + " IOUs.",
+                            stx.getTx().getOutputs().size() <= maxBatchSize);
+                    return null;
+                });
+                IOUFlowResponder.checkOutputs(stx);
+            }
+        }
+
+        SecureHash expectedTxId = subFlow(new SignTxFlow(otherPartySession)).getId();
+
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, expectedTxId));
+    }
+}
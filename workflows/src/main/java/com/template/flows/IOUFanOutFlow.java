@@ -0,0 +1,183 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.IOUContract;
+import com.template.states.IOUState;
+import net.corda.core.contracts.Command;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.UntrustworthyData;
+
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Issues one IOU from us to each of many borrowers, overlapping the borrowers' signing and recording instead of
+ * running IOUFlow for one borrower after another.
+ *
+ * Every borrower gets its own transaction, and every session is opened up front. Borrowers are then handled in
+ * windows of at most "iouFanOutWindow" (CorDapp config, default 32). All the proposals of a window are sent before
+ * any signature is awaited, and all its fully signed transactions are sent before any acknowledgement is awaited,
+ * so the borrowers of a window sign and record in parallel. The window bounds how many transactions are held in
+ * memory and how many borrowers are waited on at once.
+ *
+ * IOU issuances have no inputs and no time window, so they need no notary signature. Each transaction is recorded
+ * here and sent directly to its borrower, which records it too. This replaces CollectSignaturesFlow and FinalityFlow,
+ * which wait on one counterparty at a time. Each borrower runs IOUFanOutFlowResponder. Returns the transactions in
+ * the order of {@code borrowers}.
+ *
+ * A fan-out is not atomic. The windows before a failure stay issued and recorded on both sides, and no borrower after
+ * the failing window gets an IOU. A window is recorded here only once all its borrowers have signed, so a borrower
+ * that refuses its IOU leaves its whole window unissued; a borrower that fails after that leaves the window recorded
+ * here but perhaps not in the borrowers' vaults. The FlowException says how many borrowers, in order, received their
+ * IOUs, so that the rest can be issued by another fan-out.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class IOUFanOutFlow extends FlowLogic<List<SignedTransaction>> {
+    public static final String WINDOW_CONFIG = "iouFanOutWindow";
+    public static final int DEFAULT_WINDOW = 32;
+
+    private final List<Integer> iouValues;
+    private final List<Party> borrowers;
+    private final int window;
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    /**
+     * Issues {@code iouValues.get(i)} to {@code borrowers.get(i)}.
+     */
+    public IOUFanOutFlow(List<Integer> iouValues, List<Party> borrowers) {
+        this(iouValues, borrowers, 0);
+    }
+
+    /**
+     * Issues {@code iouValues.get(i)} to {@code borrowers.get(i)}, {@code window} borrowers at a time. A window of 0
+     * uses the CorDapp config.
+     */
+    public IOUFanOutFlow(List<Integer> iouValues, List<Party> borrowers, int window) {
+        this.iouValues = iouValues;
+        this.borrowers = borrowers;
+        this.window = window;
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        getServiceHub().cordaService(FlowTimingService.class).track(this);
+        if (borrowers.isEmpty() || borrowers.size() != iouValues.size()) {
+            throw new FlowException("A fan-out needs one IOU value per borrower.");
+        }
+        if (new HashSet<>(borrowers).size() != borrowers.size()) {
+            throw new FlowException("Each borrower may appear only once in a fan-out.");
+        }
+        final int window = this.window > 0 ? this.window : FlowConfig.getInt(getServiceHub(), WINDOW_CONFIG, DEFAULT_WINDOW);
+        final Party us = getOurIdentity();
+
+        // Open every session up front.
+        final List<FlowSession> sessions = new ArrayList<>(borrowers.size());
+        for (Party borrower : borrowers) {
+            if (borrower.equals(us)) throw new FlowException("We cannot lend to ourselves.");
+            sessions.add(initiateFlow(borrower));
+        }
+
+        final List<SignedTransaction> issued = new ArrayList<>(borrowers.size());
+        for (int from = 0; from < borrowers.size(); from += window) {
+            final int to = Math.min(borrowers.size(), from + window);
+            final List<FlowSession> windowSessions = new ArrayList<>(sessions.subList(from, to));
+
+            final List<SignedTransaction> signed;
+            try {
+                signed = collectSignatures(windowSessions, from);
+            } catch (FlowException e) {
+                throw new FlowException("IOUs were issued to the first " + from + " of " + borrowers.size()
+                        + " borrowers and to none of the rest: " + e.getMessage(), e);
+            }
+            getServiceHub().recordTransactions(signed);
+            try {
+                distribute(windowSessions, signed);
+            } catch (FlowException e) {
+                throw new FlowException("IOUs were issued to the first " + from + " of " + borrowers.size()
+                        + " borrowers. The IOUs to borrowers " + (from + 1) + " to " + to + " are recorded here but may be"
+                        + " missing from the borrowers' vaults, and none were issued to the rest: " + e.getMessage(), e);
+            }
+            issued.addAll(signed);
+        }
+        return issued;
+    }
+
+    // Builds, verifies and signs every transaction of the window, proposes them all before waiting, and collects the
+    // borrowers' signatures in one wait. Nothing is recorded.
+    @Suspendable
+    private List<SignedTransaction> collectSignatures(List<FlowSession> windowSessions, int from) throws FlowException {
+        final NotarySelectorService notaries = getServiceHub().cordaService(NotarySelectorService.class);
+        final Party us = getOurIdentity();
+        final List<SignedTransaction> proposals = new ArrayList<>(windowSessions.size());
+        for (int i = 0; i < windowSessions.size(); i++) {
+            final Party borrower = borrowers.get(from + i);
+            final List<PublicKey> requiredSigners = Arrays.asList(us.getOwningKey(), borrower.getOwningKey());
+            final TransactionBuilder txBuilder = new TransactionBuilder(notaries.select())
+                    .addOutputState(new IOUState(iouValues.get(from + i), us, borrower), IOUContract.ID)
+                    .addCommand(new Command<>(new IOUContract.Create(), requiredSigners));
+            txBuilder.verify(getServiceHub());
+            final SignedTransaction proposal = getServiceHub().signInitialTransaction(txBuilder);
+            proposals.add(proposal);
+            windowSessions.get(i).send(proposal);
+        }
+
+        final List<UntrustworthyData<TransactionSignature>> signatures = receiveAll(TransactionSignature.class, windowSessions);
+        final List<SignedTransaction> signed = new ArrayList<>(proposals.size());
+        for (int i = 0; i < proposals.size(); i++) {
+            final SignedTransaction proposal = proposals.get(i);
+            final TransactionSignature signature = signatures.get(i).unwrap(received -> received);
+            if (!signature.getBy().equals(borrowers.get(from + i).getOwningKey())) {
+                throw new FlowException("Borrower " + borrowers.get(from + i) + " signed with an unexpected key.");
+            }
+            try {
+                signature.verify(proposal.getId());
+            } catch (InvalidKeyException | SignatureException e) {
+                throw new FlowException("Borrower " + borrowers.get(from + i) + " returned an invalid signature.", e);
+            }
+            final SignedTransaction fullySigned = proposal.withAdditionalSignature(signature);
+            try {
+                fullySigned.verifyRequiredSignatures();
+            } catch (SignatureException e) {
+                throw new FlowException(e);
+            }
+            signed.add(fullySigned);
+        }
+        return signed;
+    }
+
+    // Sends every recorded transaction of the window on, then waits until every borrower has recorded its own.
+    @Suspendable
+    private void distribute(List<FlowSession> windowSessions, List<SignedTransaction> signed) throws FlowException {
+        for (int i = 0; i < signed.size(); i++) {
+            windowSessions.get(i).send(signed.get(i));
+        }
+        for (UntrustworthyData<Boolean> recorded : receiveAll(Boolean.class, windowSessions)) {
+            if (!recorded.unwrap(ack -> ack)) throw new FlowException("A borrower did not record its IOU.");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.IOUState;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+
+// ******************
+// * Responder flow *
+// ******************
+
+/**
+ * Signs and records the one IOU an {@link IOUFanOutFlow} issues to us.
+ */
+@InitiatedBy(IOUFanOutFlow.class)
+public class IOUFanOutFlowResponder extends FlowLogic<SignedTransaction> {
+    private final FlowSession lenderSession;
+
+    public IOUFanOutFlowResponder(FlowSession lenderSession) {
+        this.lenderSession = lenderSession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        final PublicKey ourKey = getOurIdentity().getOwningKey();
+        final SignedTransaction proposal = lenderSession.receive(SignedTransaction.class).unwrap(stx -> {
+            IOUFlowResponder.checkOutputs(stx);
+            final IOUState iou = stx.getTx().outputsOfType(IOUState.class).get(0);
+            if (!iou.getLender().equals(lenderSession.getCounterparty()) || !iou.getBorrower().getOwningKey().equals(ourKey)) {
+                throw new FlowException("The IOU must be lent by the counterparty to us.");
+            }
+            try {
+                stx.verifySignaturesExcept(ourKey);
+                stx.verify(getServiceHub(), false);
+            } catch (SignatureException e) {
+                throw new FlowException(e);
+            }
+            return stx;
+        });
+        lenderSession.send(getServiceHub().createSignature(proposal, ourKey));
+
+        final SignedTransaction recorded = lenderSession.receive(SignedTransaction.class).unwrap(stx -> {
+            if (!stx.getId().equals(proposal.getId())) {
+                throw new FlowException("The lender sent a different transaction from the one we signed.");
+            }
+            try {
+                stx.verifyRequiredSignatures();
+            } catch (SignatureException e) {
+                throw new FlowException(e);
+            }
+            return stx;
+        });
+        getServiceHub().recordTransactions(recorded);
+        lenderSession.send(true);
+        return recorded;
+    }
+}
@@ -18,7 +18,8 @@ import java.util.List;
 // * Initiator flow *
 // ******************
 
-@InitiatingFlow
+// Version 2 sends a FlowTrace context to IOUFlowResponder.
+@InitiatingFlow(version = 2)
 @StartableByRPC
 public class IOUFlow extends FlowLogic<Void> {
     private final Integer iouValue;
@@ -45,9 +46,12 @@ public class IOUFlow extends FlowLogic<Void> {
     @Suspendable
     @Override
     public Void call() throws FlowException {
-        // We retrieve the notary identity from the network map.
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-
+        getServiceHub().cordaService(FlowTimingService.class).track(this);
+        final FlowTrace trace = FlowTrace.initiator(this);
+        long mark = FlowTrace.now();
+        // We pick one of the network's notaries.
+        NotarySelectorService notaries = getServiceHub().cordaService(NotarySelectorService.class);
+        Party notary = notaries.select();
         // We create the transaction components.
         IOUState outputState = new IOUState(iouValue, getOurIdentity(), otherParty);
         List<PublicKey> requiredSigners = Arrays.asList(getOurIdentity().getOwningKey(), otherParty.getOwningKey());
@@ -63,16 +67,23 @@ public class IOUFlow extends FlowLogic<Void> {
 
         // Signing the transaction.
         SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+        trace.setTxId(signedTx.getId());
+        mark = trace.span("build", mark);
 
         // Creating a session with the other party.
         FlowSession otherPartySession = initiateFlow(otherParty);
+        trace.send(otherPartySession);
+        mark = trace.span("handshake", mark);
 
-// Obtaining the counterparty's signature.
+        // Obtaining the counterparty's signature.
         SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
                 signedTx, Arrays.asList(otherPartySession), CollectSignaturesFlow.tracker()));
+        mark = trace.span("collectSignatures", mark);
 
         // Finalising the transaction.
-        subFlow(new FinalityFlow(fullySignedTx, otherPartySession));
+        NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, otherPartySession));
+        trace.span("finality", mark);
+        trace.finish();
 
         return null;
     }
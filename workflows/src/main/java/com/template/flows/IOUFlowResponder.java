@@ -3,6 +3,7 @@ package com.template.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.states.IOUState;
 import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.TransactionState;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.transactions.SignedTransaction;
@@ -31,20 +32,36 @@ public class IOUFlowResponder extends FlowLogic<Void> {
 
             @Override
             protected void checkTransaction(@NotNull SignedTransaction stx) {
-                requireThat(require -> {
-                    ContractState output = stx.getTx().getOutputs().get(0).getData();
-                    require.using("This must be an IOU transaction.", output instanceof IOUState);
-                    IOUState iou = (IOUState) output;
-                    require.using("The IOU's value can't be too high.", iou.getValue() < 100);
-                    return null;
-                });
+                checkOutputs(stx);
             }
         }
 
+        FlowTrace trace = FlowTrace.responder(this, otherPartySession);
+        long mark = FlowTrace.now();
+
         SecureHash expectedTxId = subFlow(new SignTxFlow(otherPartySession)).getId();
+        trace.setTxId(expectedTxId);
+        mark = trace.span("signTransaction", mark);
 
         subFlow(new ReceiveFinalityFlow(otherPartySession, expectedTxId));
+        trace.span("receiveFinality", mark);
+        trace.finish();
 
         return null;
     }
+
+    /**
+     * Checks every output of a transaction proposing IOUs to us, not only the first.
+     */
+    static void checkOutputs(SignedTransaction stx) {
+        requireThat(require -> {
+            require.using("This must be an IOU transaction.", !stx.getTx().getOutputs().isEmpty());
+            for (TransactionState<ContractState> output : stx.getTx().getOutputs()) {
+                require.using("This must be an IOU transaction.", output.getData() instanceof IOUState);
+                IOUState iou = (IOUState) output.getData();
+                require.using("The IOU's value can't be too high.", iou.getValue() < 100);
+            }
+            return null;
+        });
+    }
 }
@@ -0,0 +1,142 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.IOUContract;
+import com.template.states.IOUState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Consolidates every unconsumed IOU between us and a counterparty, in either direction, into at most one IOU for the
+ * net balance, so that the vault stops growing by one state per IOUFlow.
+ *
+ * IOUs are netted in chunks of at most "iouNetMaxInputs" inputs (a CorDapp config setting), each chunk its own
+ * transaction. A chunk's output is an ordinary unconsumed IOU, so it is picked up again by a later chunk, and the flow
+ * stops once no more than one IOU is left. The IOUs in one transaction must share a notary, so only IOUs on the notary
+ * of the first IOU found are netted; running the flow again nets those on the next notary.
+ *
+ * Returns the netting transactions, one per chunk, or none if there was nothing to net.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class IOUNetFlow extends FlowLogic<List<SignedTransaction>> {
+    public static final String MAX_INPUTS_CONFIG = "iouNetMaxInputs";
+    public static final int DEFAULT_MAX_INPUTS = 200;
+
+    private final Party otherParty;
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    public IOUNetFlow(Party otherParty) {
+        this.otherParty = otherParty;
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        getServiceHub().cordaService(FlowTimingService.class).track(this);
+        final int maxInputs = FlowConfig.getInt(getServiceHub(), MAX_INPUTS_CONFIG, DEFAULT_MAX_INPUTS);
+        if (maxInputs < 2) {
+            throw new FlowException(MAX_INPUTS_CONFIG + " must be at least 2, but is " + maxInputs + ".");
+        }
+        if (otherParty.equals(getOurIdentity())) {
+            throw new FlowException("IOUs can only be netted with another party.");
+        }
+
+        final VaultService vaultService = getServiceHub().getVaultService();
+        final UUID lockId = getRunId().getUuid();
+        final QueryCriteria between = IOUQueries.between(getOurIdentity(), otherParty);
+        final StateAndRef<IOUState> first = new VaultPager<>(vaultService, IOUState.class, between).firstOrNull();
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        final Party notary = first.getState().getNotary();
+        final QueryCriteria onNotary = between.and(new QueryCriteria.VaultQueryCriteria(
+                Vault.StateStatus.UNCONSUMED, null, null, ImmutableList.of(notary)));
+
+        final List<SignedTransaction> nettingTxs = new ArrayList<>();
+        FlowSession otherPartySession = null;
+        while (true) {
+            // Every chunk consumes at least two IOUs and issues at most one, so the loop ends.
+            final List<StateAndRef<IOUState>> inputs =
+                    StateReservations.reserve(vaultService, IOUState.class, lockId, onNotary, maxInputs);
+            if (inputs.size() < 2) break;
+
+            if (otherPartySession == null) {
+                otherPartySession = initiateFlow(otherParty);
+            }
+            otherPartySession.send(true);
+            nettingTxs.add(netChunk(notary, inputs, otherPartySession));
+        }
+        if (otherPartySession != null) {
+            otherPartySession.send(false);
+        }
+        return nettingTxs;
+    }
+
+    @Suspendable
+    private SignedTransaction netChunk(Party notary, List<StateAndRef<IOUState>> inputs, FlowSession otherPartySession) throws FlowException {
+        // The balance owed to us: positive when we are owed, negative when we owe.
+        long balance = 0;
+        for (StateAndRef<IOUState> input : inputs) {
+            final IOUState iou = input.getState().getData();
+            balance += iou.getLender().equals(getOurIdentity()) ? iou.getValue() : -(long) iou.getValue();
+        }
+        if (Math.abs(balance) > Integer.MAX_VALUE) {
+            throw new FlowException("The net balance of " + balance + " is too large for a single IOU.");
+        }
+
+        List<PublicKey> requiredSigners = Arrays.asList(getOurIdentity().getOwningKey(), otherParty.getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                .addCommand(new Command<>(new IOUContract.Net(), requiredSigners));
+        for (StateAndRef<IOUState> input : inputs) {
+            txBuilder.addInputState(input);
+        }
+        if (balance > 0) {
+            txBuilder.addOutputState(new IOUState((int) balance, getOurIdentity(), otherParty), IOUContract.ID);
+        } else if (balance < 0) {
+            txBuilder.addOutputState(new IOUState((int) -balance, otherParty, getOurIdentity()), IOUContract.ID);
+        }
+
+        // Verifying the transaction.
+        txBuilder.verify(getServiceHub());
+
+        // Signing the transaction.
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+        // Obtaining the counterparty's signature.
+        SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                signedTx, Arrays.asList(otherPartySession), CollectSignaturesFlow.tracker()));
+
+        // Finalising the transaction.
+        return NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, otherPartySession));
+    }
+}
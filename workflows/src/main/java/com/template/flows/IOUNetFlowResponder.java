@@ -0,0 +1,53 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.IOUContract;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(IOUNetFlow.class)
+public class IOUNetFlowResponder extends FlowLogic<Void> {
+    private final FlowSession otherPartySession;
+
+    public IOUNetFlowResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        final int maxInputs = FlowConfig.getInt(getServiceHub(), IOUNetFlow.MAX_INPUTS_CONFIG, IOUNetFlow.DEFAULT_MAX_INPUTS);
+
+        class SignTxFlow extends SignTransactionFlow {
+            private SignTxFlow(FlowSession otherPartySession) {
+                super(otherPartySession);
+            }
+
+            @Override
+            protected void checkTransaction(@NotNull SignedTransaction stx) {
+                // The contract checks that the balance between us is conserved.
+                requireThat(require -> {
+                    require.using("This must be an IOU netting transaction.",
+                            !stx.getTx().commandsOfType(IOUContract.Net.class).isEmpty());
+                    require.using("A netting transaction can't consume more than " + maxInputs + " IOUs.",
+                            stx.getTx().getInputs().size() <= maxInputs);
+                    return null;
+                });
+            }
+        }
+
+        // The initiator nets in chunks, announcing each one before proposing its transaction.
+        while (otherPartySession.receive(Boolean.class).unwrap(more -> more)) {
+            SecureHash expectedTxId = subFlow(new SignTxFlow(otherPartySession)).getId();
+            subFlow(new ReceiveFinalityFlow(otherPartySession, expectedTxId));
+        }
+        return null;
+    }
+}
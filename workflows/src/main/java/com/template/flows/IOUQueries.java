@@ -0,0 +1,33 @@
+package com.template.flows;
+
+import com.template.schemas.IOUSchemaV1.PersistentIOU;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Vault query criteria over the indexed iou_states table. Lenders and borrowers are recorded there by name, so lookups
+ * take well-known parties.
+ */
+public class IOUQueries {
+    private IOUQueries() { }
+
+    /**
+     * Unconsumed IOUs lent by {@code lender} to {@code borrower}.
+     */
+    public static QueryCriteria lentBy(Party lender, Party borrower) {
+        return new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(getField("lender", PersistentIOU.class), lender.getName().toString()))
+                .and(new QueryCriteria.VaultCustomQueryCriteria(
+                        Builder.equal(getField("borrower", PersistentIOU.class), borrower.getName().toString())));
+    }
+
+    /**
+     * Unconsumed IOUs between the two parties, in either direction.
+     */
+    public static QueryCriteria between(Party party, Party otherParty) {
+        return lentBy(party, otherParty).or(lentBy(otherParty, party));
+    }
+}
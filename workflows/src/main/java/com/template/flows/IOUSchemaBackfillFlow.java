@@ -0,0 +1,45 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.schemas.IOUSchemaV1;
+import com.template.states.IOUState;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.sql.SQLException;
+
+/**
+ * Writes the iou_states rows of IOUs recorded before the table existed, up to one batch per run. Until they are
+ * backfilled those IOUs are invisible to {@link IOUQueries}, so IOUNetFlow leaves them out of the balance; a node
+ * upgraded from a version without the table should run this over RPC until it returns fewer than the batch size.
+ *
+ * The batch size defaults to the "iouBackfillBatchSize" CorDapp config setting.
+ */
+@StartableByRPC
+public class IOUSchemaBackfillFlow extends FlowLogic<Integer> {
+    public static final String BATCH_SIZE_CONFIG = "iouBackfillBatchSize";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final int batchSize;
+
+    public IOUSchemaBackfillFlow() {
+        this(0);
+    }
+
+    public IOUSchemaBackfillFlow(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        final int limit = batchSize > 0 ? batchSize
+                : FlowConfig.getInt(getServiceHub(), BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE);
+        try {
+            return SchemaBackfill.backfill(getServiceHub(), IOUState.class, new IOUSchemaV1(), limit, "iou_states");
+        } catch (SQLException e) {
+            throw new FlowException("Could not backfill iou_states.", e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FinalityFlow;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the notary for transactions that have no inputs, so that issuance is spread over every notary on the
+ * network rather than always going to the first one. Transactions that consume states must use their inputs' notary.
+ *
+ * The strategy is read from the "notarySelectionStrategy" CorDapp config setting:
+ *
+ *   round-robin      each selection takes the next notary in turn (the default)
+ *   least-in-flight  the notary with the fewest of this node's transactions still being finalised
+ *   linear-id-hash   a notary derived from the new state's linearId, so every node places a given state the same way;
+ *                    selections without a linearId fall back to round-robin
+ *
+ * Notary identities are cached, sorted by name so that every node sees the same order, and reloaded when the network
+ * map changes. Flows finalise through {@link #finalise}, which reports the transaction to {@link #started} and
+ * {@link #finished} while it is with the notary.
+ */
+@CordaService
+public class NotarySelectorService extends SingletonSerializeAsToken {
+    public static final String STRATEGY_CONFIG = "notarySelectionStrategy";
+
+    private static final Logger logger = LoggerFactory.getLogger(NotarySelectorService.class);
+
+    public enum Strategy {
+        ROUND_ROBIN("round-robin"),
+        LEAST_IN_FLIGHT("least-in-flight"),
+        LINEAR_ID_HASH("linear-id-hash");
+
+        private final String configName;
+
+        Strategy(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public static Strategy fromConfigName(String configName) {
+            for (Strategy strategy : values()) {
+                if (strategy.configName.equals(configName)) return strategy;
+            }
+            throw new IllegalArgumentException("Unknown notary selection strategy " + configName);
+        }
+    }
+
+    private final AppServiceHub serviceHub;
+    private final Strategy strategy;
+    private final Map<Party, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong next = new AtomicLong();
+    private volatile List<Party> notaries;
+
+    public NotarySelectorService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.strategy = Strategy.fromConfigName(
+                FlowConfig.getString(serviceHub, STRATEGY_CONFIG, Strategy.ROUND_ROBIN.getConfigName()));
+        reload();
+        serviceHub.getNetworkMapCache().getChanged()
+                .subscribe(change -> reload(), e -> logger.error("Notary selector stopped receiving network map changes", e));
+        logger.info("Selecting among {} notaries by {}", notaries.size(), strategy.getConfigName());
+    }
+
+    /**
+     * Chooses a notary for a transaction without inputs.
+     */
+    public Party select() {
+        return select(null);
+    }
+
+    /**
+     * Chooses a notary for a transaction without inputs that issues the state with the given linearId, which may be
+     * null when there is no single such state.
+     */
+    public Party select(UniqueIdentifier linearId) {
+        final List<Party> candidates = notaries;
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("No notaries are known to this node");
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        if (strategy == Strategy.LINEAR_ID_HASH && linearId != null) {
+            return candidates.get(Math.floorMod(linearId.getId().hashCode(), candidates.size()));
+        }
+        if (strategy == Strategy.LEAST_IN_FLIGHT) {
+            return leastInFlight(candidates);
+        }
+        return candidates.get((int) Math.floorMod(next.getAndIncrement(), (long) candidates.size()));
+    }
+
+    /**
+     * Runs {@code finality} as a subflow of {@code flow}, counting its transaction as in flight at {@code notary}
+     * until it is finalised or fails.
+     */
+    @Suspendable
+    public static SignedTransaction finalise(FlowLogic<?> flow, Party notary, FinalityFlow finality) throws FlowException {
+        final NotarySelectorService notaries = flow.getServiceHub().cordaService(NotarySelectorService.class);
+        notaries.started(notary);
+        try {
+            return flow.subFlow(finality);
+        } finally {
+            notaries.finished(notary);
+        }
+    }
+
+    /**
+     * Records that a transaction is on its way to the notary.
+     */
+    public void started(Party notary) {
+        inFlight.computeIfAbsent(notary, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Records that a transaction reported through {@link #started} was finalised or abandoned.
+     */
+    public void finished(Party notary) {
+        final AtomicInteger count = inFlight.get(notary);
+        // A flow restored from a checkpoint after a restart finishes without having started in this process.
+        if (count != null) count.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    public int getInFlight(Party notary) {
+        final AtomicInteger count = inFlight.get(notary);
+        return count == null ? 0 : count.get();
+    }
+
+    public List<Party> getNotaries() {
+        return notaries;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    // Ties go to the notary after the one chosen last, so that an idle network is still used round-robin.
+    private Party leastInFlight(List<Party> candidates) {
+        final int start = (int) Math.floorMod(next.getAndIncrement(), (long) candidates.size());
+        Party best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            final Party candidate = candidates.get((start + i) % candidates.size());
+            final int count = getInFlight(candidate);
+            if (count < bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private void reload() {
+        final List<Party> sorted = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        sorted.sort(Comparator.comparing(notary -> notary.getName().toString()));
+        notaries = Collections.unmodifiableList(sorted);
+    }
+}
@@ -0,0 +1,199 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.schemas.ProductSchemaV1.PersistentProduct;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Moves the product_states rows of one batch of products, consumed before a horizon, into the product_states_archive
+ * table, oldest first. A batch is moved in the flow's own database transaction, so it is archived completely or not at
+ * all. Each run archives one batch; an operator runs it over RPC until a batch comes back short.
+ *
+ * Only the CorDapp's own tables are written. The consumed states stay in the node's vault tables, which the node
+ * owns, along with the transactions that produced and consumed them. Archived products drop out of every product_states
+ * lookup by status, color or counterparty, which is what keeps those lookups small, and are read back with
+ * ProductArchiveQueryFlow. Products recorded before product_states existed have no row and are not archived.
+ *
+ * The horizon and batch size default to the "productArchiveHorizonHours" and "productArchiveBatchSize" CorDapp config
+ * settings. After archiving, the flow times a vault query for Pending products and counts the products left to
+ * archive, and reports both to ProductArchiveService, so the effect of archiving on query latency can be followed.
+ */
+@StartableByRPC
+public class ProductArchiveFlow extends FlowLogic<ProductArchiveFlow.Result> {
+    public static final String HORIZON_CONFIG = "productArchiveHorizonHours";
+    public static final String BATCH_SIZE_CONFIG = "productArchiveBatchSize";
+    public static final long DEFAULT_HORIZON_HOURS = 24 * 30;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Sort OLDEST_FIRST = new Sort(ImmutableList.of(
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.CONSUMED_TIME), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+    private static final String COPY_TO_ARCHIVE = "INSERT INTO product_states_archive (transaction_id, output_index,"
+            + " from_party, to_party, product_name, product_color, status, linear_id, recorded_timestamp,"
+            + " consumed_timestamp, archived_timestamp)"
+            + " SELECT p.transaction_id, p.output_index, p.from_party, p.to_party, p.product_name, p.product_color,"
+            + " p.status, p.linear_id, ?, ?, ? FROM product_states p WHERE p.transaction_id = ? AND p.output_index = ?";
+    private static final String DELETE_ROW = "DELETE FROM product_states WHERE transaction_id = ? AND output_index = ?";
+
+    private final Instant consumedBefore;
+    private final int batchSize;
+
+    /**
+     * Archives one batch using the horizon and batch size from the CorDapp config.
+     */
+    public ProductArchiveFlow() {
+        this(null, 0);
+    }
+
+    /**
+     * Archives up to {@code batchSize} products consumed before {@code consumedBefore}.
+     */
+    public ProductArchiveFlow(Instant consumedBefore, int batchSize) {
+        this.consumedBefore = consumedBefore;
+        this.batchSize = batchSize;
+    }
+
+    @CordaSerializable
+    public static class Result {
+        private final int archived;
+        private final int batchSize;
+        private final long unconsumedProducts;
+        private final long consumedProducts;
+        private final long probeQueryMicros;
+
+        public Result(int archived, int batchSize, long unconsumedProducts, long consumedProducts, long probeQueryMicros) {
+            this.archived = archived;
+            this.batchSize = batchSize;
+            this.unconsumedProducts = unconsumedProducts;
+            this.consumedProducts = consumedProducts;
+            this.probeQueryMicros = probeQueryMicros;
+        }
+
+        public int getArchived() {
+            return archived;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        // A short batch means nothing else is due.
+        public boolean isComplete() {
+            return archived < batchSize;
+        }
+
+        public long getUnconsumedProducts() {
+            return unconsumedProducts;
+        }
+
+        // Consumed products not yet archived, whether or not they are past the horizon.
+        public long getConsumedProducts() {
+            return consumedProducts;
+        }
+
+        public long getProbeQueryMicros() {
+            return probeQueryMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("archived %d of at most %d, %d unconsumed and %d consumed products not archived, probe query %d us",
+                    archived, batchSize, unconsumedProducts, consumedProducts, probeQueryMicros);
+        }
+    }
+
+    @Suspendable
+    @Override
+    public Result call() throws FlowException {
+        final int limit = batchSize > 0 ? batchSize
+                : FlowConfig.getInt(getServiceHub(), BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE);
+        final Instant now = getServiceHub().getClock().instant();
+        final Instant horizon = consumedBefore != null ? consumedBefore
+                : now.minus(Duration.ofHours(FlowConfig.getLong(getServiceHub(), HORIZON_CONFIG, DEFAULT_HORIZON_HOURS)));
+
+        final VaultService vaultService = getServiceHub().getVaultService();
+        final Vault.Page<ProductState> batch = vaultService.queryBy(ProductState.class,
+                unarchived().and(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED, null, null, null, null,
+                        new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.CONSUMED, Builder.lessThan(horizon)))),
+                new PageSpecification(DEFAULT_PAGE_NUM, limit), OLDEST_FIRST);
+        try {
+            if (!batch.getStates().isEmpty()) {
+                archive(getServiceHub().jdbcSession(), batch, now);
+            }
+        } catch (SQLException e) {
+            throw new FlowException("Could not archive consumed products.", e);
+        }
+
+        // The same shape of query as ProductUpdateFlow uses to pick a Pending product.
+        final long start = System.nanoTime();
+        new VaultPager<>(vaultService, ProductState.class, ProductQueries.withStatus(ProductStatus.PENDING)).take(1);
+        final long probeMicros = (System.nanoTime() - start) / 1000;
+
+        final Result result = new Result(batch.getStates().size(), limit,
+                count(vaultService, new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)),
+                count(vaultService, unarchived()), probeMicros);
+        getServiceHub().cordaService(ProductArchiveService.class).record(result);
+        return result;
+    }
+
+    // Consumed products that still have a product_states row, which the custom criteria joins on.
+    private static QueryCriteria unarchived() {
+        return new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.notNull(getField("linearId", PersistentProduct.class)), Vault.StateStatus.CONSUMED);
+    }
+
+    private static void archive(Connection connection, Vault.Page<ProductState> batch, Instant now) throws SQLException {
+        final List<StateAndRef<ProductState>> states = batch.getStates();
+        final List<Vault.StateMetadata> metadata = batch.getStatesMetadata();
+        try (PreparedStatement copy = connection.prepareStatement(COPY_TO_ARCHIVE)) {
+            for (int i = 0; i < states.size(); i++) {
+                copy.setTimestamp(1, Timestamp.from(metadata.get(i).getRecordedTime()));
+                copy.setTimestamp(2, Timestamp.from(metadata.get(i).getConsumedTime()));
+                copy.setTimestamp(3, Timestamp.from(now));
+                copy.setString(4, states.get(i).getRef().getTxhash().toString());
+                copy.setInt(5, states.get(i).getRef().getIndex());
+                copy.addBatch();
+            }
+            copy.executeBatch();
+        }
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_ROW)) {
+            for (StateAndRef<ProductState> state : states) {
+                delete.setString(1, state.getRef().getTxhash().toString());
+                delete.setInt(2, state.getRef().getIndex());
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private static long count(VaultService vaultService, QueryCriteria criteria) {
+        return vaultService.queryBy(ProductState.class, criteria, new PageSpecification(DEFAULT_PAGE_NUM, 1))
+                .getTotalStatesAvailable();
+    }
+}
@@ -0,0 +1,152 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.ProductColor;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads archived products, which vault queries no longer see, from the product_states_archive table. Either the
+ * archived history of one product, or the products shared with a counterparty that were consumed in a time range,
+ * ordered by consumed time and then state ref.
+ *
+ * Every query returns at most maxResults products. To read on, query again passing the last product returned as
+ * {@code after}: the next page starts strictly after it in that order, so no row is returned twice, even when many
+ * were consumed at the same time, and a page never comes back empty while rows are left.
+ */
+@StartableByRPC
+public class ProductArchiveQueryFlow extends FlowLogic<List<ArchivedProduct>> {
+    public static final int DEFAULT_MAX_RESULTS = 200;
+
+    private static final String COLUMNS = "SELECT transaction_id, output_index, from_party, to_party, product_name,"
+            + " product_color, status, linear_id, recorded_timestamp, consumed_timestamp, archived_timestamp"
+            + " FROM product_states_archive";
+    // Rows after the cursor's (consumed_timestamp, transaction_id, output_index); the first condition lets the
+    // database start from the consumed_timestamp index.
+    private static final String AFTER = " AND consumed_timestamp >= ? AND (consumed_timestamp > ?"
+            + " OR (consumed_timestamp = ? AND (transaction_id > ? OR (transaction_id = ? AND output_index > ?))))";
+    private static final String ORDER = " ORDER BY consumed_timestamp, transaction_id, output_index";
+
+    private final UniqueIdentifier linearId;
+    private final Party counterparty;
+    private final Instant consumedFrom;
+    private final Instant consumedUntil;
+    private final ArchivedProduct after;
+    private final int maxResults;
+
+    /**
+     * The first {@link #DEFAULT_MAX_RESULTS} archived states of the product with the given linearId.
+     */
+    public ProductArchiveQueryFlow(UniqueIdentifier linearId) {
+        this(linearId, null, DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * Archived states of the product with the given linearId, after {@code after} unless it is null.
+     */
+    public ProductArchiveQueryFlow(UniqueIdentifier linearId, ArchivedProduct after, int maxResults) {
+        this(linearId, null, null, null, after, maxResults);
+    }
+
+    /**
+     * Archived products sent by or to {@code counterparty} and consumed at or after {@code consumedFrom} and before
+     * {@code consumedUntil}.
+     */
+    public ProductArchiveQueryFlow(Party counterparty, Instant consumedFrom, Instant consumedUntil, int maxResults) {
+        this(counterparty, consumedFrom, consumedUntil, null, maxResults);
+    }
+
+    /**
+     * As above, after {@code after} unless it is null.
+     */
+    public ProductArchiveQueryFlow(Party counterparty, Instant consumedFrom, Instant consumedUntil, ArchivedProduct after,
+                                   int maxResults) {
+        this(null, counterparty, consumedFrom, consumedUntil, after, maxResults);
+    }
+
+    private ProductArchiveQueryFlow(UniqueIdentifier linearId, Party counterparty, Instant consumedFrom,
+                                    Instant consumedUntil, ArchivedProduct after, int maxResults) {
+        this.linearId = linearId;
+        this.counterparty = counterparty;
+        this.consumedFrom = consumedFrom;
+        this.consumedUntil = consumedUntil;
+        this.after = after;
+        this.maxResults = maxResults;
+    }
+
+    @Suspendable
+    @Override
+    public List<ArchivedProduct> call() throws FlowException {
+        if (maxResults < 1) {
+            throw new FlowException("maxResults must be at least 1, but is " + maxResults + ".");
+        }
+        if (after != null && after.getConsumedTime() == null) {
+            throw new FlowException("Can only read on after an archived product with a consumed time.");
+        }
+        final String sql = (linearId != null
+                ? COLUMNS + " WHERE linear_id = ?"
+                : COLUMNS + " WHERE (from_party = ? OR to_party = ?) AND consumed_timestamp >= ? AND consumed_timestamp < ?")
+                + (after != null ? AFTER : "") + ORDER;
+        try (PreparedStatement query = getServiceHub().jdbcSession().prepareStatement(sql)) {
+            int parameter = 1;
+            if (linearId != null) {
+                query.setString(parameter++, linearId.getId().toString());
+            } else {
+                final String name = counterparty.getName().toString();
+                query.setString(parameter++, name);
+                query.setString(parameter++, name);
+                query.setTimestamp(parameter++, Timestamp.from(consumedFrom));
+                query.setTimestamp(parameter++, Timestamp.from(consumedUntil));
+            }
+            if (after != null) {
+                final Timestamp consumed = Timestamp.from(after.getConsumedTime());
+                final String txId = after.getRef().getTxhash().toString();
+                query.setTimestamp(parameter++, consumed);
+                query.setTimestamp(parameter++, consumed);
+                query.setTimestamp(parameter++, consumed);
+                query.setString(parameter++, txId);
+                query.setString(parameter++, txId);
+                query.setInt(parameter, after.getRef().getIndex());
+            }
+            query.setMaxRows(maxResults);
+            final List<ArchivedProduct> products = new ArrayList<>();
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    products.add(new ArchivedProduct(
+                            new StateRef(SecureHash.parse(rows.getString(1)), rows.getInt(2)),
+                            rows.getString(3),
+                            rows.getString(4),
+                            rows.getString(5),
+                            ProductColor.fromLabel(rows.getString(6)),
+                            ProductStatus.fromLabel(rows.getString(7)),
+                            UUID.fromString(rows.getString(8)),
+                            instant(rows.getTimestamp(9)),
+                            instant(rows.getTimestamp(10)),
+                            instant(rows.getTimestamp(11))));
+                }
+            }
+            return products;
+        } catch (SQLException e) {
+            throw new FlowException("Could not read archived products.", e);
+        }
+    }
+
+    private static Instant instant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+}
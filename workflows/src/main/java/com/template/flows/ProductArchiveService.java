@@ -0,0 +1,103 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the outcome of every run of ProductArchiveFlow, which operators start over RPC. The number of products left
+ * to archive and the latency of the flow's probe vault query are exported over JMX as
+ * {@code com.template:type=ProductArchive,node=...}, so query latency can be followed as product_states shrinks.
+ */
+@CordaService
+public class ProductArchiveService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(ProductArchiveService.class);
+
+    public interface ProductArchiveMXBean {
+        long getRuns();
+        long getArchivedTotal();
+        long getLastRunArchived();
+        long getUnconsumedProducts();
+        long getConsumedProducts();
+        double getProbeQueryMillis();
+        double getProbeQueryP50Millis();
+        double getProbeQueryP99Millis();
+        void reset();
+    }
+
+    private final Metrics metrics = new Metrics();
+
+    public ProductArchiveService(AppServiceHub serviceHub) {
+        register(serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString());
+    }
+
+    /**
+     * Records the outcome of one run of ProductArchiveFlow.
+     */
+    public void record(ProductArchiveFlow.Result result) {
+        metrics.record(result);
+        logger.info("Product archive: {}", result);
+    }
+
+    public ProductArchiveMXBean getMetrics() {
+        return metrics;
+    }
+
+    private void register(String node) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName("com.template:type=ProductArchive,node=" + ObjectName.quote(node));
+            try {
+                mBeanServer.registerMBean(metrics, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by an earlier instance of this node in the same JVM, as in tests.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not export product archive metrics over JMX", e);
+        }
+    }
+
+    private static final class Metrics implements ProductArchiveMXBean {
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong archivedTotal = new AtomicLong();
+        private volatile long lastRunArchived;
+        private volatile long unconsumedProducts;
+        private volatile long consumedProducts;
+        private volatile long probeQueryMicros;
+        // Microseconds, up to one minute with three significant digits.
+        private final Histogram probeMicros = new ConcurrentHistogram(60_000_000L, 3);
+
+        private void record(ProductArchiveFlow.Result result) {
+            runs.incrementAndGet();
+            archivedTotal.addAndGet(result.getArchived());
+            lastRunArchived = result.getArchived();
+            unconsumedProducts = result.getUnconsumedProducts();
+            consumedProducts = result.getConsumedProducts();
+            probeQueryMicros = result.getProbeQueryMicros();
+            probeMicros.recordValue(Math.min(Math.max(1, result.getProbeQueryMicros()), probeMicros.getHighestTrackableValue()));
+        }
+
+        @Override public long getRuns() { return runs.get(); }
+        @Override public long getArchivedTotal() { return archivedTotal.get(); }
+        @Override public long getLastRunArchived() { return lastRunArchived; }
+        @Override public long getUnconsumedProducts() { return unconsumedProducts; }
+        @Override public long getConsumedProducts() { return consumedProducts; }
+        @Override public double getProbeQueryMillis() { return probeQueryMicros / 1000.0; }
+        @Override public double getProbeQueryP50Millis() { return probeMicros.getValueAtPercentile(50.0) / 1000.0; }
+        @Override public double getProbeQueryP99Millis() { return probeMicros.getValueAtPercentile(99.0) / 1000.0; }
+        @Override public void reset() { probeMicros.reset(); }
+    }
+}
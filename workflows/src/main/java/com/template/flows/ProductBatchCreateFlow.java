@@ -0,0 +1,182 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Issues many products to one counterparty in a single transaction, so the whole batch shares one round of signature
+ * collection and one finality broadcast.
+ *
+ * The largest batch a node will build is read from the "productBatchMaxSize" CorDapp config setting.
+ */
+public class ProductBatchCreateFlow {
+    public static final String MAX_BATCH_SIZE_CONFIG = "productBatchMaxSize";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final Party otherParty;
+        private final String productName;
+        private final List<String> productColors;
+
+        private final Step GENERATING_TRANSACTION = new Step("Generating transaction");
+        private final Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final Step SIGNING_TRANSACTION = new Step("Signing transaction with our private key.");
+        private final Step GATHERING_SIGS = new Step("Gathering the counterparty's signature.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return CollectSignaturesFlow.Companion.tracker();
+            }
+        };
+        private final Step FINALISING_TRANSACTION = new Step("Obtaining notary signature and recording transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GENERATING_TRANSACTION,
+                VERIFYING_TRANSACTION,
+                SIGNING_TRANSACTION,
+                GATHERING_SIGS,
+                FINALISING_TRANSACTION
+        );
+
+        /**
+         * Issues one Pending product per entry in {@code productColors}.
+         */
+        public Initiator(Party otherParty, String productName, List<String> productColors) {
+            this.otherParty = otherParty;
+            this.productName = productName;
+            this.productColors = productColors;
+        }
+
+        /**
+         * Issues {@code count} Pending products of the same color.
+         */
+        public Initiator(Party otherParty, String productName, String productColor, int count) {
+            this(otherParty, productName, Collections.nCopies(count, productColor));
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            getServiceHub().cordaService(FlowTimingService.class).track(this);
+            final int maxBatchSize = FlowConfig.getInt(getServiceHub(), MAX_BATCH_SIZE_CONFIG, DEFAULT_MAX_BATCH_SIZE);
+            if (productColors.isEmpty()) {
+                throw new FlowException("A product batch must contain at least one product.");
+            }
+            if (productColors.size() > maxBatchSize) {
+                throw new FlowException(String.format(
+                        "A product batch may contain at most %d products, but %d were requested.", maxBatchSize, productColors.size()));
+            }
+
+            // Obtain a reference to the notary we want to use.
+            final NotarySelectorService notaries = getServiceHub().cordaService(NotarySelectorService.class);
+            final Party notary = notaries.select();
+            // Stage 1.
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            // Generate an unsigned transaction with one output per product.
+            final Party thisNodeIdentity = getOurIdentity();
+            final Command<ProductContract.Commands.BatchCreate> txCommand = new Command<>(
+                    new ProductContract.Commands.BatchCreate(),
+                    ImmutableList.of(thisNodeIdentity.getOwningKey(), otherParty.getOwningKey()));
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary).addCommand(txCommand);
+            final Instant receiptDeadline = AutoReceiptService.receiptDeadline(getServiceHub());
+            for (String productColor : productColors) {
+                ProductState productState = new ProductState(thisNodeIdentity, otherParty, productName,
+                        ProductColor.fromLabel(productColor), ProductStatus.PENDING, new UniqueIdentifier(), receiptDeadline);
+                txBuilder.addOutputState(productState, ProductContract.PRODUCT_CONTRACT_ID);
+            }
+
+            // Stage 2.
+            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            // Verify that the transaction is valid.
+            txBuilder.verify(getServiceHub());
+
+            // Stage 3.
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            // Sign the transaction.
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            // Stage 4.
+            progressTracker.setCurrentStep(GATHERING_SIGS);
+            // Send the batch to the counterparty, and receive it back with their signature.
+            FlowSession otherPartySession = initiateFlow(otherParty);
+            final SignedTransaction fullySignedTx = subFlow(
+                    new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+
+            // Stage 5.
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            // Notarise and record the transaction in both parties' vaults.
+            return NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, ImmutableSet.of(otherPartySession)));
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartySession;
+
+        public Acceptor(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        for (TransactionState<ContractState> output : stx.getTx().getOutputs()) {
+                            require.using("This must be a product transaction.", output.getData() instanceof ProductState);
+                            ProductState productState = (ProductState) output.getData();
+                            require.using("Status of a created product should be Pending.",
+                                    productState.getStatus() == ProductStatus.PENDING);
+                        }
+                        return null;
+                    });
+                }
+            }
+            final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
+            final SecureHash txId = subFlow(signTxFlow).getId();
+
+            return subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+        }
+    }
+}
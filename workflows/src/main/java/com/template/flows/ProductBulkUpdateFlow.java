@@ -0,0 +1,211 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Marks up to N Pending products sent to us as Received in a single transaction.
+ *
+ * Products can be narrowed down by color, by the sending counterparty and to those past their receipt deadline; a null
+ * filter matches any value. Products already reserved by another flow on this node are skipped. Every counterparty
+ * whose products are selected signs the one transaction. The largest batch a node will build is read from the
+ * "productBulkUpdateMaxSize" CorDapp config setting.
+ */
+public class ProductBulkUpdateFlow {
+    public static final String MAX_BATCH_SIZE_CONFIG = "productBulkUpdateMaxSize";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    /**
+     * Thrown when no unreserved Pending product matches the filters, so callers can tell that nothing is left to update
+     * from a failed update.
+     */
+    public static class NothingToUpdateException extends FlowException {
+        public NothingToUpdateException(String message) {
+            super(message);
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    @StartableByService
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final Party counterparty;
+        private final String color;
+        private final int maxStates;
+        private final Instant dueBy;
+
+        private final Step GET_PRODUCTS_FROM_VAULT = new Step("Obtaining Pending products from vault.");
+        private final Step BUILD_TRANSACTION = new Step("Building and verifying transaction.");
+        private final Step SIGN_TRANSACTION = new Step("Signing transaction.");
+        private final Step GATHERING_SIGS = new Step("Gathering the counterparties' signatures.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return CollectSignaturesFlow.Companion.tracker();
+            }
+        };
+        private final Step FINALISE = new Step("Finalising transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GET_PRODUCTS_FROM_VAULT, BUILD_TRANSACTION, SIGN_TRANSACTION, GATHERING_SIGS, FINALISE);
+
+        public Initiator(Party counterparty, String color, int maxStates) {
+            this(counterparty, color, maxStates, null);
+        }
+
+        public Initiator(Party counterparty, String color, int maxStates, Instant dueBy) {
+            this.counterparty = counterparty;
+            this.color = color;
+            this.maxStates = maxStates;
+            this.dueBy = dueBy;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            getServiceHub().cordaService(FlowTimingService.class).track(this);
+            final int maxBatchSize = FlowConfig.getInt(getServiceHub(), MAX_BATCH_SIZE_CONFIG, DEFAULT_MAX_BATCH_SIZE);
+            if (maxStates < 1 || maxStates > maxBatchSize) {
+                throw new FlowException(String.format(
+                        "A bulk update may cover between 1 and %d products, but %d were requested.", maxBatchSize, maxStates));
+            }
+
+            progressTracker.setCurrentStep(GET_PRODUCTS_FROM_VAULT);
+            // Selected products are soft locked for this flow, so concurrent bulk updates receive disjoint products.
+            final List<StateAndRef<ProductState>> pendingProducts = ProductReservations.reserve(
+                    getServiceHub().getVaultService(), getRunId().getUuid(), selectionCriteria(), maxStates);
+            if (pendingProducts.isEmpty()) {
+                throw new NothingToUpdateException("No Pending products matching color " + color + " and counterparty " + counterparty + " exist in vault");
+            }
+
+            progressTracker.setCurrentStep(BUILD_TRANSACTION);
+            // All inputs must share a notary. Products issued on other notaries are given back for a later update.
+            final Party notary = pendingProducts.get(0).getState().getNotary();
+            final Party us = getOurIdentity();
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary);
+            final Set<Party> senders = new LinkedHashSet<>();
+            for (StateAndRef<ProductState> pendingProduct : pendingProducts) {
+                if (!notary.equals(pendingProduct.getState().getNotary())) {
+                    ProductReservations.release(getServiceHub().getVaultService(), getRunId().getUuid(), pendingProduct);
+                    continue;
+                }
+                final ProductState input = pendingProduct.getState().getData();
+                final Party sender = getServiceHub().getIdentityService().wellKnownPartyFromAnonymous(input.getFrom());
+                if (sender == null) {
+                    throw new FlowException("Cannot resolve " + input.getFrom() + ", the sender of product " + input.getLinearId() + ".");
+                }
+                senders.add(sender);
+                txBuilder.addInputState(pendingProduct);
+                txBuilder.addOutputState(new ProductState(us, sender, input.getProductName(), input.getProductColor(),
+                        ProductStatus.RECEIVED, input.getLinearId()), ProductContract.PRODUCT_CONTRACT_ID);
+            }
+            final List<PublicKey> signers = new ArrayList<>();
+            signers.add(us.getOwningKey());
+            for (Party sender : senders) {
+                signers.add(sender.getOwningKey());
+            }
+            txBuilder.addCommand(new Command<>(new ProductContract.Commands.BulkUpdateStatus(), signers));
+            txBuilder.verify(getServiceHub());
+
+            progressTracker.setCurrentStep(SIGN_TRANSACTION);
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            progressTracker.setCurrentStep(GATHERING_SIGS);
+            final List<FlowSession> sessions = new ArrayList<>();
+            for (Party sender : senders) {
+                sessions.add(initiateFlow(sender));
+            }
+            final SignedTransaction fullySignedTx = subFlow(
+                    new CollectSignaturesFlow(partSignedTx, sessions, CollectSignaturesFlow.Companion.tracker()));
+
+            progressTracker.setCurrentStep(FINALISE);
+            return NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, sessions));
+        }
+
+        private QueryCriteria selectionCriteria() {
+            QueryCriteria criteria = ProductQueries.withStatus(ProductStatus.PENDING)
+                    .and(ProductQueries.sentTo(getOurIdentity()));
+            if (color != null) {
+                criteria = criteria.and(ProductQueries.withColor(ProductColor.fromLabel(color)));
+            }
+            if (counterparty != null) {
+                criteria = criteria.and(ProductQueries.sentBy(counterparty));
+            }
+            if (dueBy != null) {
+                criteria = criteria.and(ProductQueries.dueBy(dueBy));
+            }
+            return criteria;
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartySession;
+
+        public Acceptor(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        for (TransactionState<ContractState> output : stx.getTx().getOutputs()) {
+                            require.using("This must be a product transaction.", output.getData() instanceof ProductState);
+                            ProductState productState = (ProductState) output.getData();
+                            require.using("Status of an updated product should be Received.",
+                                    productState.getStatus() == ProductStatus.RECEIVED);
+                        }
+                        return null;
+                    });
+                }
+            }
+            final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
+            final SecureHash txId = subFlow(signTxFlow).getId();
+
+            return subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+        }
+    }
+}
@@ -4,7 +4,9 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
 import com.template.states.ProductState;
+import com.template.states.ProductStatus;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.UniqueIdentifier;
@@ -20,7 +22,8 @@ import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 
 public class ProductCreateFlow {
-    @InitiatingFlow
+    // Version 2 sends a FlowTrace context to the Acceptor.
+    @InitiatingFlow(version = 2)
     @StartableByRPC
     public static class Initiator extends FlowLogic<SignedTransaction> {
 
@@ -72,14 +75,19 @@ public class ProductCreateFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            // Obtain a reference to the notary we want to use.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-
+            getServiceHub().cordaService(FlowTimingService.class).track(this);
+            final FlowTrace trace = FlowTrace.initiator(this);
+            long mark = FlowTrace.now();
             // Stage 1.
             progressTracker.setCurrentStep(GENERATING_TRANSACTION);
             // Generate an unsigned transaction.
             Party thisNodeIdentity = getOurIdentity();
-            ProductState productState = new ProductState(thisNodeIdentity, otherParty,productName, productColor, status , new UniqueIdentifier());
+            ProductState productState = new ProductState(thisNodeIdentity, otherParty, productName,
+                    ProductColor.fromLabel(productColor), ProductStatus.fromLabel(status), new UniqueIdentifier(),
+                    AutoReceiptService.receiptDeadline(getServiceHub()));
+            // Obtain a reference to the notary we want to use.
+            final NotarySelectorService notaries = getServiceHub().cordaService(NotarySelectorService.class);
+            final Party notary = notaries.select(productState.getLinearId());
             final Command<ProductContract.Commands.Create> txCommand = new Command<>(
                     new ProductContract.Commands.Create(),
                     ImmutableList.of(productState.getFrom().getOwningKey(), productState.getTo().getOwningKey()));
@@ -96,18 +104,26 @@ public class ProductCreateFlow {
             progressTracker.setCurrentStep(SIGNING_TRANSACTION);
             // Sign the transaction.
             final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            trace.setTxId(partSignedTx.getId());
+            mark = trace.span("build", mark);
 
             // Stage 4.
             progressTracker.setCurrentStep(GATHERING_SIGS);
             // Send the state to the counterparty, and receive it back with their signature.
             FlowSession otherPartySession = initiateFlow(otherParty);
+            trace.send(otherPartySession);
+            mark = trace.span("handshake", mark);
             final SignedTransaction fullySignedTx = subFlow(
                     new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+            mark = trace.span("collectSignatures", mark);
 
             // Stage 5.
             progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             // Notarise and record the transaction in both parties' vaults.
-            return subFlow(new FinalityFlow(fullySignedTx, ImmutableSet.of(otherPartySession)));
+            final SignedTransaction notarisedTx = NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, ImmutableSet.of(otherPartySession)));
+            trace.span("finality", mark);
+            trace.finish();
+            return notarisedTx;
         }
     }
 
@@ -134,15 +150,22 @@ public class ProductCreateFlow {
                         ContractState output = stx.getTx().getOutputs().get(0).getData();
                         require.using("This must be a product transaction.", output instanceof ProductState);
                         ProductState productState = (ProductState) output;
-                        require.using("Status of a created product should be Pending.",("Pending".equals(productState.getStatus())));
+                        require.using("Status of a created product should be Pending.",productState.getStatus() == ProductStatus.PENDING);
                         return null;
                     });
                 }
             }
+            final FlowTrace trace = FlowTrace.responder(this, otherPartySession);
+            long mark = FlowTrace.now();
             final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
             final SecureHash txId = subFlow(signTxFlow).getId();
+            trace.setTxId(txId);
+            mark = trace.span("signTransaction", mark);
 
-            return subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+            final SignedTransaction recordedTx = subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+            trace.span("receiveFinality", mark);
+            trace.finish();
+            return recordedTx;
         }
     }
 }
@@ -0,0 +1,64 @@
+package com.template.flows;
+
+import com.template.states.ProductState;
+import net.corda.core.contracts.ComponentGroupEnum;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.transactions.ComponentGroup;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.WireTransaction;
+import net.corda.core.utilities.OpaqueBytes;
+
+/**
+ * Tells which serialized form a product was recorded in, so that {@link ProductMigrationFlow} can find the products it
+ * needs to rewrite, and measures the size of the recorded and current forms for its report. A product issued before a
+ * change to ProductState's serialized form is read through one of its deprecated constructors, which records the
+ * version it read.
+ */
+public class ProductEncoding {
+
+    private ProductEncoding() { }
+
+    /**
+     * The size of the output component the product was recorded with, or -1 if the transaction that produced it is
+     * not one this node can read the component from.
+     */
+    public static int recordedSize(ServiceHub serviceHub, StateAndRef<ProductState> product) {
+        final OpaqueBytes recorded = recordedComponent(serviceHub, product);
+        return recorded == null ? -1 : recorded.getSize();
+    }
+
+    /**
+     * The size the product's output component has when serialized in the current form.
+     */
+    public static int currentSize(StateAndRef<ProductState> product) {
+        return serialize(product).getSize();
+    }
+
+    /**
+     * Whether the product was recorded in a serialized form older than the current one. This depends only on the
+     * constructor it was read through, not on the bytes the serializer produces today, so a change to the serializer
+     * or its context does not make current products look outdated.
+     */
+    public static boolean isOutdated(StateAndRef<ProductState> product) {
+        return product.getState().getData().getEncodingVersion() < ProductState.CURRENT_ENCODING_VERSION;
+    }
+
+    private static OpaqueBytes recordedComponent(ServiceHub serviceHub, StateAndRef<ProductState> product) {
+        final SignedTransaction stx = serviceHub.getValidatedTransactions().getTransaction(product.getRef().getTxhash());
+        if (stx == null || !(stx.getCoreTransaction() instanceof WireTransaction)) return null;
+        for (ComponentGroup group : stx.getTx().getComponentGroups()) {
+            if (group.getGroupIndex() == ComponentGroupEnum.OUTPUTS_GROUP.ordinal()) {
+                return group.getComponents().get(product.getRef().getIndex());
+            }
+        }
+        return null;
+    }
+
+    private static OpaqueBytes serialize(StateAndRef<ProductState> product) {
+        final SerializationFactory factory = SerializationFactory.Companion.getDefaultFactory();
+        return SerializationAPIKt.serialize(product.getState(), factory, factory.getDefaultContext());
+    }
+}
@@ -0,0 +1,267 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Keeps an in-memory index of this node's Pending products, keyed by (color, counterparty), so that ProductUpdateFlow
+ * can find candidate states without a vault query. Products leave the index when they are consumed, and Received
+ * products, which are never candidates again, are not held at all.
+ *
+ * The index subscribes to vault updates when the node starts. The Pending products already in the vault are loaded
+ * afterwards, a page at a time, by a flow started once the node is ready, so a large vault does not hold up startup;
+ * until then the index is incomplete and flows fall back to the vault query. It is a hint: a candidate may already be
+ * consumed or reserved by another flow, and callers must still soft lock what they use.
+ *
+ * The index's size and its hits and misses are exported over JMX as {@code com.template:type=ProductIndex,node=...}.
+ */
+@CordaService
+public class ProductIndexService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(ProductIndexService.class);
+
+    public interface ProductIndexMXBean {
+        long getSize();
+        long getHits();
+        long getMisses();
+        boolean isLoaded();
+    }
+
+    private final AppServiceHub serviceHub;
+    private final Party us;
+    // Entries are keyed by StateRef, because ProductState does not define equality.
+    private final Map<Key, Map<StateRef, StateAndRef<ProductState>>> index = new ConcurrentHashMap<>();
+    // Refs consumed while the index is being loaded, so that a state consumed mid-load is not added back.
+    private final Set<StateRef> consumedWhileLoading = new HashSet<>();
+    private boolean loading = true;
+
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ProductIndexService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.us = serviceHub.getMyInfo().getLegalIdentities().get(0);
+        register(us.getName().toString());
+
+        // Only the update stream is used; the snapshot is loaded by LoadFlow with bounded pages.
+        serviceHub.getVaultService()
+                .trackBy(ProductState.class, new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                        new PageSpecification(DEFAULT_PAGE_NUM, 1))
+                .getUpdates()
+                .subscribe(this::apply, e -> logger.error("Product index stopped receiving vault updates", e));
+
+        // Flows cannot be started while the node is still creating its services.
+        serviceHub.getNetworkMapCache().getNodeReady().then(ready -> {
+            final Thread loader = new Thread(this::load, "product-index-loader");
+            loader.setDaemon(true);
+            loader.start();
+            return null;
+        });
+    }
+
+    /**
+     * Returns up to {@code max} Pending products with the given color that are shared with {@code counterparty}.
+     */
+    public List<StateAndRef<ProductState>> candidates(ProductColor color, AbstractParty counterparty, int max) {
+        final Map<StateRef, StateAndRef<ProductState>> matches = index.get(new Key(color, counterparty));
+        if (matches == null || matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<StateAndRef<ProductState>> candidates = new ArrayList<>(Math.min(max, matches.size()));
+        for (StateAndRef<ProductState> match : matches.values()) {
+            if (candidates.size() >= max) break;
+            candidates.add(match);
+        }
+        return candidates;
+    }
+
+    /**
+     * Soft locks the first of up to {@code max} candidates that is still available under {@code lockId}, or returns
+     * null. Only a reservation counts as a hit; candidates that were all taken by other flows count as a miss.
+     */
+    public StateAndRef<ProductState> reserve(VaultService vaultService, UUID lockId, ProductColor color, AbstractParty counterparty, int max) {
+        final StateAndRef<ProductState> reserved =
+                ProductReservations.reserveFirstOf(vaultService, lockId, candidates(color, counterparty, max));
+        (reserved != null ? hits : misses).incrementAndGet();
+        return reserved;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized boolean isLoaded() {
+        return !loading;
+    }
+
+    private void register(String node) {
+        final ProductIndexMXBean metrics = new ProductIndexMXBean() {
+            @Override public long getSize() { return ProductIndexService.this.getSize(); }
+            @Override public long getHits() { return ProductIndexService.this.getHits(); }
+            @Override public long getMisses() { return ProductIndexService.this.getMisses(); }
+            @Override public boolean isLoaded() { return ProductIndexService.this.isLoaded(); }
+        };
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName("com.template:type=ProductIndex,node=" + ObjectName.quote(node));
+            try {
+                mBeanServer.registerMBean(metrics, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by an earlier instance of this node in the same JVM, as in tests.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not export product index metrics over JMX", e);
+        }
+    }
+
+    private void load() {
+        try {
+            serviceHub.startFlow(new LoadFlow()).getReturnValue().get();
+            logger.info("Product index loaded with {} Pending products", size.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The index keeps following vault updates, and flows fall back to vault queries for what it lacks.
+            logger.warn("Could not load the Pending products already in the vault into the product index", e);
+        } finally {
+            finishLoading();
+        }
+    }
+
+    private synchronized void apply(Vault.Update<ProductState> update) {
+        for (StateAndRef<ProductState> consumed : update.getConsumed()) {
+            if (loading) consumedWhileLoading.add(consumed.getRef());
+            remove(consumed);
+        }
+        for (StateAndRef<ProductState> produced : update.getProduced()) {
+            add(produced);
+        }
+    }
+
+    private synchronized void loaded(List<StateAndRef<ProductState>> page) {
+        for (StateAndRef<ProductState> product : page) {
+            if (!consumedWhileLoading.contains(product.getRef())) {
+                add(product);
+            }
+        }
+    }
+
+    private synchronized void finishLoading() {
+        loading = false;
+        consumedWhileLoading.clear();
+    }
+
+    private void add(StateAndRef<ProductState> product) {
+        if (product.getState().getData().getStatus() != ProductStatus.PENDING) return;
+        if (index.computeIfAbsent(keyOf(product), key -> new ConcurrentHashMap<>()).put(product.getRef(), product) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    private void remove(StateAndRef<ProductState> product) {
+        final Map<StateRef, StateAndRef<ProductState>> matches = index.get(keyOf(product));
+        if (matches != null && matches.remove(product.getRef()) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    private Key keyOf(StateAndRef<ProductState> product) {
+        final ProductState state = product.getState().getData();
+        final AbstractParty counterparty = us.equals(state.getFrom()) ? state.getTo() : state.getFrom();
+        return new Key(state.getProductColor(), counterparty);
+    }
+
+    /**
+     * Loads the Pending products in the vault into the index, one page at a time.
+     */
+    @StartableByService
+    public static class LoadFlow extends FlowLogic<Void> {
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            final ProductIndexService service = getServiceHub().cordaService(ProductIndexService.class);
+            final VaultPager<ProductState> pager = new VaultPager<>(getServiceHub().getVaultService(), ProductState.class,
+                    ProductQueries.withStatus(ProductStatus.PENDING));
+            final List<StateAndRef<ProductState>> page = new ArrayList<>(pager.getPageSize());
+            for (StateAndRef<ProductState> product : pager) {
+                page.add(product);
+                if (page.size() == pager.getPageSize()) {
+                    service.loaded(page);
+                    page.clear();
+                }
+            }
+            service.loaded(page);
+            return null;
+        }
+    }
+
+    private static final class Key {
+        private final ProductColor color;
+        private final AbstractParty counterparty;
+
+        private Key(ProductColor color, AbstractParty counterparty) {
+            this.color = color;
+            this.counterparty = counterparty;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return color == key.color
+                    && Objects.equals(counterparty, key.counterparty);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(color, counterparty);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.ProductContract;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Rewrites up to N Pending products shared with a counterparty that were recorded in an older serialized form of
+ * ProductState, so that they are carried forward in the current, compact form. The products themselves do not change.
+ *
+ * Received products are never consumed again and are left as they are. The largest batch a node will build is read
+ * from the "productMigrationMaxSize" CorDapp config setting.
+ */
+public class ProductMigrationFlow {
+    public static final String MAX_BATCH_SIZE_CONFIG = "productMigrationMaxSize";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final Party counterparty;
+        private final int maxStates;
+
+        private final Step GET_PRODUCTS_FROM_VAULT = new Step("Obtaining products recorded in an older form from vault.");
+        private final Step BUILD_TRANSACTION = new Step("Building and verifying transaction.");
+        private final Step SIGN_TRANSACTION = new Step("Signing transaction.");
+        private final Step GATHERING_SIGS = new Step("Gathering the counterparty's signature.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return CollectSignaturesFlow.Companion.tracker();
+            }
+        };
+        private final Step FINALISE = new Step("Finalising transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GET_PRODUCTS_FROM_VAULT, BUILD_TRANSACTION, SIGN_TRANSACTION, GATHERING_SIGS, FINALISE);
+
+        public Initiator(Party counterparty, int maxStates) {
+            this.counterparty = counterparty;
+            this.maxStates = maxStates;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final int maxBatchSize = FlowConfig.getInt(getServiceHub(), MAX_BATCH_SIZE_CONFIG, DEFAULT_MAX_BATCH_SIZE);
+            if (maxStates < 1 || maxStates > maxBatchSize) {
+                throw new FlowException(String.format(
+                        "A product migration may cover between 1 and %d products, but %d were requested.", maxBatchSize, maxStates));
+            }
+
+            progressTracker.setCurrentStep(GET_PRODUCTS_FROM_VAULT);
+            final List<StateAndRef<ProductState>> outdated = selectOutdatedProducts();
+            if (outdated.isEmpty()) {
+                throw new FlowException("No Pending products shared with " + counterparty + " need migrating");
+            }
+
+            progressTracker.setCurrentStep(BUILD_TRANSACTION);
+            // All inputs must share a notary; products on other notaries are left for a later run.
+            final Party notary = outdated.get(0).getState().getNotary();
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary);
+            long recordedBytes = 0;
+            long currentBytes = 0;
+            int migrated = 0;
+            // Products whose producing transaction is not recorded here have no recorded size to compare.
+            int measured = 0;
+            for (StateAndRef<ProductState> product : outdated) {
+                if (!notary.equals(product.getState().getNotary())) continue;
+                final ProductState state = product.getState().getData();
+                txBuilder.addInputState(product);
+                txBuilder.addOutputState(new ProductState(state.getFrom(), state.getTo(), state.getProductName(),
+                        state.getProductColor(), state.getStatus(), state.getLinearId(), state.getReceiptDeadline()),
+                        ProductContract.PRODUCT_CONTRACT_ID);
+                final int recordedSize = ProductEncoding.recordedSize(getServiceHub(), product);
+                if (recordedSize >= 0) {
+                    recordedBytes += recordedSize;
+                    currentBytes += ProductEncoding.currentSize(product);
+                    measured++;
+                }
+                migrated++;
+            }
+            txBuilder.addCommand(new Command<>(new ProductContract.Commands.Migrate(),
+                    ImmutableList.of(getOurIdentity().getOwningKey(), counterparty.getOwningKey())));
+            txBuilder.verify(getServiceHub());
+            if (measured > 0) {
+                getLogger().info("Migrating {} products shared with {}: {} bytes per state as recorded, {} bytes per state now, over the {} with a recorded transaction.",
+                        migrated, counterparty, recordedBytes / measured, currentBytes / measured, measured);
+            } else {
+                getLogger().info("Migrating {} products shared with {}, none with a recorded transaction to compare sizes with.",
+                        migrated, counterparty);
+            }
+
+            progressTracker.setCurrentStep(SIGN_TRANSACTION);
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            progressTracker.setCurrentStep(GATHERING_SIGS);
+            final FlowSession session = initiateFlow(counterparty);
+            final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                    partSignedTx, ImmutableList.of(session), CollectSignaturesFlow.Companion.tracker()));
+
+            progressTracker.setCurrentStep(FINALISE);
+            return NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, ImmutableList.of(session)));
+        }
+
+        // The encoding is not in product_states, so the vault is walked page by page and only as far as needed to find
+        // maxStates outdated products.
+        private List<StateAndRef<ProductState>> selectOutdatedProducts() {
+            final QueryCriteria criteria = ProductQueries.withStatus(ProductStatus.PENDING)
+                    .and(ProductQueries.sharedWith(counterparty));
+            final List<StateAndRef<ProductState>> outdated = new ArrayList<>();
+            for (StateAndRef<ProductState> product : new VaultPager<>(getServiceHub().getVaultService(), ProductState.class, criteria)) {
+                if (ProductEncoding.isOutdated(product)) {
+                    outdated.add(product);
+                    if (outdated.size() >= maxStates) break;
+                }
+            }
+            // Products another flow has reserved in the meantime are skipped.
+            return ProductReservations.reserveEach(getServiceHub().getVaultService(), getRunId().getUuid(), outdated);
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartySession;
+
+        public Acceptor(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        final List<Command<?>> commands = stx.getTx().getCommands();
+                        require.using("This must be a product migration.", commands.size() == 1);
+                        final CommandData command = commands.get(0).getValue();
+                        require.using("This must be a product migration.", command instanceof ProductContract.Commands.Migrate);
+                        for (TransactionState<ContractState> output : stx.getTx().getOutputs()) {
+                            require.using("This must be a product transaction.", output.getData() instanceof ProductState);
+                        }
+                        return null;
+                    });
+                }
+            }
+            final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
+            final SecureHash txId = subFlow(signTxFlow).getId();
+
+            return subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.template.flows;
+
+import com.template.schemas.ProductSchemaV1.PersistentProduct;
+import com.template.states.ProductColor;
+import com.template.states.ProductStatus;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.time.Instant;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Vault query criteria over the indexed product_states table, so that product lookups are filtered by the database
+ * rather than by loading and deserializing every ProductState in the vault.
+ *
+ * Parties are recorded in product_states by name, which anonymous parties do not have, so counterparty lookups take a
+ * well-known Party. Resolve an anonymous one with IdentityService.wellKnownPartyFromAnonymous first.
+ */
+public class ProductQueries {
+    private ProductQueries() { }
+
+    /**
+     * Unconsumed products with the given status.
+     */
+    public static QueryCriteria withStatus(ProductStatus status) {
+        return custom(Builder.equal(getField("status", PersistentProduct.class), status.getLabel()));
+    }
+
+    /**
+     * Unconsumed products with the given color.
+     */
+    public static QueryCriteria withColor(ProductColor color) {
+        return custom(Builder.equal(getField("productColor", PersistentProduct.class), color.getLabel()));
+    }
+
+    /**
+     * Unconsumed products with the given status and color.
+     */
+    public static QueryCriteria withStatusAndColor(ProductStatus status, ProductColor color) {
+        return withStatus(status).and(withColor(color));
+    }
+
+    /**
+     * Unconsumed products sent by the given party.
+     */
+    public static QueryCriteria sentBy(Party sender) {
+        return custom(Builder.equal(getField("from", PersistentProduct.class), sender.getName().toString()));
+    }
+
+    /**
+     * Unconsumed products sent to the given party.
+     */
+    public static QueryCriteria sentTo(Party receiver) {
+        return custom(Builder.equal(getField("to", PersistentProduct.class), receiver.getName().toString()));
+    }
+
+    /**
+     * Unconsumed products sent by or to the given party.
+     */
+    public static QueryCriteria sharedWith(Party counterparty) {
+        return sentBy(counterparty).or(sentTo(counterparty));
+    }
+
+    /**
+     * Unconsumed products whose receipt deadline is at or before the given time.
+     */
+    public static QueryCriteria dueBy(Instant time) {
+        return custom(Builder.lessThanOrEqual(getField("receiptDeadline", PersistentProduct.class), time));
+    }
+
+    private static QueryCriteria custom(CriteriaExpression expression) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression);
+    }
+}
@@ -0,0 +1,325 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.ProductContract;
+import com.template.schemas.ProductReissueLockSchemaV1.PersistentReissueLock;
+import com.template.states.ProductReissueLock;
+import com.template.states.ProductState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Cuts a product's history short. The product is reissued, unchanged and with the same linearId, from a transaction
+ * without inputs, so a party that later receives it only resolves the re-issuance and not every update the product
+ * went through. Lookups by linearId find the reissued state as before.
+ *
+ * The re-issuance takes three transactions, each signed by both participants and ordered by the product's notary:
+ * the first issues a ProductReissueLock holding a copy of the product, the second exits the product and names and
+ * references the lock, and the third redeems the lock for the product, attaching the notarised exit. The contract only lets a lock
+ * be redeemed with the exit that names it, and the notary only lets the product be exited and the lock be redeemed
+ * once, so a product can be neither exited without a lock to redeem nor reissued twice. If the exit was recorded but
+ * the re-issuance was not, either participant can complete it by running the flow again from the exit's id.
+ */
+public class ProductReissueFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final UniqueIdentifier linearId;
+        private final SecureHash exitTxId;
+
+        private final Step GET_PRODUCT_FROM_VAULT = new Step("Obtaining product from vault.");
+        private final Step LOCK = new Step("Locking a copy of the product.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+        private final Step EXIT = new Step("Exiting the product.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+        private final Step COMPLETE = new Step("Reissuing the product.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(GET_PRODUCT_FROM_VAULT, LOCK, EXIT, COMPLETE);
+
+        /**
+         * Exits the unconsumed product with the given linearId and reissues it.
+         */
+        public Initiator(UniqueIdentifier linearId) {
+            this.linearId = linearId;
+            this.exitTxId = null;
+        }
+
+        /**
+         * Reissues the product exited by the given transaction, whose re-issuance was not recorded.
+         */
+        public Initiator(SecureHash exitTxId) {
+            this.linearId = null;
+            this.exitTxId = exitTxId;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            getServiceHub().cordaService(FlowTimingService.class).track(this);
+
+            progressTracker.setCurrentStep(GET_PRODUCT_FROM_VAULT);
+            if (exitTxId != null) {
+                final SignedTransaction exit = getServiceHub().getValidatedTransactions().getTransaction(exitTxId);
+                if (exit == null) {
+                    throw new FlowException("Exit transaction " + exitTxId + " is not recorded.");
+                }
+                final List<Command<ProductContract.Commands.Exit>> exits = exit.getTx().commandsOfType(ProductContract.Commands.Exit.class);
+                if (exits.size() != 1) {
+                    throw new FlowException("Transaction " + exitTxId + " is not a product exit.");
+                }
+                final StateAndRef<ProductReissueLock> lock = lockAt(exits.get(0).getValue().getLockRef());
+                final ProductState state = lock.getState().getData().getProduct();
+                return complete(lock, exit, initiateFlow(counterpartyOf(state)));
+            }
+
+            final StateAndRef<ProductState> product = reserveProduct();
+            final ProductState state = product.getState().getData();
+            final FlowSession session = initiateFlow(counterpartyOf(state));
+            final Party notary = product.getState().getNotary();
+
+            // A lock left by an earlier run that stopped before the exit is reused rather than issued again.
+            StateAndRef<ProductReissueLock> lock = existingLock(product.getRef());
+            if (lock == null) {
+                progressTracker.setCurrentStep(LOCK);
+                final TransactionBuilder lockBuilder = new TransactionBuilder(notary)
+                        .addOutputState(new ProductReissueLock(product.getRef(), new ProductState(state.getFrom(),
+                                        state.getTo(), state.getProductName(), state.getProductColor(), state.getStatus(),
+                                        state.getLinearId(), state.getReceiptDeadline())),
+                                ProductContract.PRODUCT_CONTRACT_ID)
+                        .addCommand(new Command<>(new ProductContract.Commands.Reissue(), signersOf(state)));
+                lock = signAndFinalise(lockBuilder, session).getTx().outRef(0);
+            }
+
+            progressTracker.setCurrentStep(EXIT);
+            final TransactionBuilder exitBuilder = new TransactionBuilder(notary)
+                    .addInputState(product)
+                    .addReferenceState(lock.referenced())
+                    .addCommand(new Command<>(new ProductContract.Commands.Exit(lock.getRef()), signersOf(state)));
+            final SignedTransaction exit = signAndFinalise(exitBuilder, session);
+            return complete(lock, exit, session);
+        }
+
+        @Suspendable
+        private SignedTransaction complete(StateAndRef<ProductReissueLock> lock, SignedTransaction exit, FlowSession session) throws FlowException {
+            progressTracker.setCurrentStep(COMPLETE);
+            final ProductState state = lock.getState().getData().getProduct();
+            try {
+                final SecureHash exitProof = attachExitProof(exit);
+                final TransactionBuilder completeBuilder = new TransactionBuilder(lock.getState().getNotary())
+                        .addInputState(lock)
+                        .addOutputState(state, ProductContract.PRODUCT_CONTRACT_ID)
+                        .addCommand(new Command<>(new ProductContract.Commands.CompleteReissue(exitProof), signersOf(state)))
+                        .addAttachment(exitProof);
+                return signAndFinalise(completeBuilder, session);
+            } catch (FlowException e) {
+                throw new FlowException("Product " + state.getLinearId() + " was exited by " + exit.getId()
+                        + " but could not be reissued; run the flow again with that transaction id.", e);
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction signAndFinalise(TransactionBuilder txBuilder, FlowSession session) throws FlowException {
+            txBuilder.verify(getServiceHub());
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                    partSignedTx, ImmutableList.of(session), CollectSignaturesFlow.Companion.tracker()));
+            return NotarySelectorService.finalise(this, txBuilder.getNotary(), new FinalityFlow(fullySignedTx, ImmutableList.of(session)));
+        }
+
+        // Packs the notarised exit into an attachment, which the contract reads when the lock is redeemed.
+        private SecureHash attachExitProof(SignedTransaction exit) throws FlowException {
+            final SerializationFactory factory = SerializationFactory.Companion.getDefaultFactory();
+            final byte[] serialized = SerializationAPIKt.serialize(exit, factory, factory.getDefaultContext()).getBytes();
+            try {
+                final ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+                try (JarOutputStream jar = new JarOutputStream(jarBytes)) {
+                    final JarEntry entry = new JarEntry(ProductContract.EXIT_PROOF_ENTRY);
+                    // A fixed time keeps the attachment, and so its id, the same when a re-issuance is resumed.
+                    entry.setTime(0);
+                    jar.putNextEntry(entry);
+                    jar.write(serialized);
+                    jar.closeEntry();
+                }
+                final SecureHash id = SecureHash.sha256(jarBytes.toByteArray());
+                if (getServiceHub().getAttachments().hasAttachment(id)) {
+                    return id;
+                }
+                return getServiceHub().getAttachments().importAttachment(
+                        new ByteArrayInputStream(jarBytes.toByteArray()), getOurIdentity().getName().toString(), null);
+            } catch (IOException e) {
+                throw new FlowException("Could not attach the exit " + exit.getId() + ".", e);
+            }
+        }
+
+        private StateAndRef<ProductState> reserveProduct() throws FlowException {
+            final QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(
+                    null, ImmutableList.of(linearId), Vault.StateStatus.UNCONSUMED, null);
+            final StateAndRef<ProductState> product =
+                    ProductReservations.reserveOne(getServiceHub().getVaultService(), getRunId().getUuid(), criteria);
+            if (product == null) {
+                throw new FlowException(String.format("Product with id %s not found or in use by another flow.", linearId));
+            }
+            return product;
+        }
+
+        // Looked up through the lock's indexed reference to the product it was issued for.
+        private StateAndRef<ProductReissueLock> existingLock(StateRef original) {
+            final QueryCriteria criteria = new QueryCriteria.VaultCustomQueryCriteria(
+                    Builder.equal(getField("originalTxId", PersistentReissueLock.class), original.getTxhash().toString()))
+                    .and(new QueryCriteria.VaultCustomQueryCriteria(
+                            Builder.equal(getField("originalIndex", PersistentReissueLock.class), original.getIndex())));
+            return new VaultPager<>(getServiceHub().getVaultService(), ProductReissueLock.class, criteria).firstOrNull();
+        }
+
+        private StateAndRef<ProductReissueLock> lockAt(StateRef ref) throws FlowException {
+            try {
+                return getServiceHub().toStateAndRef(ref);
+            } catch (TransactionResolutionException e) {
+                throw new FlowException("The re-issuance lock " + ref + " cannot be resolved.", e);
+            }
+        }
+
+        private Party counterpartyOf(ProductState state) throws FlowException {
+            final AbstractParty other = getOurIdentity().equals(state.getFrom()) ? state.getTo() : state.getFrom();
+            final Party counterparty = getServiceHub().getIdentityService().wellKnownPartyFromAnonymous(other);
+            if (counterparty == null) {
+                throw new FlowException("Cannot resolve " + other + ", the counterparty of product " + state.getLinearId() + ".");
+            }
+            return counterparty;
+        }
+
+        private static List<PublicKey> signersOf(ProductState state) {
+            return ImmutableList.of(state.getFrom().getOwningKey(), state.getTo().getOwningKey());
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartySession;
+
+        public Acceptor(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) throws FlowException {
+                    final List<Command<?>> commands = stx.getTx().getCommands();
+                    requireThat(require -> {
+                        require.using("This must be a step of a product re-issuance.", commands.size() == 1);
+                        final CommandData command = commands.get(0).getValue();
+                        require.using("This must be a step of a product re-issuance.",
+                                command instanceof ProductContract.Commands.Reissue
+                                        || command instanceof ProductContract.Commands.Exit
+                                        || command instanceof ProductContract.Commands.CompleteReissue);
+                        return null;
+                    });
+                    final CommandData command = commands.get(0).getValue();
+                    if (command instanceof ProductContract.Commands.Reissue) {
+                        checkLock((ProductReissueLock) stx.getTx().getOutputs().get(0).getData());
+                    } else if (command instanceof ProductContract.Commands.Exit) {
+                        checkExit(stx.getTx().getInputs().get(0), ((ProductContract.Commands.Exit) command).getLockRef());
+                    }
+                    // A completion is bound to its exit and lock by the contract.
+                }
+            }
+
+            // The Initiator skips the lock and the exit when it resumes a re-issuance, so every proposal is read the same way.
+            while (true) {
+                final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
+                final SignedTransaction signedTx = subFlow(signTxFlow);
+                final SignedTransaction recorded = subFlow(new ReceiveFinalityFlow(otherPartySession, signedTx.getId()));
+                if (signedTx.getTx().commandsOfType(ProductContract.Commands.CompleteReissue.class).size() == 1) {
+                    return recorded;
+                }
+            }
+        }
+
+        // A lock must hold an unchanged copy of a product we still hold.
+        private void checkLock(ProductReissueLock lock) throws FlowException {
+            final List<StateAndRef<ProductState>> original = getServiceHub().getVaultService().queryBy(ProductState.class,
+                    new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED, null, ImmutableList.of(lock.getOriginal())))
+                    .getStates();
+            if (original.isEmpty()) {
+                throw new FlowException("The product " + lock.getOriginal() + " to be reissued is not unconsumed in our vault.");
+            }
+            requireThat(require -> {
+                require.using("A reissued product must be unchanged.",
+                        ProductContract.sameProduct(original.get(0).getState().getData(), lock.getProduct()));
+                return null;
+            });
+        }
+
+        // A product may only be exited in favour of a lock on it that has not been redeemed.
+        private void checkExit(StateRef exited, StateRef lockRef) throws FlowException {
+            final List<StateAndRef<ProductReissueLock>> lock = getServiceHub().getVaultService().queryBy(ProductReissueLock.class,
+                    new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED, null, ImmutableList.of(lockRef)))
+                    .getStates();
+            if (lock.isEmpty()) {
+                throw new FlowException("The re-issuance lock " + lockRef + " is not unconsumed in our vault.");
+            }
+            requireThat(require -> {
+                require.using("A product may only be exited for a lock on it.",
+                        exited.equals(lock.get(0).getState().getData().getOriginal()));
+                return null;
+            });
+        }
+    }
+}
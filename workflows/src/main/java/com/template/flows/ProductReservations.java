@@ -0,0 +1,56 @@
+package com.template.flows;
+
+import com.template.states.ProductState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Selects unconsumed products and soft locks them for the calling flow, through {@link StateReservations}, so that
+ * concurrent product flows on the same node are handed disjoint products.
+ */
+public class ProductReservations {
+    private ProductReservations() { }
+
+    /**
+     * Reserves up to {@code count} unlocked products matching {@code criteria} under {@code lockId}, which is normally
+     * the flow's run id. Returns fewer than {@code count} states, possibly none, when not enough are available.
+     */
+    public static List<StateAndRef<ProductState>> reserve(VaultService vaultService, UUID lockId, QueryCriteria criteria, int count) {
+        return StateReservations.reserve(vaultService, ProductState.class, lockId, criteria, count);
+    }
+
+    /**
+     * Reserves a single unlocked product matching {@code criteria}, or returns null if there is none.
+     */
+    public static StateAndRef<ProductState> reserveOne(VaultService vaultService, UUID lockId, QueryCriteria criteria) {
+        final List<StateAndRef<ProductState>> reserved = reserve(vaultService, lockId, criteria, 1);
+        return reserved.isEmpty() ? null : reserved.get(0);
+    }
+
+    /**
+     * Reserves the first of {@code candidates} that is still unconsumed and not reserved by another flow, or returns
+     * null if none is. Used with candidates that come from {@link ProductIndexService}.
+     */
+    public static StateAndRef<ProductState> reserveFirstOf(VaultService vaultService, UUID lockId, List<StateAndRef<ProductState>> candidates) {
+        return StateReservations.reserveFirstOf(vaultService, lockId, candidates);
+    }
+
+    /**
+     * Reserves every one of {@code candidates} that is still unconsumed and not reserved by another flow, and returns
+     * those it reserved.
+     */
+    public static List<StateAndRef<ProductState>> reserveEach(VaultService vaultService, UUID lockId, List<StateAndRef<ProductState>> candidates) {
+        return StateReservations.reserveEach(vaultService, lockId, candidates);
+    }
+
+    /**
+     * Gives up a reservation made by {@link #reserve}, for example when a reserved state turns out to be unusable.
+     */
+    public static void release(VaultService vaultService, UUID lockId, StateAndRef<ProductState> state) {
+        StateReservations.release(vaultService, lockId, state);
+    }
+}
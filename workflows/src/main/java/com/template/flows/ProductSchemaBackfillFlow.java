@@ -0,0 +1,47 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.schemas.ProductSchemaV1;
+import com.template.states.ProductState;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.sql.SQLException;
+
+/**
+ * Writes the product_states rows of products recorded before the table existed, up to one batch per run. Until they
+ * are backfilled those products are invisible to every lookup by status, color or counterparty, so a node upgraded
+ * from a version without the table should run this over RPC until it returns fewer than the batch size.
+ *
+ * The batch size defaults to the "productBackfillBatchSize" CorDapp config setting.
+ */
+@StartableByRPC
+public class ProductSchemaBackfillFlow extends FlowLogic<Integer> {
+    public static final String BATCH_SIZE_CONFIG = "productBackfillBatchSize";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final int batchSize;
+
+    public ProductSchemaBackfillFlow() {
+        this(0);
+    }
+
+    public ProductSchemaBackfillFlow(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        final int limit = batchSize > 0 ? batchSize
+                : FlowConfig.getInt(getServiceHub(), BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE);
+        try {
+            // Archived products have no product_states row on purpose and must not be brought back.
+            return SchemaBackfill.backfill(getServiceHub(), ProductState.class, new ProductSchemaV1(), limit,
+                    "product_states", "product_states_archive");
+        } catch (SQLException e) {
+            throw new FlowException("Could not backfill product_states.", e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.template.states.ProductState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.List;
+
+/**
+ * Sends the transaction that produced an unconsumed product to an observer, who resolves and verifies its history and
+ * records it. The Initiator returns once the observer has recorded it, so the flow's duration includes the observer's
+ * resolution of the product's backchain.
+ */
+public class ProductShareFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final UniqueIdentifier linearId;
+        private final Party observer;
+
+        public Initiator(UniqueIdentifier linearId, Party observer) {
+            this.linearId = linearId;
+            this.observer = observer;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(
+                    null, ImmutableList.of(linearId), Vault.StateStatus.UNCONSUMED, null);
+            final List<StateAndRef<ProductState>> products =
+                    new VaultPager<>(getServiceHub().getVaultService(), ProductState.class, criteria).take(2);
+            if (products.size() != 1) {
+                throw new FlowException(String.format("Product with id %s not found.", linearId));
+            }
+            final SignedTransaction stx = getServiceHub().getValidatedTransactions()
+                    .getTransaction(products.get(0).getRef().getTxhash());
+            if (stx == null) {
+                throw new FlowException("The transaction that produced product " + linearId + " is not recorded.");
+            }
+
+            final FlowSession session = initiateFlow(observer);
+            subFlow(new SendTransactionFlow(session, stx));
+            if (!session.receive(Boolean.class).unwrap(recorded -> recorded)) {
+                throw new FlowException(observer + " did not record product " + linearId + ".");
+            }
+            return stx;
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartySession;
+
+        public Acceptor(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            // We are not a participant, so the product is only in our vault if we record every visible state.
+            final SignedTransaction stx = subFlow(new ReceiveTransactionFlow(otherPartySession, true, StatesToRecord.ALL_VISIBLE));
+            otherPartySession.send(true);
+            return stx;
+        }
+    }
+}
@@ -5,10 +5,13 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.template.contracts.ProductContract;
+import com.template.states.ProductColor;
 import com.template.states.ProductState;
+import com.template.states.ProductStatus;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
@@ -18,23 +21,35 @@ import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import net.corda.core.node.services.Vault;
 import net.corda.core.node.services.vault.QueryCriteria;
+import java.time.Duration;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class ProductUpdateFlow {
+    // Attempts and backoff for reselecting a product after the notary reports that our input was already consumed.
+    public static final String MAX_ATTEMPTS_CONFIG = "productUpdateMaxAttempts";
+    public static final String INITIAL_BACKOFF_CONFIG = "productUpdateInitialBackoffMillis";
+    public static final String MAX_BACKOFF_CONFIG = "productUpdateMaxBackoffMillis";
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+    // How many products to try from the in-memory index before falling back to a vault query.
+    private static final int INDEX_CANDIDATES = 16;
 
+    // Version 2 sends a FlowTrace context to the Acceptor.
     @StartableByRPC
-    @InitiatingFlow
+    @InitiatingFlow(version = 2)
     public static class Initiator extends FlowLogic<SignedTransaction> {
 //        private final UniqueIdentifier linearId;
         private final Party otherParty;
         private final Party from;
         private final String status;
         private final String color;
-        private final String PENDING_STATUS = "Pending";
 
 
         private final Step GET_PRODUCT_FROM_VAULT = new Step("Obtaining product from vault.");
@@ -69,18 +84,52 @@ public class ProductUpdateFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
-            progressTracker.setCurrentStep(GET_PRODUCT_FROM_VAULT);
-//            final StateAndRef<ProductState> productFromVault = getProductStateByLinearId(linearId);
-            final StateAndRef<ProductState> productFromVault = getUnconsumedProductStateFromVault(color);
+            getServiceHub().cordaService(FlowTimingService.class).track(this);
+            final int maxAttempts = FlowConfig.getInt(getServiceHub(), MAX_ATTEMPTS_CONFIG, DEFAULT_MAX_ATTEMPTS);
+            final long initialBackoffMillis = FlowConfig.getLong(getServiceHub(), INITIAL_BACKOFF_CONFIG, DEFAULT_INITIAL_BACKOFF_MILLIS);
+            final long maxBackoffMillis = FlowConfig.getLong(getServiceHub(), MAX_BACKOFF_CONFIG, DEFAULT_MAX_BACKOFF_MILLIS);
+            final ProductColor productColor = ProductColor.fromLabel(color);
+            final FlowTrace trace = FlowTrace.initiator(this);
+
+            for (int attempt = 1; ; attempt++) {
+                progressTracker.setCurrentStep(GET_PRODUCT_FROM_VAULT);
+                final long selecting = FlowTrace.now();
+                final StateAndRef<ProductState> productFromVault = getUnconsumedProductStateFromVault(productColor);
+                trace.span("selectProduct", selecting);
+                // The input can only be spent through the notary it was issued on.
+                final Party notary = productFromVault.getState().getNotary();
+                try {
+                    final SignedTransaction notarisedTx = updateProduct(notary, productFromVault, trace);
+                    trace.finish();
+                    return notarisedTx;
+                } catch (NotaryException e) {
+                    if (attempt >= maxAttempts || !isConflictOn(e, productFromVault.getRef())) {
+                        throw e;
+                    }
+                }
+                // Another transaction spent our input first. The input stays soft locked by this flow until it ends,
+                // so it is not selected again while our vault still shows it as unconsumed.
+                final Duration backoff = backoff(attempt, initialBackoffMillis, maxBackoffMillis);
+                getLogger().info("Product {} was consumed by another transaction; retrying with another Pending {} product in {} ms (attempt {} of {}).",
+                        productFromVault.getRef(), color, backoff.toMillis(), attempt + 1, maxAttempts);
+                final long sleeping = FlowTrace.now();
+                FlowLogic.sleep(backoff);
+                trace.span("backoff", sleeping);
+            }
+        }
+
+        // A new session is opened for every attempt. The counterparty's Acceptor from a conflicted attempt is left
+        // waiting for finality and ends when this flow ends.
+        @Suspendable
+        private SignedTransaction updateProduct(Party notary, StateAndRef<ProductState> productFromVault, FlowTrace trace) throws FlowException {
+            long mark = FlowTrace.now();
             final ProductState productToMarkAsConsumed = productFromVault.getState().getData();
 //            final ProductState productToMarkAsConsumed = getUnconsumedProductStateFromVault();
 //            if(!"Pending".equals(productToMarkAsConsumed.getStatus())) {
 //                throw new FlowException(String.format("Product status in the vault is not Pending. Which suggests Product might have already been processed. Please check"));
 //            }
 //            final ProductState newInputProduct = new ProductState(from, otherParty, productToMarkAsConsumed.getProductName(), productToMarkAsConsumed.getProductColor(), status, linearId);
-            final ProductState newInputProduct = new ProductState(from, otherParty, productToMarkAsConsumed.getProductName(), productToMarkAsConsumed.getProductColor(), status, productToMarkAsConsumed.getLinearId());
-            final Party from = (Party) newInputProduct.getFrom();
+            final ProductState newInputProduct = new ProductState(from, otherParty, productToMarkAsConsumed.getProductName(), productToMarkAsConsumed.getProductColor(), ProductStatus.fromLabel(status), productToMarkAsConsumed.getLinearId());
 
             final Command<ProductContract.Commands.UpdateStatus> txCommand = new Command<>(
                     new ProductContract.Commands.UpdateStatus(),
@@ -95,43 +144,56 @@ public class ProductUpdateFlow {
 
             progressTracker.setCurrentStep(SIGN_TRANSACTION);
             final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder, newInputProduct.getFrom().getOwningKey());
+            trace.setTxId(partSignedTx.getId());
+            mark = trace.span("build", mark);
             FlowSession otherPartySession = initiateFlow(otherParty);
+            trace.send(otherPartySession);
+            mark = trace.span("handshake", mark);
             final SignedTransaction fullySignedTx = subFlow(
                     new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+            mark = trace.span("collectSignatures", mark);
             progressTracker.setCurrentStep(FINALISE);
-            return subFlow(new FinalityFlow(fullySignedTx, ImmutableSet.of(otherPartySession)));
+            final SignedTransaction notarisedTx = NotarySelectorService.finalise(this, notary, new FinalityFlow(fullySignedTx, ImmutableSet.of(otherPartySession)));
+            trace.span("finality", mark);
+            return notarisedTx;
         }
 
+        /**
+         * Whether the notary rejected the transaction because {@code input} had already been consumed, which is the
+         * only failure the Initiator retries with another product.
+         */
+        public static boolean isConflictOn(NotaryException e, StateRef input) {
+            final NotaryError error = e.getError();
+            return error instanceof NotaryError.Conflict
+                    && ((NotaryError.Conflict) error).getConsumedStates().containsKey(input);
+        }
 
-        private StateAndRef<ProductState> getUnconsumedProductStateFromVault(String color) throws FlowException {
-//            QueryCriteria queryCriteria =
-//                    new QueryCriteria.LinearStateQueryCriteria(null,null,Vault.StateStatus.UNCONSUMED,null);
-
-//            List<StateAndRef<ProductState>> productStates = getServiceHub().getVaultService().queryBy(ProductState.class, queryCriteria).getStates();
-
-            StateAndRef<ProductState> fromVaultStateAndRef = getServiceHub().getVaultService().
-                    queryBy(ProductState.class).getStates().stream()
-                    .filter(productState -> productState.getState().getData().getStatus().equals(PENDING_STATUS))
-                    .filter(productState -> productState.getState().getData().getProductColor().equals(color)).findAny()
-                    .orElseThrow(() -> new IllegalArgumentException("Product State with Pending status && "+color+" does not exist in vault"));
-
-
-//            boolean productAvailableForUpdate = false;
-//                if(null == productStates) {
-//                    throw new FlowException(String.format("Product State with UNCONSUMED status does not exist"));
-//                }else{
-//                for (int i = 0; i < productStates.size(); i++) {
-//                    if ("Pending".equals(productStates.get(i).getState().getData().getStatus())) {
-//                        productAvailableForUpdate = true;
-//                        return productStates.get(i);
-//                    }
-//                }
-//                if (!productAvailableForUpdate) {
-//                    throw new FlowException(String.format("Product States with UNCONSUMED && Pending status do not exist"));
-//                }
-//            }
-            // This line is not reached but retained to satisfy return statement
-            return fromVaultStateAndRef;
+        /**
+         * The wait before the attempt after {@code attempt}: exponential backoff capped at {@code maxMillis}, of which
+         * between half and all is taken at random to spread out flows that conflicted on the same state.
+         */
+        public static Duration backoff(int attempt, long initialMillis, long maxMillis) {
+            final long capped = Math.min(maxMillis, initialMillis << Math.min(attempt - 1, 20));
+            return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+        }
+
+
+        private StateAndRef<ProductState> getUnconsumedProductStateFromVault(ProductColor color) throws FlowException {
+            // Candidates come from the in-memory product index when it has any. Otherwise the status and color filters
+            // run against the indexed product_states table. The state we pick is soft locked for this flow, so
+            // concurrent updates of the same color are handed different products.
+            final UUID lockId = getRunId().getUuid();
+            StateAndRef<ProductState> productState = getServiceHub().cordaService(ProductIndexService.class)
+                    .reserve(getServiceHub().getVaultService(), lockId, color, otherParty, INDEX_CANDIDATES);
+            if (productState == null) {
+                QueryCriteria queryCriteria = ProductQueries.withStatusAndColor(ProductStatus.PENDING, color)
+                        .and(ProductQueries.sharedWith(otherParty));
+                productState = ProductReservations.reserveOne(getServiceHub().getVaultService(), lockId, queryCriteria);
+            }
+            if (productState == null) {
+                throw new IllegalArgumentException("Product State with Pending status && " + color + " does not exist in vault");
+            }
+            return productState;
         }
 
         StateAndRef<ProductState> getProductStateByLinearId(UniqueIdentifier linearId) throws FlowException {
@@ -141,10 +203,11 @@ public class ProductUpdateFlow {
                     Vault.StateStatus.UNCONSUMED,
                     null);
 
-            List<StateAndRef<ProductState>> productStates = getServiceHub().getVaultService().queryBy(ProductState.class, queryCriteria).getStates();
+            // Two rows are enough to tell a unique match from a duplicate.
+            List<StateAndRef<ProductState>> productStates =
+                    new VaultPager<>(getServiceHub().getVaultService(), ProductState.class, queryCriteria).take(2);
             if (productStates.size() != 1) {
-//                    Removing this code to get all states by state of UNCONSUMED
-                                throw new FlowException(String.format("Product with id %s not found.", linearId));
+                throw new FlowException(String.format("Product with id %s not found.", linearId));
             }
             return productStates.get(0);
         }
@@ -173,15 +236,22 @@ public class ProductUpdateFlow {
                         ContractState output = stx.getTx().getOutputs().get(0).getData();
                         require.using("This must be a product transaction.", output instanceof ProductState);
                         ProductState productState = (ProductState) output;
-                        require.using("Status of a created product should be Received.",("Received".equals(productState.getStatus())));
+                        require.using("Status of a created product should be Received.",productState.getStatus() == ProductStatus.RECEIVED);
                         return null;
                     });
                 }
             }
+            final FlowTrace trace = FlowTrace.responder(this, otherPartySession);
+            long mark = FlowTrace.now();
             final SignTxFlow signTxFlow = new SignTxFlow(otherPartySession, SignTransactionFlow.Companion.tracker());
             final SecureHash txId = subFlow(signTxFlow).getId();
+            trace.setTxId(txId);
+            mark = trace.span("signTransaction", mark);
 
-            return subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+            final SignedTransaction recordedTx = subFlow(new ReceiveFinalityFlow(otherPartySession, txId));
+            trace.span("receiveFinality", mark);
+            trace.finish();
+            return recordedTx;
         }
     }
 
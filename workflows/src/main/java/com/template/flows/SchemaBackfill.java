@@ -0,0 +1,86 @@
+package com.template.flows;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.PersistentStateRef;
+import net.corda.core.schemas.QueryableState;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Writes the custom schema rows of states that were recorded before the schema was added to the CorDapp. The node maps
+ * a QueryableState into its schemas only when it records the state, so states already in the vault have no row and
+ * are missed by every query on the schema's columns until they are backfilled.
+ *
+ * The states missing a row are found with one anti-join of vault_states against the CorDapp's tables, which is only
+ * read, and only those states are then loaded through the vault API. Each run costs one batch, however many states
+ * earlier runs have already backfilled.
+ */
+class SchemaBackfill {
+    private SchemaBackfill() { }
+
+    /**
+     * Maps up to {@code limit} states of the given type, consumed or not, that have a row in none of {@code tables},
+     * and persists their rows in the caller's database transaction. Returns the number of states mapped; fewer than
+     * {@code limit} means every state now has a row.
+     */
+    static <T extends QueryableState> int backfill(ServiceHub serviceHub, Class<T> stateType, MappedSchema schema,
+                                                   int limit, String... tables) throws SQLException {
+        final List<StateRef> refs = missingRefs(serviceHub.jdbcSession(), stateType, limit, tables);
+        if (refs.isEmpty()) return 0;
+        final List<StateAndRef<T>> missing = serviceHub.getVaultService().queryBy(stateType,
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL, null, refs),
+                new PageSpecification(DEFAULT_PAGE_NUM, refs.size())).getStates();
+
+        serviceHub.withEntityManager(entityManager -> {
+            for (StateAndRef<T> state : missing) {
+                final PersistentState row = state.getState().getData().generateMappedObject(schema);
+                row.setStateRef(new PersistentStateRef(state.getRef()));
+                entityManager.persist(row);
+            }
+        });
+        return missing.size();
+    }
+
+    private static List<StateRef> missingRefs(Connection connection, Class<? extends ContractState> stateType,
+                                              int limit, String[] tables) throws SQLException {
+        final StringBuilder sql = new StringBuilder("SELECT v.transaction_id, v.output_index FROM vault_states v");
+        for (int i = 0; i < tables.length; i++) {
+            sql.append(" LEFT JOIN ").append(tables[i]).append(" t").append(i)
+                    .append(" ON t").append(i).append(".transaction_id = v.transaction_id")
+                    .append(" AND t").append(i).append(".output_index = v.output_index");
+        }
+        sql.append(" WHERE v.contract_state_class_name = ?");
+        for (int i = 0; i < tables.length; i++) {
+            sql.append(" AND t").append(i).append(".transaction_id IS NULL");
+        }
+
+        final List<StateRef> refs = new ArrayList<>(limit);
+        try (PreparedStatement select = connection.prepareStatement(sql.toString())) {
+            select.setString(1, stateType.getName());
+            // Portable across the node's databases, unlike LIMIT or TOP.
+            select.setMaxRows(limit);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    refs.add(new StateRef(SecureHash.parse(rows.getString(1)), rows.getInt(2)));
+                }
+            }
+        }
+        return refs;
+    }
+}
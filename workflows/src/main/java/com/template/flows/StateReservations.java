@@ -0,0 +1,116 @@
+package com.template.flows;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Selects unconsumed states of any type and soft locks them for the calling flow, so that flows running concurrently
+ * on the same node are handed disjoint states instead of all picking the same one and failing at the notary with a
+ * double spend.
+ *
+ * Only states that no other flow has reserved are considered. The node releases a flow's soft locks when the flow
+ * ends, whether it succeeded or not. {@link ProductReservations} applies this to products.
+ */
+public class StateReservations {
+    // Bounds the retries when candidates keep being taken by other flows between our query and our reservation.
+    private static final int MAX_SELECTION_ROUNDS = 10;
+
+    private static final QueryCriteria UNLOCKED_ONLY = new QueryCriteria.VaultQueryCriteria(
+            Vault.StateStatus.UNCONSUMED,
+            null,
+            null,
+            null,
+            new QueryCriteria.SoftLockingCondition(QueryCriteria.SoftLockingType.UNLOCKED_ONLY, Collections.emptyList()));
+
+    private StateReservations() { }
+
+    /**
+     * Reserves up to {@code count} unlocked states of the given type matching {@code criteria} under {@code lockId},
+     * which is normally the flow's run id. Returns fewer than {@code count} states, possibly none, when not enough are
+     * available.
+     */
+    public static <T extends ContractState> List<StateAndRef<T>> reserve(VaultService vaultService, Class<T> contractStateType,
+                                                                         UUID lockId, QueryCriteria criteria, int count) {
+        final VaultPager<T> unlocked = new VaultPager<>(vaultService, contractStateType, criteria.and(UNLOCKED_ONLY));
+        final List<StateAndRef<T>> reserved = new ArrayList<>(count);
+        // States we reserve drop out of the unlocked results, so every round re-reads the first page.
+        for (int round = 0; round < MAX_SELECTION_ROUNDS && reserved.size() < count; round++) {
+            final List<StateAndRef<T>> candidates = unlocked.take(count - reserved.size());
+            if (candidates.isEmpty()) break;
+            if (tryReserve(vaultService, lockId, candidates)) {
+                reserved.addAll(candidates);
+                continue;
+            }
+            // Another flow took at least one candidate; reserve the rest one by one.
+            for (StateAndRef<T> candidate : candidates) {
+                if (tryReserve(vaultService, lockId, Collections.singletonList(candidate))) {
+                    reserved.add(candidate);
+                }
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * Reserves the first of {@code candidates} that is still unconsumed and not reserved by another flow, or returns
+     * null if none is. Used with candidates that come from somewhere other than a vault query.
+     */
+    public static <T extends ContractState> StateAndRef<T> reserveFirstOf(VaultService vaultService, UUID lockId,
+                                                                          List<StateAndRef<T>> candidates) {
+        for (StateAndRef<T> candidate : candidates) {
+            if (tryReserve(vaultService, lockId, Collections.singletonList(candidate))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reserves every one of {@code candidates} that is still unconsumed and not reserved by another flow, and returns
+     * those it reserved.
+     */
+    public static <T extends ContractState> List<StateAndRef<T>> reserveEach(VaultService vaultService, UUID lockId,
+                                                                             List<StateAndRef<T>> candidates) {
+        if (candidates.isEmpty() || tryReserve(vaultService, lockId, candidates)) {
+            return candidates;
+        }
+        final List<StateAndRef<T>> reserved = new ArrayList<>(candidates.size());
+        for (StateAndRef<T> candidate : candidates) {
+            if (tryReserve(vaultService, lockId, Collections.singletonList(candidate))) {
+                reserved.add(candidate);
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * Gives up a reservation, for example when a reserved state turns out to be unusable.
+     */
+    public static void release(VaultService vaultService, UUID lockId, StateAndRef<?> state) {
+        vaultService.softLockRelease(lockId, NonEmptySet.of(state.getRef()));
+    }
+
+    private static boolean tryReserve(VaultService vaultService, UUID lockId, List<? extends StateAndRef<?>> candidates) {
+        final List<StateRef> refs = new ArrayList<>(candidates.size());
+        for (StateAndRef<?> candidate : candidates) {
+            refs.add(candidate.getRef());
+        }
+        try {
+            vaultService.softLockReserve(lockId, NonEmptySet.copyOf(refs));
+            return true;
+        } catch (StatesNotAvailableException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.template.flows;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Walks the results of a vault query one page at a time, so that at most one page of states is held in memory and
+ * queries matching more than the vault's default page size of 200 states do not fail.
+ *
+ * Results are ordered by state ref, which keeps page boundaries stable between successive page queries. States that
+ * are consumed while the pager is being walked shift later pages, so callers that consume what they read should
+ * re-query from the first page instead of holding on to an iterator.
+ */
+public class VaultPager<T extends ContractState> implements Iterable<StateAndRef<T>> {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    public static final Sort STABLE_SORT = new Sort(ImmutableList.of(
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+
+    private final VaultService vaultService;
+    private final Class<T> contractStateType;
+    private final QueryCriteria criteria;
+    private final int pageSize;
+
+    public VaultPager(VaultService vaultService, Class<T> contractStateType, QueryCriteria criteria) {
+        this(vaultService, contractStateType, criteria, DEFAULT_PAGE_SIZE);
+    }
+
+    public VaultPager(VaultService vaultService, Class<T> contractStateType, QueryCriteria criteria, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be at least one.");
+        this.vaultService = vaultService;
+        this.contractStateType = contractStateType;
+        this.criteria = criteria;
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Fetches a single page of results. Page numbers start at one.
+     */
+    public Vault.Page<T> page(int pageNumber) {
+        return vaultService.queryBy(contractStateType, criteria, new PageSpecification(pageNumber, pageSize), STABLE_SORT);
+    }
+
+    /**
+     * Returns at most {@code count} states from the start of the result set, fetching no more than {@code count} rows.
+     */
+    public List<StateAndRef<T>> take(int count) {
+        return vaultService.queryBy(contractStateType, criteria, new PageSpecification(DEFAULT_PAGE_NUM, count), STABLE_SORT)
+                .getStates();
+    }
+
+    /**
+     * Returns the first matching state, or null if there is none.
+     */
+    public StateAndRef<T> firstOrNull() {
+        final List<StateAndRef<T>> states = take(1);
+        return states.isEmpty() ? null : states.get(0);
+    }
+
+    @Override
+    public Iterator<StateAndRef<T>> iterator() {
+        return new PageIterator();
+    }
+
+    public Stream<StateAndRef<T>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private class PageIterator implements Iterator<StateAndRef<T>> {
+        private int nextPageNumber = DEFAULT_PAGE_NUM;
+        private List<StateAndRef<T>> currentPage = ImmutableList.of();
+        private int indexInPage = 0;
+        private long statesFetched = 0;
+        private boolean exhausted = false;
+
+        @Override
+        public boolean hasNext() {
+            if (indexInPage < currentPage.size()) return true;
+            if (exhausted) return false;
+            final Vault.Page<T> page = page(nextPageNumber++);
+            currentPage = page.getStates();
+            indexInPage = 0;
+            statesFetched += currentPage.size();
+            // The vault rejects requests for pages past the end of the results, so stop on the last full page.
+            exhausted = currentPage.size() < pageSize || statesFetched >= page.getTotalStatesAvailable();
+            return !currentPage.isEmpty();
+        }
+
+        @Override
+        public StateAndRef<T> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return currentPage.get(indexInPage++);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.AutoReceiptService;
+import com.template.flows.ProductBulkUpdateFlow;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductQueries;
+import com.template.flows.VaultPager;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class AutoReceiptTests {
+    // Sweeps are started by the tests rather than on a timer, and products fall due a minute after they are issued.
+    // Batches hold three products, so three due products fill a batch exactly.
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+        TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
+        TestCordapp.findCordapp("com.template.flows")
+                .withConfig(ImmutableMap.of(AutoReceiptService.POLL_CONFIG, 0, AutoReceiptService.DEADLINE_CONFIG, 1,
+                        ProductBulkUpdateFlow.MAX_BATCH_SIZE_CONFIG, 3))
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void dueProductsFromOneSenderAreReceivedInOneTransaction() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            createProduct();
+        }
+        final AutoReceiptService service = b.getServices().cordaService(AutoReceiptService.class);
+
+        // Nothing is due yet.
+        assertEquals(0, (int) runUntilDone(service.sweep(Instant.now())));
+        assertEquals(0, service.getBulkUpdates());
+        assertEquals(3, pendingOn(b));
+
+        assertEquals(3, (int) runUntilDone(service.sweep(Instant.now().plus(Duration.ofMinutes(2)))));
+        assertEquals(1, service.getBulkUpdates());
+        assertEquals(3, service.getReceived());
+        // The full batch was followed by a bulk update that found nothing left, which is not a failure.
+        assertEquals(0, service.getFailures());
+        assertEquals(0, pendingOn(a));
+        assertEquals(0, pendingOn(b));
+
+        // The sender's products were all received, so the next sweep finds nothing to do.
+        assertEquals(0, (int) runUntilDone(service.sweep(Instant.now().plus(Duration.ofMinutes(2)))));
+        assertEquals(1, service.getBulkUpdates());
+    }
+
+    // The sweep waits on flows, so the network is pumped until it has finished.
+    private <T> T runUntilDone(Future<T> future) throws Exception {
+        for (int i = 0; i < 500 && !future.isDone(); i++) {
+            network.runNetwork();
+            Thread.sleep(10);
+        }
+        return future.get();
+    }
+
+    private SignedTransaction createProduct() throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductCreateFlow.Initiator(partyOf(b), "Gadgets", "Red", "Pending"));
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static long pendingOn(StartedMockNode node) {
+        return node.transaction(() -> new VaultPager<>(node.getServices().getVaultService(), ProductState.class,
+                ProductQueries.withStatus(ProductStatus.PENDING)).stream().count());
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}
@@ -1,7 +1,45 @@
 package com.template;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.template.contracts.ProductContract;
+import com.template.flows.ArchivedProduct;
+import com.template.flows.FlowTimingService;
+import com.template.flows.IOUBatchFlow;
+import com.template.flows.IOUFanOutFlow;
+import com.template.flows.IOUNetFlow;
+import com.template.flows.IOUQueries;
+import com.template.flows.IOUSchemaBackfillFlow;
+import com.template.flows.ProductArchiveFlow;
+import com.template.flows.ProductArchiveQueryFlow;
+import com.template.flows.ProductBatchCreateFlow;
+import com.template.flows.ProductBulkUpdateFlow;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductEncoding;
+import com.template.flows.ProductIndexService;
+import com.template.flows.ProductMigrationFlow;
+import com.template.flows.ProductQueries;
+import com.template.flows.ProductReissueFlow;
+import com.template.flows.ProductSchemaBackfillFlow;
+import com.template.flows.ProductUpdateFlow;
 import com.template.flows.Responder;
+import com.template.flows.VaultPager;
+import com.template.schemas.ProductSchemaV1.PersistentProduct;
+import com.template.states.IOUState;
+import com.template.states.ProductColor;
+import com.template.states.ProductReissueLock;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.MockNetworkParameters;
 import net.corda.testing.node.StartedMockNode;
@@ -10,9 +48,31 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 public class FlowTests {
     private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
         TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
         TestCordapp.findCordapp("com.template.flows")
     )));
     private final StartedMockNode a = network.createNode();
@@ -37,4 +97,412 @@ public class FlowTests {
     public void dummyTest() {
 
     }
+
+    @Test
+    public void vaultPagerWalksResultSetsLargerThanOnePage() throws Exception {
+        final int pageSize = 5;
+        final int productCount = 23;
+        for (int i = 0; i < productCount; i++) {
+            createProduct(i % 2 == 0 ? "Red" : "Green");
+        }
+
+        b.transaction(() -> {
+            final VaultPager<ProductState> pager = new VaultPager<>(
+                    b.getServices().getVaultService(), ProductState.class, ProductQueries.withStatus(ProductStatus.PENDING), pageSize);
+            final List<StateRef> refs = pager.stream().map(StateAndRef::getRef).collect(Collectors.toList());
+            final Set<StateRef> distinctRefs = new HashSet<>(refs);
+            assertEquals(productCount, refs.size());
+            assertEquals(productCount, distinctRefs.size());
+
+            final VaultPager<ProductState> redPager = new VaultPager<>(
+                    b.getServices().getVaultService(), ProductState.class,
+                    ProductQueries.withStatusAndColor(ProductStatus.PENDING, ProductColor.RED), pageSize);
+            assertEquals(12, redPager.stream().count());
+            assertNotNull(redPager.firstOrNull());
+            assertEquals(pageSize, redPager.page(1).getStates().size());
+            return null;
+        });
+    }
+
+    @Test
+    public void schemaBackfillRestoresProductsMissingFromProductStates() throws Exception {
+        createProduct("Red");
+        createProduct("Green");
+        // As if the products had been recorded before product_states existed.
+        b.transaction(() -> {
+            try (PreparedStatement delete = b.getServices().jdbcSession().prepareStatement("DELETE FROM product_states")) {
+                delete.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        assertEquals(0, countPending(b));
+
+        final CordaFuture<Integer> first = b.startFlow(new ProductSchemaBackfillFlow(1));
+        network.runNetwork();
+        assertEquals(1, (int) first.get());
+        final CordaFuture<Integer> rest = b.startFlow(new ProductSchemaBackfillFlow(10));
+        network.runNetwork();
+        assertEquals(1, (int) rest.get());
+        assertEquals(2, countPending(b));
+    }
+
+    @Test
+    public void schemaBackfillRestoresIOUsMissingFromIOUStates() throws Exception {
+        final CordaFuture<SignedTransaction> lent = a.startFlow(new IOUBatchFlow(ImmutableList.of(10, 20), partyOf(b)));
+        network.runNetwork();
+        lent.get();
+        // As if the IOUs had been recorded before iou_states existed.
+        b.transaction(() -> {
+            try (PreparedStatement delete = b.getServices().jdbcSession().prepareStatement("DELETE FROM iou_states")) {
+                delete.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        assertEquals(0, countIOUsLentBy(b, partyOf(a), partyOf(b)));
+
+        final CordaFuture<Integer> backfill = b.startFlow(new IOUSchemaBackfillFlow(10));
+        network.runNetwork();
+        assertEquals(2, (int) backfill.get());
+        assertEquals(2, countIOUsLentBy(b, partyOf(a), partyOf(b)));
+
+        final CordaFuture<Integer> again = b.startFlow(new IOUSchemaBackfillFlow(10));
+        network.runNetwork();
+        assertEquals(0, (int) again.get());
+    }
+
+    @Test
+    public void batchCreateIssuesManyProductsInOneTransaction() throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductBatchCreateFlow.Initiator(partyOf(b), "Gadgets", ImmutableList.of("Red", "Green", "Red")));
+        network.runNetwork();
+        final SignedTransaction stx = future.get();
+
+        assertEquals(3, stx.getTx().getOutputs().size());
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            assertEquals(stx, node.getServices().getValidatedTransactions().getTransaction(stx.getId()));
+            node.transaction(() -> {
+                final VaultPager<ProductState> pager = new VaultPager<>(
+                        node.getServices().getVaultService(), ProductState.class, ProductQueries.withStatus(ProductStatus.PENDING));
+                assertEquals(3, pager.stream().count());
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void bulkUpdateReceivesMatchingPendingProductsInOneTransaction() throws Exception {
+        for (String color : ImmutableList.of("Red", "Red", "Green", "Red")) {
+            createProduct(color);
+        }
+
+        final CordaFuture<SignedTransaction> future = b.startFlow(new ProductBulkUpdateFlow.Initiator(partyOf(a), "Red", 10));
+        network.runNetwork();
+        final SignedTransaction stx = future.get();
+
+        assertEquals(3, stx.getTx().getInputs().size());
+        assertEquals(3, stx.getTx().getOutputs().size());
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.transaction(() -> {
+                assertEquals(3, new VaultPager<>(node.getServices().getVaultService(), ProductState.class,
+                        ProductQueries.withStatusAndColor(ProductStatus.RECEIVED, ProductColor.RED)).stream().count());
+                assertEquals(1, new VaultPager<>(node.getServices().getVaultService(), ProductState.class,
+                        ProductQueries.withStatus(ProductStatus.PENDING)).stream().count());
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void bulkUpdateDueBySkipsProductsWithoutADeadline() throws Exception {
+        createProduct("Red");
+
+        final CordaFuture<SignedTransaction> future =
+                b.startFlow(new ProductBulkUpdateFlow.Initiator(partyOf(a), null, 10, Instant.now()));
+        network.runNetwork();
+        try {
+            future.get();
+            fail("A product without a receipt deadline was received as due.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void concurrentUpdatesOfTheSameColorConsumeDisjointProducts() throws Exception {
+        final int parallelUpdates = 5;
+        final CordaFuture<SignedTransaction> issuance =
+                a.startFlow(new ProductBatchCreateFlow.Initiator(partyOf(b), "Gadgets", "Red", parallelUpdates));
+        network.runNetwork();
+        issuance.get();
+
+        final List<CordaFuture<SignedTransaction>> updates = new ArrayList<>();
+        for (int i = 0; i < parallelUpdates; i++) {
+            updates.add(b.startFlow(new ProductUpdateFlow.Initiator(partyOf(b), partyOf(a), "Received", "Red")));
+        }
+        network.runNetwork();
+
+        final Set<StateRef> consumed = new HashSet<>();
+        for (CordaFuture<SignedTransaction> update : updates) {
+            // Any notary double spend would surface here as a failed future.
+            consumed.addAll(update.get().getTx().getInputs());
+        }
+        assertEquals(parallelUpdates, consumed.size());
+        b.transaction(() -> {
+            assertEquals(parallelUpdates, new VaultPager<>(b.getServices().getVaultService(), ProductState.class,
+                    ProductQueries.withStatusAndColor(ProductStatus.RECEIVED, ProductColor.RED)).stream().count());
+            return null;
+        });
+    }
+
+    @Test
+    public void productIndexTracksPendingProductsOnly() throws Exception {
+        createProduct("Red");
+        createProduct("Green");
+        final ProductIndexService index = b.getServices().cordaService(ProductIndexService.class);
+        assertEquals(2, index.getSize());
+        assertEquals(1, index.candidates(ProductColor.RED, partyOf(a), 10).size());
+
+        final CordaFuture<SignedTransaction> update =
+                b.startFlow(new ProductUpdateFlow.Initiator(partyOf(b), partyOf(a), "Received", "Red"));
+        network.runNetwork();
+        update.get();
+
+        // The Received product replaces the Pending one in the vault but not in the index.
+        assertEquals(1, index.getSize());
+        assertEquals(0, index.candidates(ProductColor.RED, partyOf(a), 10).size());
+        assertEquals(1, index.getHits());
+        assertEquals(0, index.getMisses());
+    }
+
+    @Test
+    public void productIndexCountsAMissWhenEveryCandidateIsReserved() throws Exception {
+        createProduct("Red");
+        final ProductIndexService index = b.getServices().cordaService(ProductIndexService.class);
+        b.transaction(() -> {
+            final UUID otherFlow = UUID.randomUUID();
+            assertNotNull(index.reserve(b.getServices().getVaultService(), otherFlow, ProductColor.RED, partyOf(a), 10));
+            assertNull(index.reserve(b.getServices().getVaultService(), UUID.randomUUID(), ProductColor.RED, partyOf(a), 10));
+            return null;
+        });
+        assertEquals(1, index.getHits());
+        assertEquals(1, index.getMisses());
+
+        // Operators read the same numbers over JMX.
+        final ObjectName name = new ObjectName("com.template:type=ProductIndex,node="
+                + ObjectName.quote(partyOf(b).getName().toString()));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Hits"));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Misses"));
+    }
+
+    @Test
+    public void productsIssuedInTheCurrentFormAreNotMigrated() throws Exception {
+        createProduct("Red");
+        b.transaction(() -> {
+            for (StateAndRef<ProductState> product : new VaultPager<>(b.getServices().getVaultService(), ProductState.class,
+                    ProductQueries.withStatus(ProductStatus.PENDING))) {
+                assertFalse(ProductEncoding.isOutdated(product));
+                assertEquals(ProductEncoding.currentSize(product), ProductEncoding.recordedSize(b.getServices(), product));
+            }
+            return null;
+        });
+
+        final CordaFuture<SignedTransaction> migration = b.startFlow(new ProductMigrationFlow.Initiator(partyOf(a), 10));
+        network.runNetwork();
+        try {
+            migration.get();
+            fail("Products issued in the current form should not be migrated.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void flowTimingRecordsEveryStepIncludingChildTrackers() throws Exception {
+        createProduct("Red");
+        createProduct("Green");
+
+        final FlowTimingService timings = a.getServices().cordaService(FlowTimingService.class);
+        final FlowTimingService.StepTimingMXBean gathering =
+                timings.getTiming(ProductCreateFlow.Initiator.class, "Gathering the counterparty's signature.");
+        assertNotNull(gathering);
+        assertEquals(2, gathering.getCount());
+        assertTrue(timings.getTimings().stream().anyMatch(timing -> timing.getFlow().equals(ProductCreateFlow.Initiator.class.getName())
+                && timing.getStep().startsWith("Obtaining notary signature and recording transaction./")
+                && timing.getCount() > 0));
+    }
+
+    @Test
+    public void iouBatchIssuesManyIOUsInOneTransaction() throws Exception {
+        final CordaFuture<SignedTransaction> future = a.startFlow(new IOUBatchFlow(ImmutableList.of(5, 10, 20), partyOf(b)));
+        network.runNetwork();
+        final SignedTransaction stx = future.get();
+
+        assertEquals(3, stx.getTx().getOutputs().size());
+        final Set<Integer> values = b.transaction(() -> b.getServices().getVaultService().queryBy(IOUState.class).getStates().stream()
+                .map(state -> state.getState().getData().getValue())
+                .collect(Collectors.toSet()));
+        assertEquals(ImmutableSet.of(5, 10, 20), values);
+    }
+
+    @Test
+    public void iouResponderChecksEveryOutput() throws Exception {
+        final CordaFuture<SignedTransaction> future = a.startFlow(new IOUBatchFlow(ImmutableList.of(5, 500), partyOf(b)));
+        network.runNetwork();
+        try {
+            future.get();
+            fail("The counterparty should refuse to sign a batch with an IOU over its limit.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void iouFanOutRecordsEachIOUOnBothSides() throws Exception {
+        final CordaFuture<List<SignedTransaction>> future =
+                a.startFlow(new IOUFanOutFlow(ImmutableList.of(7), ImmutableList.of(partyOf(b)), 1));
+        network.runNetwork();
+        final SignedTransaction stx = future.get().get(0);
+
+        assertNotNull(a.getServices().getValidatedTransactions().getTransaction(stx.getId()));
+        assertNotNull(b.getServices().getValidatedTransactions().getTransaction(stx.getId()));
+        final int value = b.transaction(() ->
+                b.getServices().getVaultService().queryBy(IOUState.class).getStates().get(0).getState().getData().getValue());
+        assertEquals(7, value);
+    }
+
+    @Test
+    public void iouNetLeavesOneIOUForTheBalanceOnBothSides() throws Exception {
+        final CordaFuture<SignedTransaction> lent = a.startFlow(new IOUBatchFlow(ImmutableList.of(10, 20, 30), partyOf(b)));
+        network.runNetwork();
+        lent.get();
+        final CordaFuture<SignedTransaction> borrowed = b.startFlow(new IOUBatchFlow(ImmutableList.of(25), partyOf(a)));
+        network.runNetwork();
+        borrowed.get();
+
+        final CordaFuture<List<SignedTransaction>> future = a.startFlow(new IOUNetFlow(partyOf(b)));
+        network.runNetwork();
+        assertEquals(1, future.get().size());
+
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            final List<StateAndRef<IOUState>> ious = node.transaction(() ->
+                    node.getServices().getVaultService().queryBy(IOUState.class).getStates());
+            assertEquals(1, ious.size());
+            final IOUState iou = ious.get(0).getState().getData();
+            assertEquals(35, iou.getValue());
+            assertEquals(partyOf(a), iou.getLender());
+        }
+
+        // Nothing is left to net.
+        final CordaFuture<List<SignedTransaction>> again = a.startFlow(new IOUNetFlow(partyOf(b)));
+        network.runNetwork();
+        assertTrue(again.get().isEmpty());
+    }
+
+    @Test
+    public void productReissueKeepsTheLinearIdWithoutTheHistory() throws Exception {
+        final ProductState created = createProduct("Red").getTx().outputsOfType(ProductState.class).get(0);
+
+        final CordaFuture<SignedTransaction> future = a.startFlow(new ProductReissueFlow.Initiator(created.getLinearId()));
+        network.runNetwork();
+        final SignedTransaction reissued = future.get();
+
+        // The reissued product redeems a lock, and the lock was issued without inputs.
+        assertEquals(1, reissued.getTx().getInputs().size());
+        final SecureHash lockTxId = reissued.getTx().getInputs().get(0).getTxhash();
+        final SignedTransaction lockTx = a.transaction(() ->
+                a.getServices().getValidatedTransactions().getTransaction(lockTxId));
+        assertTrue(lockTx.getTx().getInputs().isEmpty());
+        assertEquals(1, lockTx.getTx().outputsOfType(ProductReissueLock.class).size());
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            final List<StateAndRef<ProductState>> products = node.transaction(() ->
+                    node.getServices().getVaultService().queryBy(ProductState.class).getStates());
+            assertEquals(1, products.size());
+            assertEquals(reissued.getId(), products.get(0).getRef().getTxhash());
+            assertEquals(created.getLinearId(), products.get(0).getState().getData().getLinearId());
+        }
+
+        // The lock has been redeemed, so the notary refuses to reissue the same exit twice.
+        final SecureHash exitTxId = a.transaction(() -> a.getServices().getValidatedTransactions().track().getSnapshot())
+                .stream()
+                .filter(stx -> !stx.getTx().commandsOfType(ProductContract.Commands.Exit.class).isEmpty())
+                .findFirst().get().getId();
+        final CordaFuture<SignedTransaction> again = a.startFlow(new ProductReissueFlow.Initiator(exitTxId));
+        network.runNetwork();
+        try {
+            again.get();
+            fail("A product was reissued twice.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void productArchiveMovesConsumedProductsOutOfProductStates() throws Exception {
+        final ProductState created = createProduct("Red").getTx().outputsOfType(ProductState.class).get(0);
+        final CordaFuture<SignedTransaction> update =
+                b.startFlow(new ProductUpdateFlow.Initiator(partyOf(b), partyOf(a), "Received", "Red"));
+        network.runNetwork();
+        update.get();
+
+        final CordaFuture<ProductArchiveFlow.Result> archive =
+                a.startFlow(new ProductArchiveFlow(Instant.now().plusSeconds(60), 10));
+        network.runNetwork();
+        final ProductArchiveFlow.Result result = archive.get();
+        assertEquals(1, result.getArchived());
+        assertTrue(result.isComplete());
+        assertEquals(0, result.getConsumedProducts());
+        assertEquals(1, result.getUnconsumedProducts());
+
+        // The node's vault tables are left alone; only the product_states row is gone.
+        final int consumedInVault = a.transaction(() -> a.getServices().getVaultService().queryBy(ProductState.class,
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED)).getStates().size());
+        assertEquals(1, consumedInVault);
+        final int consumedInProductStates = a.transaction(() -> a.getServices().getVaultService().queryBy(ProductState.class,
+                new QueryCriteria.VaultCustomQueryCriteria<>(Builder.equal(getField("linearId", PersistentProduct.class),
+                        created.getLinearId().getId()), Vault.StateStatus.CONSUMED)).getStates().size());
+        assertEquals(0, consumedInProductStates);
+
+        // Nor does the schema backfill bring the archived product back.
+        final CordaFuture<Integer> backfill = a.startFlow(new ProductSchemaBackfillFlow());
+        network.runNetwork();
+        assertEquals(0, (int) backfill.get());
+
+        final CordaFuture<List<ArchivedProduct>> history = a.startFlow(new ProductArchiveQueryFlow(created.getLinearId()));
+        network.runNetwork();
+        final List<ArchivedProduct> archived = history.get();
+        assertEquals(1, archived.size());
+        assertEquals(ProductStatus.PENDING, archived.get(0).getStatus());
+        assertEquals(created.getLinearId().getId(), archived.get(0).getLinearId());
+
+        // Reading on after the last archived state finds nothing more.
+        final CordaFuture<List<ArchivedProduct>> next =
+                a.startFlow(new ProductArchiveQueryFlow(created.getLinearId(), archived.get(0), 1));
+        network.runNetwork();
+        assertTrue(next.get().isEmpty());
+    }
+
+    private SignedTransaction createProduct(String color) throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductCreateFlow.Initiator(partyOf(b), "Gadgets", color, "Pending"));
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static long countPending(StartedMockNode node) {
+        return node.transaction(() -> new VaultPager<>(node.getServices().getVaultService(), ProductState.class,
+                ProductQueries.withStatus(ProductStatus.PENDING)).stream().count());
+    }
+
+    private static long countIOUsLentBy(StartedMockNode node, Party lender, Party borrower) {
+        return node.transaction(() -> new VaultPager<>(node.getServices().getVaultService(), IOUState.class,
+                IOUQueries.lentBy(lender, borrower)).stream().count());
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
 }
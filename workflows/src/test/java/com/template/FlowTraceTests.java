@@ -0,0 +1,118 @@
+package com.template;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.FlowTrace;
+import com.template.flows.ProductCreateFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.flows.InitiatedBy;
+import net.corda.core.flows.InitiatingFlow;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlowTraceTests {
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+        TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
+        TestCordapp.findCordapp("com.template.flows")
+                .withConfig(ImmutableMap.of(FlowTrace.ENABLED_CONFIG, true))
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+
+    public FlowTraceTests() {
+        b.registerInitiatedFlow(EchoTraceResponder.class);
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void theResponderContinuesTheInitiatorsTrace() throws Exception {
+        final CordaFuture<List<String>> future = a.startFlow(new EchoTrace(partyOf(b)));
+        network.runNetwork();
+        final List<String> traceIds = future.get();
+
+        assertNotNull(traceIds.get(0));
+        assertEquals(traceIds.get(0), traceIds.get(1));
+    }
+
+    @Test
+    public void tracedFlowsStillCompleteOnBothSides() throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductCreateFlow.Initiator(partyOf(b), "Gadgets", "Red", "Pending"));
+        network.runNetwork();
+        final SignedTransaction stx = future.get();
+
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            assertEquals(stx, node.getServices().getValidatedTransactions().getTransaction(stx.getId()));
+        }
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+
+    /**
+     * Opens a trace and returns its id together with the id the responder traced under.
+     */
+    @InitiatingFlow(version = FlowTrace.VERSION)
+    public static class EchoTrace extends FlowLogic<List<String>> {
+        private final Party counterparty;
+
+        public EchoTrace(Party counterparty) {
+            this.counterparty = counterparty;
+        }
+
+        @Suspendable
+        @Override
+        public List<String> call() throws FlowException {
+            final FlowTrace trace = FlowTrace.initiator(this);
+            assertTrue(trace.isEnabled());
+            final FlowSession session = initiateFlow(counterparty);
+            trace.send(session);
+            final String echoed = session.receive(String.class).unwrap(traceId -> traceId);
+            return ImmutableList.of(trace.getTraceId(), echoed);
+        }
+    }
+
+    @InitiatedBy(EchoTrace.class)
+    public static class EchoTraceResponder extends FlowLogic<Void> {
+        private final FlowSession otherPartySession;
+
+        public EchoTraceResponder(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            otherPartySession.send(FlowTrace.responder(this, otherPartySession).getTraceId());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.template.flows.IOUFanOutFlow;
+import com.template.states.IOUState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IOUFanOutTests {
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+        TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
+        TestCordapp.findCordapp("com.template.flows")
+    )));
+    private final StartedMockNode lender = network.createNode();
+    private final List<StartedMockNode> borrowers = ImmutableList.of(
+            network.createNode(), network.createNode(), network.createNode(), network.createNode(), network.createNode());
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void everyBorrowerRecordsItsIOUAcrossSeveralWindows() throws Exception {
+        final List<Integer> values = ImmutableList.of(11, 12, 13, 14, 15);
+        final CordaFuture<List<SignedTransaction>> future = lender.startFlow(new IOUFanOutFlow(values, borrowerParties(), 2));
+        network.runNetwork();
+        final List<SignedTransaction> issued = future.get();
+
+        assertEquals(borrowers.size(), issued.size());
+        for (int i = 0; i < borrowers.size(); i++) {
+            final SignedTransaction stx = issued.get(i);
+            final IOUState iou = stx.getTx().outputsOfType(IOUState.class).get(0);
+            assertEquals(partyOf(borrowers.get(i)), iou.getBorrower());
+            assertEquals(values.get(i).intValue(), iou.getValue());
+            assertNotNull(lender.getServices().getValidatedTransactions().getTransaction(stx.getId()));
+            assertNotNull(borrowers.get(i).getServices().getValidatedTransactions().getTransaction(stx.getId()));
+            assertEquals(1, iouCount(borrowers.get(i)));
+        }
+        assertEquals(borrowers.size(), iouCount(lender));
+    }
+
+    @Test
+    public void aRefusalLeavesTheEarlierWindowsIssuedAndTheRestUnissued() throws Exception {
+        // The fourth borrower refuses IOUs of 100 or more, so the second window of two fails.
+        final List<Integer> values = ImmutableList.of(11, 12, 13, 100, 15);
+        final CordaFuture<List<SignedTransaction>> future = lender.startFlow(new IOUFanOutFlow(values, borrowerParties(), 2));
+        network.runNetwork();
+        try {
+            future.get();
+            fail("The fan-out should fail when a borrower refuses its IOU");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("IOUs were issued to the first 2 of 5 borrowers"));
+        }
+
+        assertEquals(2, iouCount(lender));
+        for (int i = 0; i < borrowers.size(); i++) {
+            assertEquals(i < 2 ? 1 : 0, iouCount(borrowers.get(i)));
+        }
+    }
+
+    private List<Party> borrowerParties() {
+        final ImmutableList.Builder<Party> parties = ImmutableList.builder();
+        for (StartedMockNode borrower : borrowers) {
+            parties.add(partyOf(borrower));
+        }
+        return parties.build();
+    }
+
+    private static int iouCount(StartedMockNode node) {
+        return node.transaction(() -> node.getServices().getVaultService().queryBy(IOUState.class).getStates().size());
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}
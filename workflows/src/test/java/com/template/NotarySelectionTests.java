@@ -0,0 +1,111 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.template.flows.NotarySelectorService;
+import com.template.flows.ProductBulkUpdateFlow;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductQueries;
+import com.template.flows.ProductUpdateFlow;
+import com.template.flows.VaultPager;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkNotarySpec;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class NotarySelectionTests {
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+        TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
+        TestCordapp.findCordapp("com.template.flows")
+    )).withNotarySpecs(ImmutableList.of(
+        new MockNetworkNotarySpec(new CordaX500Name("Notary A", "London", "GB"), true),
+        new MockNetworkNotarySpec(new CordaX500Name("Notary B", "Zurich", "CH"), true)
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void roundRobinSpreadsIssuanceOverEveryNotary() throws Exception {
+        final NotarySelectorService selector = a.getServices().cordaService(NotarySelectorService.class);
+        assertEquals(NotarySelectorService.Strategy.ROUND_ROBIN, selector.getStrategy());
+        assertEquals(2, selector.getNotaries().size());
+
+        final Map<Party, Integer> issuedPerNotary = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            final Party notary = createProduct("Red").getNotary();
+            issuedPerNotary.merge(notary, 1, Integer::sum);
+        }
+        assertEquals(2, issuedPerNotary.size());
+        for (Party notary : selector.getNotaries()) {
+            assertEquals(Integer.valueOf(2), issuedPerNotary.get(notary));
+            assertEquals(0, selector.getInFlight(notary));
+        }
+    }
+
+    @Test
+    public void updatesStayOnTheNotaryTheProductWasIssuedOn() throws Exception {
+        final Party issuedOn = createProduct("Green").getNotary();
+
+        final CordaFuture<SignedTransaction> update =
+                b.startFlow(new ProductUpdateFlow.Initiator(partyOf(b), partyOf(a), "Received", "Green"));
+        network.runNetwork();
+        assertEquals(issuedOn, update.get().getNotary());
+    }
+
+    @Test
+    public void bulkUpdatesOnlyCombineProductsFromOneNotary() throws Exception {
+        createProduct("Red");
+        createProduct("Red");
+
+        final CordaFuture<SignedTransaction> first = b.startFlow(new ProductBulkUpdateFlow.Initiator(partyOf(a), "Red", 10));
+        network.runNetwork();
+        assertEquals(1, first.get().getTx().getInputs().size());
+
+        final CordaFuture<SignedTransaction> second = b.startFlow(new ProductBulkUpdateFlow.Initiator(partyOf(a), "Red", 10));
+        network.runNetwork();
+        assertEquals(1, second.get().getTx().getInputs().size());
+
+        b.transaction(() -> {
+            assertEquals(2, new VaultPager<>(b.getServices().getVaultService(), ProductState.class,
+                    ProductQueries.withStatusAndColor(ProductStatus.RECEIVED, ProductColor.RED)).stream().count());
+            return null;
+        });
+    }
+
+    private SignedTransaction createProduct(String color) throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductCreateFlow.Initiator(partyOf(b), "Gadgets", color, "Pending"));
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}
@@ -0,0 +1,190 @@
+package com.template;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.contracts.ProductContract;
+import com.template.flows.ProductCreateFlow;
+import com.template.flows.ProductIndexService;
+import com.template.flows.ProductUpdateFlow;
+import com.template.states.ProductColor;
+import com.template.states.ProductState;
+import com.template.states.ProductStatus;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProductUpdateRetryTests {
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+        TestCordapp.findCordapp("com.template.contracts"),
+        TestCordapp.findCordapp("com.template.schemas"),
+        TestCordapp.findCordapp("com.template.flows")
+                .withConfig(ImmutableMap.of(ProductUpdateFlow.INITIAL_BACKOFF_CONFIG, 0))
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+
+    public ProductUpdateRetryTests() {
+        a.registerInitiatedFlow(SpendBehindTheVaultResponder.class);
+    }
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void onlyAConflictOnTheSelectedInputIsRetried() {
+        final StateRef input = new StateRef(SecureHash.randomSHA256(), 0);
+        final StateRef other = new StateRef(SecureHash.randomSHA256(), 1);
+        final SecureHash txId = SecureHash.randomSHA256();
+
+        assertTrue(ProductUpdateFlow.Initiator.isConflictOn(conflict(txId, input), input));
+        assertFalse(ProductUpdateFlow.Initiator.isConflictOn(conflict(txId, other), input));
+        assertFalse(ProductUpdateFlow.Initiator.isConflictOn(
+                new NotaryException(new NotaryError.General(new IllegalStateException("Notary unavailable")), txId), input));
+    }
+
+    @Test
+    public void backoffDoublesWithinJitterUpToTheCap() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, ProductUpdateFlow.Initiator.backoff(1, 100, 2000));
+            assertBetween(200, 400, ProductUpdateFlow.Initiator.backoff(3, 100, 2000));
+            assertBetween(1000, 2000, ProductUpdateFlow.Initiator.backoff(10, 100, 2000));
+            // Far past the point where the shift would overflow.
+            assertBetween(1000, 2000, ProductUpdateFlow.Initiator.backoff(100, 100, 2000));
+        }
+        assertEquals(Duration.ZERO, ProductUpdateFlow.Initiator.backoff(1, 0, 2000));
+    }
+
+    @Test
+    public void updateReselectsAnotherProductAfterANotaryConflict() throws Exception {
+        createProduct("Red");
+        createProduct("Red");
+
+        // Spend the product the update will select first, without b's vault hearing of it.
+        final List<StateAndRef<ProductState>> candidates = b.getServices().cordaService(ProductIndexService.class)
+                .candidates(ProductColor.RED, partyOf(a), 16);
+        assertEquals(2, candidates.size());
+        final StateAndRef<ProductState> spent = candidates.get(0);
+        final CordaFuture<Void> spend = b.startFlow(new SpendBehindTheVault(spent, partyOf(a)));
+        network.runNetwork();
+        spend.get();
+
+        final CordaFuture<SignedTransaction> update =
+                b.startFlow(new ProductUpdateFlow.Initiator(partyOf(b), partyOf(a), "Received", "Red"));
+        runUntilDone(update);
+        final SignedTransaction stx = update.get();
+
+        assertEquals(1, stx.getTx().getInputs().size());
+        assertNotEquals(spent.getRef(), stx.getTx().getInputs().get(0));
+        assertEquals(candidates.get(1).getRef(), stx.getTx().getInputs().get(0));
+    }
+
+    private static NotaryException conflict(SecureHash txId, StateRef consumed) {
+        return new NotaryException(new NotaryError.Conflict(txId, ImmutableMap.of(consumed,
+                new StateConsumptionDetails(SecureHash.randomSHA256(), StateConsumptionDetails.ConsumedStateType.INPUT_STATE))), txId);
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, Duration duration) {
+        assertTrue(duration + " is below " + minMillis + " ms", duration.toMillis() >= minMillis);
+        assertTrue(duration + " is above " + maxMillis + " ms", duration.toMillis() <= maxMillis);
+    }
+
+    // The retry sleeps between attempts, so the network is pumped until the flow has woken up and finished.
+    private void runUntilDone(CordaFuture<?> future) throws InterruptedException {
+        for (int i = 0; i < 500 && !future.isDone(); i++) {
+            network.runNetwork();
+            Thread.sleep(10);
+        }
+    }
+
+    private SignedTransaction createProduct(String color) throws Exception {
+        final CordaFuture<SignedTransaction> future =
+                a.startFlow(new ProductCreateFlow.Initiator(partyOf(b), "Gadgets", color, "Pending"));
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static Party partyOf(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+
+    /**
+     * Receives a product through the notary without recording the transaction, so that the product is spent but the
+     * vault still shows it as unconsumed, as when another flow's transaction wins the race for it.
+     */
+    @InitiatingFlow
+    public static class SpendBehindTheVault extends FlowLogic<Void> {
+        private final StateAndRef<ProductState> product;
+        private final Party sender;
+
+        public SpendBehindTheVault(StateAndRef<ProductState> product, Party sender) {
+            this.product = product;
+            this.sender = sender;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            final ProductState state = product.getState().getData();
+            final TransactionBuilder txBuilder = new TransactionBuilder(product.getState().getNotary())
+                    .addInputState(product)
+                    .addOutputState(new ProductState(getOurIdentity(), sender, state.getProductName(), state.getProductColor(),
+                            ProductStatus.RECEIVED, state.getLinearId()), ProductContract.PRODUCT_CONTRACT_ID)
+                    .addCommand(new Command<>(new ProductContract.Commands.UpdateStatus(),
+                            ImmutableList.of(getOurIdentity().getOwningKey(), sender.getOwningKey())));
+            final FlowSession session = initiateFlow(sender);
+            final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(
+                    getServiceHub().signInitialTransaction(txBuilder), ImmutableList.of(session)));
+            subFlow(new NotaryFlow.Client(fullySignedTx));
+            return null;
+        }
+    }
+
+    @InitiatedBy(SpendBehindTheVault.class)
+    public static class SpendBehindTheVaultResponder extends FlowLogic<Void> {
+        private final FlowSession otherPartySession;
+
+        public SpendBehindTheVaultResponder(FlowSession otherPartySession) {
+            this.otherPartySession = otherPartySession;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            subFlow(new SignTransactionFlow(otherPartySession) {
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                }
+            });
+            return null;
+        }
+    }
+}